@@ -4,6 +4,9 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 @Component
 @Getter @Setter
@@ -14,4 +17,114 @@ public class CybersourceConfig {
     private String merchantId;
     private String baseUrl;
     private String keyId;
-}
\ No newline at end of file
+    private Http http = new Http();
+    private Bulk bulk = new Bulk();
+    private Persistence persistence = new Persistence();
+    private Limiter limiter = new Limiter();
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Connection settings for the Cybersource WebClient. Reactor Netty keeps a
+     * separate pool per remote host, so the pool limits apply per host.
+     */
+    @Getter @Setter
+    public static class Http {
+        private int maxConnections = 500;
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(15);
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration responseTimeout = Duration.ofSeconds(30);
+        private boolean keepAlive = true;
+        private boolean http2 = false;
+        private DataSize maxInMemorySize = DataSize.ofKilobytes(256);
+        private boolean metricsEnabled = true;
+    }
+
+    /**
+     * Limits for bulk tokenization requests.
+     */
+    @Getter @Setter
+    public static class Bulk {
+        private int concurrency = 32;
+        private double merchantRequestsPerSecond = 50;
+    }
+
+    /**
+     * TokenStorage persistence settings. With write-behind enabled, documents are
+     * queued and inserted in unordered bulk batches once {@code batchSize} documents
+     * are waiting or {@code flushInterval} has passed, whichever comes first.
+     * A failed bulk insert is retried {@code flushAttempts} times, doubling
+     * {@code flushRetryBackoff} each time. Documents that still cannot be written at
+     * shutdown are encrypted with {@code spillKey} (base64, 32 bytes) and appended to
+     * {@code spillFile}; both must be set when write-behind is enabled.
+     * {@code cursorBatchSize} and {@code maxPageSize} bound merchant exports and pages.
+     */
+    @Getter @Setter
+    public static class Persistence {
+        private boolean writeBehindEnabled = false;
+        private int batchSize = 500;
+        private Duration flushInterval = Duration.ofMillis(200);
+        private int queueCapacity = 10000;
+        private Duration enqueueTimeout = Duration.ofMillis(100);
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+        private int flushAttempts = 3;
+        private Duration flushRetryBackoff = Duration.ofMillis(100);
+        private String spillFile;
+        private String spillKey;
+        private RawResponse rawResponse = RawResponse.COMPRESSED;
+        private int cursorBatchSize = 1000;
+        private int maxPageSize = 1000;
+    }
+
+    /**
+     * Adaptive (AIMD) limit on concurrent Cybersource calls. The limit grows by one for
+     * each call that completes within {@code latencyThreshold} while at least half of it
+     * is in use, and is cut by {@code backoffRatio} when a call times out, fails at the
+     * network, gets a 5xx or 429, or is slower than the threshold. Calls over the limit
+     * are rejected at once.
+     */
+    @Getter @Setter
+    public static class Limiter {
+        private boolean enabled = true;
+        private int initialLimit = 50;
+        private int minLimit = 5;
+        private int maxLimit = 500;
+        private double backoffRatio = 0.9;
+        private Duration latencyThreshold = Duration.ofSeconds(2);
+    }
+
+    /**
+     * Per-merchant circuit breaker and bulkhead for every Cybersource call; instrument
+     * identifiers served from the cache skip it. A merchant's circuit opens when at least
+     * {@code failureRateThreshold} percent of its last {@code slidingWindowSize} calls
+     * failed, once {@code minimumCalls} have been made. After {@code openDuration},
+     * {@code halfOpenProbes} trial calls are let through; if all succeed the circuit
+     * closes, otherwise it opens again. At most {@code maxConcurrentCalls} calls per
+     * merchant run at once.
+     */
+    @Getter @Setter
+    public static class CircuitBreaker {
+        private boolean enabled = true;
+        private int slidingWindowSize = 20;
+        private int minimumCalls = 10;
+        private int failureRateThreshold = 50;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenProbes = 3;
+        private int maxConcurrentCalls = 25;
+    }
+
+    /**
+     * How the raw Cybersource response is kept on a TokenStorage document.
+     */
+    public enum RawResponse {
+        /** Legacy format: the full response string in {@code metadata.apiResponse}. */
+        FULL,
+        /** Deflate-compressed bytes in {@code compressedApiResponse}. */
+        COMPRESSED,
+        /** Not stored. */
+        NONE
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.cybersource.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for the blocking parts of a tokenization call.
+ * <p>
+ * With {@code spring.threads.virtual.enabled=true} on Java 21+, Spring Boot already
+ * moves Tomcat request handling onto virtual threads; these beans do the same for
+ * the Cybersource {@link java.net.http.HttpClient} and for the repository writes
+ * issued from reactive pipelines. Otherwise the platform-thread defaults are kept.
+ */
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    @Bean
+    public Executor cybersourceHttpExecutor(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            logger.info("Cybersource HTTP client will run on virtual threads");
+            return new VirtualThreadTaskExecutor("cybersource-http-");
+        }
+        // Same as the JDK HttpClient default
+        return Executors.newCachedThreadPool();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingIoScheduler(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            logger.info("Blocking repository calls from reactive pipelines will run on virtual threads");
+            return Schedulers.fromExecutor(new VirtualThreadTaskExecutor("cybersource-io-"));
+        }
+        return Schedulers.newBoundedElastic(Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE,
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "blocking-io");
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.cybersource.config;
+
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.observability.ContextProviderFactory;
+import org.springframework.data.mongodb.observability.MongoObservationCommandListener;
+
+/**
+ * Spans for the Mongo commands behind the token storage repositories.
+ * <p>
+ * Spring Boot observes the WebClient and web requests itself, but not the Mongo
+ * driver. The customizer applies to both the blocking and the reactive client;
+ * the context provider lets each command find its parent span, from the calling
+ * thread or from the Reactor context.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoObservationCustomizer(ObjectProvider<ObservationRegistry> observationRegistry) {
+        ObservationRegistry registry = observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP);
+        return settings -> settings
+                .contextProvider(ContextProviderFactory.create(registry))
+                .addCommandListener(new MongoObservationCommandListener(registry));
+    }
+}
@@ -1,19 +1,61 @@
 package com.example.cybersource.config;
 
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class WebClientConfig {
 
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider cybersourceConnectionProvider(CybersourceConfig cybersourceConfig) {
+        CybersourceConfig.Http http = cybersourceConfig.getHttp();
+        return ConnectionProvider.builder("cybersource")
+                .maxConnections(http.getMaxConnections())
+                .pendingAcquireMaxCount(http.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(http.getPendingAcquireTimeout())
+                .maxIdleTime(http.getMaxIdleTime())
+                .maxLifeTime(http.getMaxLifeTime())
+                .evictInBackground(http.getEvictionInterval())
+                .metrics(http.isMetricsEnabled())
+                .build();
+    }
+
+    /**
+     * Each exchange is observed, so it becomes a child span of the tokenization that issued it.
+     */
     @Bean
-    public WebClient.Builder webClientBuilder() {
-        return WebClient.builder();
+    public WebClient.Builder webClientBuilder(ObjectProvider<ObservationRegistry> observationRegistry) {
+        return WebClient.builder()
+                .observationRegistry(observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP));
     }
-    
+
     @Bean
-    public WebClient webClient(WebClient.Builder webClientBuilder) {
-        return webClientBuilder.build();
+    public WebClient webClient(WebClient.Builder webClientBuilder, CybersourceConfig cybersourceConfig,
+                               ConnectionProvider cybersourceConnectionProvider) {
+        CybersourceConfig.Http http = cybersourceConfig.getHttp();
+        HttpClient httpClient = HttpClient.create(cybersourceConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) http.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, http.isKeepAlive())
+                .keepAlive(http.isKeepAlive())
+                // Per-request read timeout; unlike a ReadTimeoutHandler added on connect,
+                // it does not fire on idle pooled connections
+                .responseTimeout(http.getResponseTimeout());
+        if (http.isHttp2()) {
+            // HTTP/2 is negotiated over TLS via ALPN, falling back to HTTP/1.1
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+
+        return webClientBuilder
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) http.getMaxInMemorySize().toBytes()))
+                .build();
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,22 @@
 package com.example.cybersource.controller;
 
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
+import com.example.cybersource.dto.PaymentCredentialsResponse;
+import com.example.cybersource.entity.TokenStorage;
 import com.example.cybersource.service.InstrumentIdentifierService;
 import com.example.cybersource.service.PaymentCredentialsService;
+import com.example.cybersource.service.PaymentCredentialsService.TokenStoragePage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
 
 @RestController
 @RequestMapping("/cybersource")
@@ -16,23 +29,78 @@ public class CybersourceController {
     private PaymentCredentialsService paymentCredentialsService;
 
     @PostMapping("/instrument-identifier")
-    public String createInstrumentIdentifier(
+    public InstrumentIdentifierResponse createInstrumentIdentifier(
             @RequestParam String cardNumber,
             @RequestParam String merchantId) throws Exception {
         return instrumentIdentifierService.createInstrumentIdentifier(cardNumber, merchantId);
     }
 
+    /**
+     * Responses are cached; send {@code Cache-Control: no-cache} to fetch the
+     * current one from Cybersource.
+     */
     @GetMapping("/instrument-identifier/{tokenId}")
-    public String getInstrumentIdentifier(
+    public InstrumentIdentifierResponse getInstrumentIdentifier(
             @PathVariable String tokenId,
-            @RequestParam String merchantId) throws Exception {
-        return instrumentIdentifierService.getInstrumentIdentifier(tokenId, merchantId);
+            @RequestParam String merchantId,
+            @RequestHeader(value = HttpHeaders.CACHE_CONTROL, required = false) String cacheControl) throws Exception {
+        boolean useCache = cacheControl == null
+                || !(cacheControl.contains("no-cache") || cacheControl.contains("no-store"));
+        return instrumentIdentifierService.getInstrumentIdentifier(tokenId, merchantId, useCache);
     }
 
     @GetMapping("/payment-credentials/{tokenId}")
-    public String getPaymentCredentials(
+    public PaymentCredentialsResponse getPaymentCredentials(
             @PathVariable String tokenId,
             @RequestParam String merchantId) throws Exception {
         return paymentCredentialsService.getPaymentCredentials(tokenId, merchantId);
     }
-}
\ No newline at end of file
+
+    @GetMapping("/token-storage")
+    public TokenExportPage getTokenStoragePage(
+            @RequestParam String merchantId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) throws Exception {
+        try {
+            TokenStoragePage page = paymentCredentialsService.getTokenStoragePage(merchantId, cursor, limit);
+            return new TokenExportPage(page.records().stream().map(TokenExport::from).toList(), page.nextCursor());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Export all of a merchant's tokens as NDJSON, newest first. The response is
+     * written as the Mongo cursor is read, so it can be arbitrarily large.
+     */
+    @GetMapping(value = "/token-storage/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<TokenExport> exportTokenStorage(@RequestParam String merchantId) {
+        return paymentCredentialsService.streamTokenStorageByMerchantId(merchantId)
+                .map(TokenExport::from);
+    }
+
+    /**
+     * Pass {@code nextCursor} as {@code cursor} to fetch the following page; it is
+     * null on the last page.
+     */
+    public static record TokenExportPage(List<TokenExport> records, String nextCursor) {}
+
+    /**
+     * Exported view of a token; the raw API response is left out.
+     */
+    public static record TokenExport(String paymentTokenId, String merchantId, String cryptogram,
+                                     String instrumentIdentifierTokenId, LocalDateTime createdAt,
+                                     LocalDateTime updatedAt) {
+
+        static TokenExport from(TokenStorage tokenStorage) {
+            String instrumentIdentifierTokenId = tokenStorage.getInstrumentIdentifierTokenId();
+            if (instrumentIdentifierTokenId == null && tokenStorage.getMetadata() != null) {
+                // Legacy documents not migrated yet keep it in metadata
+                instrumentIdentifierTokenId = Objects.toString(tokenStorage.getMetadata().get("instrumentIdentifierTokenId"), null);
+            }
+            return new TokenExport(tokenStorage.getPaymentTokenId(), tokenStorage.getMerchantId(),
+                    tokenStorage.getCryptogram(), instrumentIdentifierTokenId, tokenStorage.getCreatedAt(),
+                    tokenStorage.getUpdatedAt());
+        }
+    }
+}
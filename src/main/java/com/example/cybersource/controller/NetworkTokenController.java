@@ -1,9 +1,24 @@
 package com.example.cybersource.controller;
 
+import com.example.cybersource.service.BulkNetworkTokenService;
+import com.example.cybersource.service.BulkNetworkTokenService.BulkTokenRequest;
+import com.example.cybersource.service.BulkNetworkTokenService.BulkTokenResult;
 import com.example.cybersource.service.NetworkTokenService;
 import com.example.cybersource.service.NetworkTokenService.NetworkTokenResult;
+import com.example.cybersource.service.StageLatencyWindow;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 @RestController
 @RequestMapping("/network-token")
@@ -12,10 +27,72 @@ public class NetworkTokenController {
     @Autowired
     private NetworkTokenService networkTokenService;
 
+    @Autowired
+    private BulkNetworkTokenService bulkNetworkTokenService;
+
+    @Autowired
+    private StageLatencyWindow stageLatencyWindow;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("blockingIoScheduler")
+    private Scheduler blockingIoScheduler;
+
+    /**
+     * Pass {@code includeStages=true} to add the per-stage latency breakdown to the result.
+     */
     @PostMapping
     public NetworkTokenResult getNetworkToken(
             @RequestParam String cardNumber,
-            @RequestParam String merchantId) throws Exception {
-        return networkTokenService.generateNetworkTokenAndCryptogram(cardNumber, merchantId);
+            @RequestParam String merchantId,
+            @RequestParam(defaultValue = "false") boolean includeStages) throws Exception {
+        NetworkTokenResult result = networkTokenService.generateNetworkTokenAndCryptogram(cardNumber, merchantId);
+        return includeStages ? result : result.withoutStages();
+    }
+
+    @PostMapping("/reactive")
+    public Mono<NetworkTokenResult> getNetworkTokenReactive(
+            @RequestParam String cardNumber,
+            @RequestParam String merchantId,
+            @RequestParam(defaultValue = "false") boolean includeStages) {
+        return networkTokenService.generateNetworkTokenAndCryptogramReactive(cardNumber, merchantId)
+                .map(result -> includeStages ? result : result.withoutStages());
+    }
+
+    /**
+     * Per-stage latency of the most recent tokenizations on this node.
+     */
+    @GetMapping("/stages")
+    public StageLatencyWindow.Summary getStageLatency() {
+        return stageLatencyWindow.summary();
+    }
+
+    /**
+     * Tokenize a batch of cards. The body is read incrementally as NDJSON (or a JSON
+     * array) of {@code {"cardNumber": ..., "merchantId": ...}} objects, and one NDJSON
+     * result line is written as each card finishes.
+     */
+    @PostMapping(value = "/bulk",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BulkTokenResult> getNetworkTokensBulk(InputStream body) {
+        ObjectReader reader = objectMapper.readerFor(BulkTokenRequest.class);
+        Flux<BulkTokenRequest> requests = Flux.<BulkTokenRequest, MappingIterator<BulkTokenRequest>>using(
+                        () -> reader.readValues(body),
+                        iterator -> Flux.fromIterable(() -> iterator),
+                        NetworkTokenController::closeQuietly)
+                // Reading the servlet input stream blocks, so keep it off the event loop
+                .subscribeOn(blockingIoScheduler);
+        return bulkNetworkTokenService.generateNetworkTokens(requests);
+    }
+
+    private static void closeQuietly(MappingIterator<?> iterator) {
+        try {
+            iterator.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
     }
-}
\ No newline at end of file
+}
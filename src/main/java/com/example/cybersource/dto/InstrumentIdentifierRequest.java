@@ -0,0 +1,20 @@
+package com.example.cybersource.dto;
+
+/**
+ * Body of a create instrument identifier request, encoded by the WebClient's JSON codec.
+ */
+public record InstrumentIdentifierRequest(Card card) {
+
+    public static InstrumentIdentifierRequest of(String cardNumber) {
+        return new InstrumentIdentifierRequest(new Card(cardNumber));
+    }
+
+    public record Card(String number) {
+
+        // Requests end up in debug logs and assertion messages, so never print the full number
+        @Override
+        public String toString() {
+            return "Card[number=****" + (number == null ? "" : number.substring(Math.max(0, number.length() - 4))) + "]";
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.cybersource.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The fields of a Cybersource instrument identifier that this service uses. Other
+ * fields are skipped while decoding.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record InstrumentIdentifierResponse(String id, String object, String state, Card card) {
+
+    /**
+     * Card details as returned by Cybersource; the number is masked.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Card(String number, String expirationMonth, String expirationYear) {}
+}
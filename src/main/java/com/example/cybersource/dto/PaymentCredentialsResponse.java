@@ -0,0 +1,16 @@
+package com.example.cybersource.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The fields of a Cybersource payment credentials response that this service uses.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PaymentCredentialsResponse(NetworkToken networkToken) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record NetworkToken(String number, String expirationMonth, String expirationYear, String cryptogram) {}
+}
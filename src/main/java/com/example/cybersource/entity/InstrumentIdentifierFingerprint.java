@@ -0,0 +1,41 @@
+package com.example.cybersource.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Maps a keyed fingerprint of a card number to the instrument identifier Cybersource
+ * returned for it, per merchant. The card number itself is never stored.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "InstrumentIdentifierFingerprint")
+public class InstrumentIdentifierFingerprint {
+
+    /**
+     * {@code merchantId:fingerprint}, so each card maps to one instrument identifier per merchant.
+     */
+    @Id
+    private String id;
+
+    private String merchantId;
+
+    /**
+     * Base64url HMAC-SHA256 of the card number.
+     */
+    private String fingerprint;
+
+    private String instrumentIdentifierId;
+
+    private LocalDateTime createdAt;
+
+    public static String id(String merchantId, String fingerprint) {
+        return merchantId + ":" + fingerprint;
+    }
+}
@@ -5,6 +5,7 @@ import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 
 import java.time.LocalDateTime;
@@ -14,6 +15,9 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "TokenStorage")
+// paymentTokenId is appended to both indexes so reference lookups are covered by the index alone
+@CompoundIndex(name = "merchant_cryptogram", def = "{ 'merchantId': 1, 'cryptogram': 1, 'paymentTokenId': 1 }")
+@CompoundIndex(name = "merchant_created", def = "{ 'merchantId': 1, 'createdAt': -1, 'paymentTokenId': 1 }")
 public class TokenStorage {
     
     @Id
@@ -26,12 +30,21 @@ public class TokenStorage {
     
     private String merchantId;
     
+    @Indexed
+    private String instrumentIdentifierTokenId;
+    
     private LocalDateTime createdAt;
     
     private LocalDateTime updatedAt;
     
     private Map<String, Object> metadata;
     
+    /**
+     * Deflate-compressed raw API response, present when
+     * {@code cybersource.persistence.raw-response=compressed}.
+     */
+    private byte[] compressedApiResponse;
+    
     public TokenStorage(String paymentTokenId, String cryptogram, String merchantId, Map<String, Object> metadata) {
         this.paymentTokenId = paymentTokenId;
         this.cryptogram = cryptogram;
@@ -0,0 +1,18 @@
+package com.example.cybersource.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Exception thrown when a Cybersource call is refused locally, without being sent:
+ * the shared concurrency limit is reached, or the merchant's circuit is open or its
+ * bulkhead full. Callers get a fast 503 to retry later instead of queueing behind
+ * slow or failing calls.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CallRejectedException extends NetworkException {
+    
+    public CallRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.entity.InstrumentIdentifierFingerprint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Lookups go by id, {@link InstrumentIdentifierFingerprint#id(String, String)}.
+ */
+@Repository
+public interface InstrumentIdentifierFingerprintRepository extends MongoRepository<InstrumentIdentifierFingerprint, String> {
+}
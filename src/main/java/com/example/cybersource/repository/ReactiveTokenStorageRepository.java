@@ -0,0 +1,48 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.entity.TokenStorage;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link TokenStorageRepository}, backed by the reactive
+ * streams MongoDB driver. Use it from Mono/Flux pipelines so Mongo I/O never parks a
+ * thread.
+ */
+@Repository
+public interface ReactiveTokenStorageRepository extends ReactiveMongoRepository<TokenStorage, String> {
+    
+    /**
+     * Find token storage by payment token ID
+     * @param paymentTokenId the payment token ID to search for
+     * @return Mono emitting the token storage, or empty if not found
+     */
+    Mono<TokenStorage> findByPaymentTokenId(String paymentTokenId);
+    
+    /**
+     * Stream all token storage records of a merchant, newest first, in the order of
+     * the merchant_created index. Documents are fetched as the subscriber requests them.
+     * @param merchantId the merchant ID to search for
+     * @return Flux of token storage records
+     */
+    Flux<TokenStorage> findByMerchantIdOrderByCreatedAtDescPaymentTokenIdAsc(String merchantId);
+    
+    /**
+     * Check if a payment token ID already exists
+     * @param paymentTokenId the payment token ID to check
+     * @return Mono emitting true if exists, false otherwise
+     */
+    Mono<Boolean> existsByPaymentTokenId(String paymentTokenId);
+    
+    /**
+     * Find token storage by merchant ID and cryptogram
+     * @param merchantId the merchant ID
+     * @param cryptogram the cryptogram
+     * @return Mono emitting the token storage, or empty if not found
+     */
+    @Query("{ 'merchantId': ?0, 'cryptogram': ?1 }")
+    Mono<TokenStorage> findByMerchantIdAndCryptogram(String merchantId, String cryptogram);
+}
@@ -0,0 +1,10 @@
+package com.example.cybersource.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Index-only view of a TokenStorage document. Each projection query fills in the
+ * fields held by the index it runs on; the rest are null.
+ */
+public record TokenReference(String paymentTokenId, String merchantId, String cryptogram, LocalDateTime createdAt) {
+}
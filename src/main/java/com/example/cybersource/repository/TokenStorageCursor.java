@@ -0,0 +1,44 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.entity.TokenStorage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Keyset position in a merchant's tokens, which are ordered by createdAt descending
+ * and then paymentTokenId. Encodes to an opaque URL-safe string for API clients.
+ */
+public record TokenStorageCursor(LocalDateTime createdAt, String paymentTokenId) {
+
+    /**
+     * Position just after the given document.
+     * @param tokenStorage the last document of a page
+     * @return the cursor for the next page
+     */
+    public static TokenStorageCursor after(TokenStorage tokenStorage) {
+        return new TokenStorageCursor(tokenStorage.getCreatedAt(), tokenStorage.getPaymentTokenId());
+    }
+
+    public String encode() {
+        String raw = createdAt + "|" + paymentTokenId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a cursor produced by {@link #encode()}.
+     * @param encoded the opaque cursor string
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the string is not a valid cursor
+     */
+    public static TokenStorageCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new TokenStorageCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid token storage cursor", e);
+        }
+    }
+}
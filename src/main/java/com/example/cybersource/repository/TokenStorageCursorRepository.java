@@ -0,0 +1,32 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.entity.TokenStorage;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Constant-memory access to all tokens of a merchant, in createdAt descending order
+ * (newest first, ties broken by paymentTokenId). Both methods run on the
+ * merchant_created index.
+ */
+public interface TokenStorageCursorRepository {
+
+    /**
+     * Fetch one keyset page of a merchant's tokens
+     * @param merchantId the merchant ID
+     * @param after the position to continue from, or null for the first page
+     * @param limit the maximum number of records to return
+     * @return up to {@code limit} records following {@code after}
+     */
+    List<TokenStorage> findPageByMerchantId(String merchantId, TokenStorageCursor after, int limit);
+
+    /**
+     * Stream all of a merchant's tokens from a server-side cursor, fetching
+     * {@code cybersource.persistence.cursor-batch-size} documents per round trip.
+     * The stream must be closed to release the cursor.
+     * @param merchantId the merchant ID
+     * @return a lazily populated stream of the merchant's tokens
+     */
+    Stream<TokenStorage> streamByMerchantId(String merchantId);
+}
@@ -0,0 +1,46 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.entity.TokenStorage;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+class TokenStorageCursorRepositoryImpl implements TokenStorageCursorRepository {
+
+    // Matches the merchant_created index so pages and streams are read in index order
+    private static final Sort MERCHANT_ORDER = Sort.by(Sort.Direction.DESC, "createdAt")
+            .and(Sort.by(Sort.Direction.ASC, "paymentTokenId"));
+
+    private final MongoTemplate mongoTemplate;
+    private final CybersourceConfig cybersourceConfig;
+
+    TokenStorageCursorRepositoryImpl(MongoTemplate mongoTemplate, CybersourceConfig cybersourceConfig) {
+        this.mongoTemplate = mongoTemplate;
+        this.cybersourceConfig = cybersourceConfig;
+    }
+
+    @Override
+    public List<TokenStorage> findPageByMerchantId(String merchantId, TokenStorageCursor after, int limit) {
+        Criteria criteria = Criteria.where("merchantId").is(merchantId);
+        if (after != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("createdAt").lt(after.createdAt()),
+                    Criteria.where("createdAt").is(after.createdAt()).and("paymentTokenId").gt(after.paymentTokenId()));
+        }
+        Query query = Query.query(criteria).with(MERCHANT_ORDER).limit(limit);
+        return mongoTemplate.find(query, TokenStorage.class);
+    }
+
+    @Override
+    public Stream<TokenStorage> streamByMerchantId(String merchantId) {
+        Query query = Query.query(Criteria.where("merchantId").is(merchantId))
+                .with(MERCHANT_ORDER)
+                .cursorBatchSize(cybersourceConfig.getPersistence().getCursorBatchSize());
+        return mongoTemplate.stream(query, TokenStorage.class);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.entity.TokenStorage;
+import com.example.cybersource.util.JsonFieldExtractor;
+import com.example.cybersource.util.ResponseCompression;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.util.Pair;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * One-off migration of existing TokenStorage documents from the legacy format, with
+ * the full response in {@code metadata.apiResponse}, to the format selected by
+ * {@code cybersource.persistence.raw-response}. Runs at startup when
+ * {@code cybersource.persistence.migrate-raw-response=true}.
+ * <p>
+ * Legacy documents hold a placeholder in {@code cryptogram}, so the real one is read
+ * from the response and set in the same update that drops the response, and
+ * {@code metadata.instrumentIdentifierTokenId} is moved to its typed field. A response
+ * the cryptogram cannot be read from is kept (compressed or as is), never dropped.
+ * <p>
+ * Only documents that still carry a legacy field are touched, so the migration can be
+ * stopped and re-run safely.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cybersource.persistence", name = "migrate-raw-response", havingValue = "true")
+public class TokenStorageRawResponseMigration implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenStorageRawResponseMigration.class);
+
+    private static final String LEGACY_RESPONSE = "metadata.apiResponse";
+    private static final String LEGACY_TIMESTAMP = "metadata.creationTimestamp";
+    private static final String LEGACY_INSTRUMENT_IDENTIFIER = "metadata.instrumentIdentifierTokenId";
+    private static final JsonFieldExtractor CRYPTOGRAM = JsonFieldExtractor.of("networkToken.cryptogram");
+
+    private final MongoTemplate mongoTemplate;
+    private final CybersourceConfig.RawResponse target;
+    private final int batchSize;
+
+    public TokenStorageRawResponseMigration(MongoTemplate mongoTemplate, CybersourceConfig cybersourceConfig) {
+        this.mongoTemplate = mongoTemplate;
+        this.target = cybersourceConfig.getPersistence().getRawResponse();
+        this.batchSize = Math.max(1, cybersourceConfig.getPersistence().getBatchSize());
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        migrate();
+    }
+
+    /**
+     * Rewrite every legacy document in batches of unordered bulk updates.
+     * @return the number of documents migrated
+     */
+    public long migrate() {
+        String collection = mongoTemplate.getCollectionName(TokenStorage.class);
+        Query legacy = Query.query(legacyCriteria());
+        legacy.fields().include("_id").include(LEGACY_RESPONSE).include(LEGACY_INSTRUMENT_IDENTIFIER);
+
+        long migrated = 0;
+        List<Pair<Query, UpdateDefinition>> updates = new ArrayList<>(batchSize);
+        try (Stream<Document> documents = mongoTemplate.stream(legacy, Document.class, collection)) {
+            Iterator<Document> iterator = documents.iterator();
+            while (iterator.hasNext()) {
+                Pair<Query, UpdateDefinition> update = toUpdate(iterator.next());
+                if (update != null) {
+                    updates.add(update);
+                }
+                if (updates.size() == batchSize) {
+                    migrated += apply(collection, updates);
+                    logger.info("Migrated {} TokenStorage documents to {} raw responses", migrated, target);
+                }
+            }
+        }
+        migrated += apply(collection, updates);
+        logger.info("TokenStorage raw response migration finished: {} documents migrated to {}", migrated, target);
+        return migrated;
+    }
+
+    private Criteria legacyCriteria() {
+        // With FULL the response stays where it is, so only the promoted field marks a legacy document
+        if (target == CybersourceConfig.RawResponse.FULL) {
+            return Criteria.where(LEGACY_INSTRUMENT_IDENTIFIER).exists(true);
+        }
+        return new Criteria().orOperator(Criteria.where(LEGACY_RESPONSE).exists(true),
+                Criteria.where(LEGACY_INSTRUMENT_IDENTIFIER).exists(true));
+    }
+
+    /**
+     * @return the update for one document, or null if it has to be left alone
+     */
+    private Pair<Query, UpdateDefinition> toUpdate(Document document) {
+        Object id = document.get("_id");
+        Document metadata = document.get("metadata", Document.class);
+        Object response = metadata.get("apiResponse");
+        Object instrumentIdentifierTokenId = metadata.get("instrumentIdentifierTokenId");
+
+        Update update = new Update();
+        if (instrumentIdentifierTokenId != null) {
+            update.set("instrumentIdentifierTokenId", instrumentIdentifierTokenId.toString())
+                    .unset(LEGACY_INSTRUMENT_IDENTIFIER);
+        }
+        if (response != null) {
+            String cryptogram = extractCryptogram(id, response.toString());
+            if (cryptogram != null) {
+                update.set("cryptogram", cryptogram);
+            }
+            if (target == CybersourceConfig.RawResponse.COMPRESSED) {
+                update.set("compressedApiResponse", ResponseCompression.deflate(response.toString()))
+                        .unset(LEGACY_RESPONSE).unset(LEGACY_TIMESTAMP);
+            } else if (target == CybersourceConfig.RawResponse.NONE) {
+                if (cryptogram == null) {
+                    logger.warn("No cryptogram in the raw response of TokenStorage {}; keeping the response", id);
+                    if (instrumentIdentifierTokenId == null) {
+                        return null;
+                    }
+                } else {
+                    update.unset(LEGACY_RESPONSE).unset(LEGACY_TIMESTAMP);
+                }
+            }
+        }
+        // Re-check the legacy fields so a concurrent or repeated run does not apply twice
+        Query match = Query.query(Criteria.where("_id").is(id).andOperator(legacyCriteria()));
+        return Pair.of(match, update);
+    }
+
+    private static String extractCryptogram(Object id, String response) {
+        try {
+            return CRYPTOGRAM.extract(response)[0];
+        } catch (IllegalArgumentException e) {
+            logger.warn("Raw response of TokenStorage {} is not valid JSON", id, e);
+            return null;
+        }
+    }
+
+    private int apply(String collection, List<Pair<Query, UpdateDefinition>> updates) {
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        int modified = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, collection)
+                .updateOne(updates)
+                .execute()
+                .getModifiedCount();
+        updates.clear();
+        return modified;
+    }
+}
@@ -5,11 +5,12 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.List;
 
 @Repository
-public interface TokenStorageRepository extends MongoRepository<TokenStorage, String> {
+public interface TokenStorageRepository extends MongoRepository<TokenStorage, String>, TokenStorageCursorRepository {
     
     /**
      * Find token storage by payment token ID
@@ -19,7 +20,9 @@ public interface TokenStorageRepository extends MongoRepository<TokenStorage, St
     Optional<TokenStorage> findByPaymentTokenId(String paymentTokenId);
     
     /**
-     * Find all token storage records for a given merchant ID
+     * Find all token storage records for a given merchant ID. Loads every record into
+     * memory; for large merchants use {@link #findPageByMerchantId} or
+     * {@link #streamByMerchantId} instead.
      * @param merchantId the merchant ID to search for
      * @return List of token storage records
      */
@@ -40,4 +43,28 @@ public interface TokenStorageRepository extends MongoRepository<TokenStorage, St
      */
     @Query("{ 'merchantId': ?0, 'cryptogram': ?1 }")
     Optional<TokenStorage> findByMerchantIdAndCryptogram(String merchantId, String cryptogram);
-}
\ No newline at end of file
+    
+    /**
+     * Find the payment token for a merchant and cryptogram, served entirely from the
+     * merchant_cryptogram index (a covered query)
+     * @param merchantId the merchant ID
+     * @param cryptogram the cryptogram
+     * @return Optional containing paymentTokenId, merchantId and cryptogram if found
+     */
+    @Query(value = "{ 'merchantId': ?0, 'cryptogram': ?1 }",
+           fields = "{ '_id': 0, 'paymentTokenId': 1, 'merchantId': 1, 'cryptogram': 1 }")
+    Optional<TokenReference> findReferenceByMerchantIdAndCryptogram(String merchantId, String cryptogram);
+    
+    /**
+     * List a merchant's payment tokens created in a time window, newest first, served
+     * entirely from the merchant_created index (a covered query)
+     * @param merchantId the merchant ID
+     * @param from inclusive lower bound on createdAt
+     * @param to exclusive upper bound on createdAt
+     * @return paymentTokenId, merchantId and createdAt of each matching token
+     */
+    @Query(value = "{ 'merchantId': ?0, 'createdAt': { '$gte': ?1, '$lt': ?2 } }",
+           fields = "{ '_id': 0, 'paymentTokenId': 1, 'merchantId': 1, 'createdAt': 1 }",
+           sort = "{ 'createdAt': -1 }")
+    List<TokenReference> findReferencesByMerchantIdAndCreatedAtBetween(String merchantId, LocalDateTime from, LocalDateTime to);
+}
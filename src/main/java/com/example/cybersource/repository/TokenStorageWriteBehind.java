@@ -0,0 +1,506 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.entity.TokenStorage;
+import com.example.cybersource.exception.DataAccessException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind buffer for TokenStorage documents. Callers enqueue documents and return
+ * immediately; a single flusher thread inserts them with unordered bulk writes once a
+ * batch fills up or the flush interval passes.
+ * <p>
+ * The queue is bounded: when it is full, {@link #enqueue(TokenStorage)} waits up to the
+ * enqueue timeout and then inserts the document on the caller's thread, so a slow
+ * database pushes back on callers instead of growing the heap. A failed bulk insert is
+ * retried with backoff and then put back on the queue, so its documents stay readable
+ * through {@link #findPending(String)} until they are written. Documents that cannot be
+ * written by shutdown are encrypted with AES-GCM and appended to an owner-only spill
+ * file, which is replayed on the next startup. Documents Mongo rejects outright, and
+ * spill lines that cannot be decrypted or parsed on replay, go to a quarantine file
+ * next to it ({@code <spill-file>.quarantine}) instead, so they are not retried on
+ * every restart and cannot stop the rest of the replay.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cybersource.persistence", name = "write-behind-enabled", havingValue = "true")
+public class TokenStorageWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenStorageWriteBehind.class);
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final String SPILL_CIPHER = "AES/GCM/NoPadding";
+    private static final int SPILL_KEY_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long enqueueTimeoutNanos;
+    private final long shutdownTimeoutMillis;
+    private final int flushAttempts;
+    private final long flushRetryBackoffMillis;
+    private final Path spillFile;
+    private final Path quarantineFile;
+    private final SecretKey spillKey;
+    private final SecureRandom random = new SecureRandom();
+
+    private final BlockingQueue<TokenStorage> queue;
+    // Queued but not yet written, so reads can see their own writes before the flush
+    private final ConcurrentMap<String, TokenStorage> pending = new ConcurrentHashMap<>();
+    private final Thread flusher;
+    // Held shared while enqueueing and exclusively to stop, so no offer lands after the final drain
+    private final ReadWriteLock lifecycle = new ReentrantReadWriteLock();
+    private volatile boolean running;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter spilledDocuments;
+    private final Counter rejectedDocuments;
+    private final Counter corruptSpillLines;
+    private final Counter callerInserts;
+
+    public TokenStorageWriteBehind(MongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                                   CybersourceConfig cybersourceConfig, MeterRegistry meterRegistry) {
+        CybersourceConfig.Persistence settings = cybersourceConfig.getPersistence();
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, settings.getBatchSize());
+        this.flushIntervalNanos = settings.getFlushInterval().toNanos();
+        this.enqueueTimeoutNanos = settings.getEnqueueTimeout().toNanos();
+        this.shutdownTimeoutMillis = settings.getShutdownTimeout().toMillis();
+        this.flushAttempts = Math.max(1, settings.getFlushAttempts());
+        this.flushRetryBackoffMillis = settings.getFlushRetryBackoff().toMillis();
+        this.spillFile = spillFile(settings.getSpillFile());
+        this.quarantineFile = this.spillFile.resolveSibling(this.spillFile.getFileName() + ".quarantine");
+        this.spillKey = spillKey(settings.getSpillKey());
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.getQueueCapacity()));
+
+        this.flusher = new Thread(this::flushLoop, "token-storage-flusher");
+        this.flusher.setDaemon(true);
+
+        this.flushTimer = Timer.builder("cybersource.token_storage.flush")
+                .description("Time taken to bulk insert one batch of TokenStorage documents")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("cybersource.token_storage.flush.batch_size")
+                .description("Documents per TokenStorage bulk insert")
+                .register(meterRegistry);
+        this.spilledDocuments = Counter.builder("cybersource.token_storage.spilled")
+                .description("TokenStorage documents written to the spill file")
+                .register(meterRegistry);
+        this.rejectedDocuments = Counter.builder("cybersource.token_storage.quarantined")
+                .description("TokenStorage documents or spill lines moved to the quarantine file")
+                .tag("reason", "rejected")
+                .register(meterRegistry);
+        this.corruptSpillLines = Counter.builder("cybersource.token_storage.quarantined")
+                .description("TokenStorage documents or spill lines moved to the quarantine file")
+                .tag("reason", "corrupt")
+                .register(meterRegistry);
+        this.callerInserts = Counter.builder("cybersource.token_storage.caller_inserts")
+                .description("TokenStorage documents inserted on the caller thread because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("cybersource.token_storage.queue.size", queue, BlockingQueue::size)
+                .description("TokenStorage documents waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        replaySpillFile();
+        running = true;
+        flusher.start();
+        logger.info("TokenStorage write-behind started (batch size {}, flush interval {} ms)",
+                   batchSize, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos));
+    }
+
+    /**
+     * Queue a document for the next bulk insert.
+     * @param tokenStorage the document to persist
+     * @throws DataAccessException if the queue was full and the fallback insert failed
+     */
+    public void enqueue(TokenStorage tokenStorage) throws DataAccessException {
+        lifecycle.readLock().lock();
+        try {
+            if (running) {
+                pending.put(tokenStorage.getPaymentTokenId(), tokenStorage);
+                try {
+                    if (queue.offer(tokenStorage, enqueueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                pending.remove(tokenStorage.getPaymentTokenId(), tokenStorage);
+                callerInserts.increment();
+            }
+        } finally {
+            lifecycle.readLock().unlock();
+        }
+        insertNow(tokenStorage);
+    }
+
+    /**
+     * Look up a document that has been queued but not flushed yet.
+     * @param paymentTokenId the payment token ID to search for
+     * @return Optional containing the queued document, if any
+     */
+    public Optional<TokenStorage> findPending(String paymentTokenId) {
+        return Optional.ofNullable(pending.get(paymentTokenId));
+    }
+
+    @PreDestroy
+    public void stop() {
+        lifecycle.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            lifecycle.writeLock().unlock();
+        }
+        try {
+            flusher.join(shutdownTimeoutMillis);
+            if (flusher.isAlive()) {
+                logger.warn("TokenStorage flusher did not drain within {} ms, spilling the remainder", shutdownTimeoutMillis);
+                flusher.interrupt();
+                // Let it spill its current batch before the queue is drained here
+                flusher.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<TokenStorage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        spill(remaining);
+    }
+
+    private void insertNow(TokenStorage tokenStorage) throws DataAccessException {
+        try {
+            mongoTemplate.insert(tokenStorage);
+        } catch (org.springframework.dao.DataAccessException e) {
+            throw new DataAccessException("Failed to persist payment credentials to database", e);
+        }
+    }
+
+    private void flushLoop() {
+        List<TokenStorage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                TokenStorage first = queue.poll(Math.min(flushIntervalNanos, STOP_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (true) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    // On shutdown, flush what is already here instead of waiting out the interval
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    TokenStorage next = queue.poll(Math.min(remaining, STOP_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Shutdown timed out; whatever was being batched goes to the spill file
+                spill(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    void flush(List<TokenStorage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean settled = false;
+        try {
+            for (int attempt = 1; !settled; attempt++) {
+                try {
+                    mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TokenStorage.class)
+                            .insert(batch)
+                            .execute();
+                    settled = true;
+                } catch (BulkOperationException e) {
+                    // Unordered: every document except the reported ones was written. Duplicate
+                    // keys mean the document is already stored (e.g. a replayed spill file); the
+                    // others were refused by Mongo and would be refused again, so they are quarantined.
+                    List<TokenStorage> rejected = new ArrayList<>();
+                    for (BulkWriteError error : e.getErrors()) {
+                        if (error.getCode() != DUPLICATE_KEY) {
+                            rejected.add(batch.get(error.getIndex()));
+                        }
+                    }
+                    if (!rejected.isEmpty()) {
+                        logger.error("Bulk insert failed for {} of {} TokenStorage documents", rejected.size(), batch.size(), e);
+                        quarantine(rejected);
+                    }
+                    settled = true;
+                } catch (RuntimeException e) {
+                    if (attempt >= flushAttempts || !backOff(attempt)) {
+                        logger.error("Bulk insert of {} TokenStorage documents failed after {} attempts",
+                                    batch.size(), attempt, e);
+                        break;
+                    }
+                    logger.warn("Bulk insert of {} TokenStorage documents failed, retrying", batch.size(), e);
+                }
+            }
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(batch.size());
+        }
+        if (settled) {
+            forget(batch);
+        } else {
+            requeue(batch);
+        }
+    }
+
+    /**
+     * @return false if the wait was interrupted by shutdown
+     */
+    private boolean backOff(int attempt) {
+        try {
+            Thread.sleep(flushRetryBackoffMillis << (attempt - 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void requeue(List<TokenStorage> documents) {
+        // While running, failed documents go back on the queue and stay pending for the
+        // next batch; once stopping, or when the queue is full, they are spilled instead.
+        List<TokenStorage> overflow = new ArrayList<>();
+        for (TokenStorage document : documents) {
+            if (!running || !queue.offer(document)) {
+                overflow.add(document);
+            }
+        }
+        spill(overflow);
+        forget(overflow);
+    }
+
+    private void forget(List<TokenStorage> documents) {
+        for (TokenStorage document : documents) {
+            pending.remove(document.getPaymentTokenId(), document);
+        }
+    }
+
+    private void spill(List<TokenStorage> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        try {
+            append(spillFile, encrypt(documents));
+            spilledDocuments.increment(documents.size());
+            logger.warn("Spilled {} TokenStorage documents to {}", documents.size(), spillFile);
+        } catch (IOException | GeneralSecurityException e) {
+            logger.error("Failed to spill {} TokenStorage documents to {}; they are lost",
+                        documents.size(), spillFile, e);
+        }
+    }
+
+    private void quarantine(List<TokenStorage> documents) {
+        try {
+            append(quarantineFile, encrypt(documents));
+            rejectedDocuments.increment(documents.size());
+            logger.error("Quarantined {} TokenStorage documents rejected by Mongo in {}", documents.size(), quarantineFile);
+        } catch (IOException | GeneralSecurityException e) {
+            logger.error("Failed to quarantine {} TokenStorage documents to {}; they are lost",
+                        documents.size(), quarantineFile, e);
+        }
+    }
+
+    private void quarantineLines(List<String> lines) {
+        try {
+            List<byte[]> raw = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                raw.add(line.getBytes(StandardCharsets.UTF_8));
+            }
+            append(quarantineFile, raw);
+            corruptSpillLines.increment(lines.size());
+            logger.error("Quarantined {} unreadable spill lines in {}", lines.size(), quarantineFile);
+        } catch (IOException e) {
+            logger.error("Failed to quarantine {} unreadable spill lines to {}; they are lost",
+                        lines.size(), quarantineFile, e);
+        }
+    }
+
+    private synchronized void append(Path file, List<byte[]> lines) throws IOException {
+        createOwnerOnly(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (byte[] line : lines) {
+                channel.write(ByteBuffer.wrap(line));
+                channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+            }
+            channel.force(true);
+        }
+    }
+
+    private List<byte[]> encrypt(List<TokenStorage> documents) throws IOException, GeneralSecurityException {
+        List<byte[]> lines = new ArrayList<>(documents.size());
+        for (TokenStorage document : documents) {
+            lines.add(encrypt(objectMapper.writeValueAsBytes(document)));
+        }
+        return lines;
+    }
+
+    /**
+     * One spill line: base64 of the random IV followed by the AES-GCM ciphertext of the document.
+     */
+    private byte[] encrypt(byte[] plaintext) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(SPILL_CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, spillKey, new GCMParameterSpec(TAG_BITS, iv));
+        byte[] ciphertext = cipher.doFinal(plaintext);
+        byte[] line = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, line, 0, iv.length);
+        System.arraycopy(ciphertext, 0, line, iv.length, ciphertext.length);
+        return Base64.getEncoder().encode(line);
+    }
+
+    private byte[] decrypt(String line) throws GeneralSecurityException {
+        byte[] decoded = Base64.getDecoder().decode(line.trim());
+        Cipher cipher = Cipher.getInstance(SPILL_CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, spillKey, new GCMParameterSpec(TAG_BITS, decoded, 0, IV_BYTES));
+        return cipher.doFinal(decoded, IV_BYTES, decoded.length - IV_BYTES);
+    }
+
+    private void replaySpillFile() {
+        // A .replay file left behind means the previous replay was interrupted
+        Path replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        try {
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(spillFile)) {
+                    return;
+                }
+                Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            int replayed = 0;
+            List<TokenStorage> batch = new ArrayList<>(batchSize);
+            List<String> unreadable = new ArrayList<>();
+            try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        batch.add(objectMapper.readValue(decrypt(line), TokenStorage.class));
+                    } catch (IllegalArgumentException | GeneralSecurityException | IOException e) {
+                        // A torn write or a line under another key; set it aside and carry on
+                        logger.warn("Skipping unreadable line in TokenStorage spill file {}: {}", replayFile, e.toString());
+                        unreadable.add(line);
+                        continue;
+                    }
+                    if (batch.size() == batchSize) {
+                        replayed += batch.size();
+                        flush(batch);
+                        batch.clear();
+                    }
+                }
+            }
+            replayed += batch.size();
+            flush(batch);
+            if (!unreadable.isEmpty()) {
+                quarantineLines(unreadable);
+            }
+            Files.delete(replayFile);
+            logger.info("Replayed {} TokenStorage documents from {}, skipped {} unreadable lines",
+                       replayed, replayFile, unreadable.size());
+        } catch (IOException e) {
+            logger.error("Failed to replay TokenStorage spill file {}", replayFile, e);
+        }
+    }
+
+    private static void createOwnerOnly(Path file) throws IOException {
+        boolean posix = file.getFileSystem().supportedFileAttributeViews().contains("posix");
+        try {
+            if (posix) {
+                Files.createFile(file, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+            } else {
+                Files.createFile(file);
+            }
+        } catch (FileAlreadyExistsException e) {
+            if (posix) {
+                Files.setPosixFilePermissions(file, OWNER_ONLY);
+            }
+        }
+    }
+
+    private static Path spillFile(String spillFile) {
+        if (spillFile == null || spillFile.isBlank() || !Path.of(spillFile.trim()).isAbsolute()) {
+            throw new IllegalStateException("cybersource.persistence.spill-file must be an absolute path "
+                    + "when write-behind is enabled");
+        }
+        return Path.of(spillFile.trim());
+    }
+
+    private static SecretKey spillKey(String spillKey) {
+        byte[] key = spillKey == null || spillKey.isBlank() ? new byte[0] : Base64.getDecoder().decode(spillKey.trim());
+        if (key.length != SPILL_KEY_BYTES) {
+            throw new IllegalStateException("cybersource.persistence.spill-key must be a base64 key of "
+                    + SPILL_KEY_BYTES + " bytes when write-behind is enabled");
+        }
+        return new SecretKeySpec(key, "AES");
+    }
+}
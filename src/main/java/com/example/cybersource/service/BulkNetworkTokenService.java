@@ -0,0 +1,80 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.util.MerchantRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tokenizes a stream of cards with bounded parallelism. Results are emitted as each
+ * card finishes, so only {@code concurrency} cards are in flight at any time and
+ * memory does not grow with the size of the batch.
+ */
+@Service
+public class BulkNetworkTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkNetworkTokenService.class);
+
+    private final NetworkTokenService networkTokenService;
+    private final MerchantRateLimiter merchantRateLimiter;
+    private final int concurrency;
+
+    public BulkNetworkTokenService(NetworkTokenService networkTokenService, CybersourceConfig cybersourceConfig) {
+        this.networkTokenService = networkTokenService;
+        this.merchantRateLimiter = new MerchantRateLimiter(cybersourceConfig.getBulk().getMerchantRequestsPerSecond());
+        this.concurrency = Math.max(1, cybersourceConfig.getBulk().getConcurrency());
+    }
+
+    /**
+     * Generate network tokens for every request in the stream.
+     * @param requests the cards to tokenize, read lazily
+     * @return one result per request, in completion order; failures are reported
+     *         per item and do not stop the batch
+     */
+    public Flux<BulkTokenResult> generateNetworkTokens(Flux<BulkTokenRequest> requests) {
+        return requests
+                .index()
+                .flatMap(indexed -> tokenize(indexed.getT1(), indexed.getT2()), concurrency, 1);
+    }
+
+    private Mono<BulkTokenResult> tokenize(long index, BulkTokenRequest request) {
+        String cardNumber = request.cardNumber();
+        String lastFour = cardNumber == null ? null : cardNumber.substring(Math.max(0, cardNumber.length() - 4));
+        if (cardNumber == null || cardNumber.isBlank() || request.merchantId() == null || request.merchantId().isBlank()) {
+            return Mono.just(BulkTokenResult.failure(index, request.merchantId(), lastFour,
+                    "cardNumber and merchantId are required"));
+        }
+
+        return merchantRateLimiter.acquire(request.merchantId())
+                .then(networkTokenService.generateNetworkTokenAndCryptogramReactive(cardNumber, request.merchantId()))
+                .map(result -> BulkTokenResult.success(index, request.merchantId(), lastFour, result))
+                .onErrorResume(e -> {
+                    logger.warn("Bulk tokenization failed for item {} of merchant {}: {}",
+                               index, request.merchantId(), e.getMessage());
+                    return Mono.just(BulkTokenResult.failure(index, request.merchantId(), lastFour, e.getMessage()));
+                });
+    }
+
+    public static record BulkTokenRequest(String cardNumber, String merchantId) {}
+
+    /**
+     * Outcome for one card. Only the last four digits of the PAN are echoed back;
+     * {@code index} is the position of the request in the input stream.
+     */
+    public static record BulkTokenResult(long index, String merchantId, String cardLastFour, String networkToken,
+                                         String cryptogram, Long elapsedMilliseconds, String error) {
+
+        static BulkTokenResult success(long index, String merchantId, String cardLastFour,
+                                       NetworkTokenService.NetworkTokenResult result) {
+            return new BulkTokenResult(index, merchantId, cardLastFour, result.networkToken(), result.cryptogram(),
+                    result.elapsedMilliseconds(), null);
+        }
+
+        static BulkTokenResult failure(long index, String merchantId, String cardLastFour, String error) {
+            return new BulkTokenResult(index, merchantId, cardLastFour, null, null, null, error);
+        }
+    }
+}
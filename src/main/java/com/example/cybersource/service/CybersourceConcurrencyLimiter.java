@@ -0,0 +1,166 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.exception.CallRejectedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency-based AIMD limit on concurrent Cybersource calls, shared by all endpoints
+ * and merchants. When Cybersource slows down the limit shrinks, and calls over it
+ * fail at once with {@link CallRejectedException} instead of queueing on the
+ * connection pool for up to the 30s call timeout. See {@link CybersourceConfig.Limiter}.
+ * <p>
+ * The current limit, the calls in flight and the rejections are published as
+ * {@code cybersource.limiter.limit}, {@code cybersource.limiter.in_flight} and
+ * {@code cybersource.limiter.rejections}.
+ */
+@Component
+public class CybersourceConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CybersourceConcurrencyLimiter.class);
+
+    static final String LIMIT = "cybersource.limiter.limit";
+    static final String IN_FLIGHT = "cybersource.limiter.in_flight";
+    static final String REJECTIONS = "cybersource.limiter.rejections";
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final MeterRegistry meterRegistry;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+
+    public CybersourceConcurrencyLimiter(CybersourceConfig cybersourceConfig, MeterRegistry meterRegistry) {
+        CybersourceConfig.Limiter config = cybersourceConfig.getLimiter();
+        this.enabled = config.isEnabled();
+        this.minLimit = Math.max(1, config.getMinLimit());
+        this.maxLimit = Math.max(minLimit, config.getMaxLimit());
+        this.backoffRatio = config.getBackoffRatio();
+        this.latencyThresholdNanos = config.getLatencyThreshold().toNanos();
+        this.limit = Math.min(maxLimit, Math.max(minLimit, config.getInitialLimit()));
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder(LIMIT, this, CybersourceConcurrencyLimiter::getLimit)
+                .description("Current limit on concurrent Cybersource calls")
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT, this, CybersourceConcurrencyLimiter::getInFlight)
+                .description("Cybersource calls in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * A limiter that lets every call through, for services built outside a Spring context.
+     */
+    public static CybersourceConcurrencyLimiter unlimited() {
+        CybersourceConfig config = new CybersourceConfig();
+        config.getLimiter().setEnabled(false);
+        return new CybersourceConcurrencyLimiter(config, new CompositeMeterRegistry());
+    }
+
+    /**
+     * Run a Cybersource call under the limit. The permit is taken on subscription and
+     * released when the call completes, fails or is cancelled; the outcome and latency
+     * of the call adjust the limit.
+     * @param endpoint names the Cybersource operation, for the rejection counter
+     * @param call the call, including its timeout
+     * @return the call, or a Mono failing with {@link CallRejectedException} when the
+     *         limit is reached
+     */
+    public <T> Mono<T> limit(String endpoint, Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                Counter.builder(REJECTIONS)
+                        .description("Cybersource calls rejected because the concurrency limit was reached")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry)
+                        .increment();
+                return Mono.error(new CallRejectedException(
+                        "Cybersource concurrency limit of " + limit + " reached, call to " + endpoint + " rejected"));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean released = new AtomicBoolean();
+            return call
+                    .doOnSuccess(result -> release(released, start, false))
+                    .doOnError(e -> release(released, start, isUpstreamFailure(e)))
+                    .doOnCancel(() -> {
+                        // A cancelled call says nothing about Cybersource's latency
+                        if (released.compareAndSet(false, true)) {
+                            inFlight.decrementAndGet();
+                        }
+                    });
+        });
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release(AtomicBoolean released, long startNanos, boolean dropped) {
+        if (released.compareAndSet(false, true)) {
+            // In flight including this call, as when it was sent
+            int inFlightAtCompletion = inFlight.getAndDecrement();
+            onSample(System.nanoTime() - startNanos, inFlightAtCompletion, dropped);
+        }
+    }
+
+    synchronized void onSample(long latencyNanos, int inFlightAtCompletion, boolean dropped) {
+        int current = limit;
+        int next = current;
+        if (dropped || latencyNanos > latencyThresholdNanos) {
+            next = Math.max(minLimit, (int) (current * backoffRatio));
+        } else if (inFlightAtCompletion * 2 >= current) {
+            // Only grow while the limit is actually being used
+            next = Math.min(maxLimit, current + 1);
+        }
+        if (next != current) {
+            limit = next;
+            logger.debug("Cybersource concurrency limit changed from {} to {}", current, next);
+        }
+    }
+
+    /**
+     * Failures that indicate Cybersource is overloaded or unreachable, as opposed to a bad request.
+     */
+    static boolean isUpstreamFailure(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is5xxServerError()
+                    || responseException.getStatusCode().value() == 429;
+        }
+        return e instanceof TimeoutException || e instanceof WebClientException;
+    }
+}
@@ -7,10 +7,12 @@ import java.net.http.HttpResponse;
 
 import com.example.cybersource.config.CybersourceConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.util.concurrent.Executor;
 
 @Component
 public class CybersourceHttpClient {
@@ -21,7 +23,11 @@ public class CybersourceHttpClient {
     @Autowired
     private JwtTokenUtil jwtTokenUtil;
 
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final HttpClient httpClient;
+
+    public CybersourceHttpClient(@Qualifier("cybersourceHttpExecutor") Executor executor) {
+        this.httpClient = HttpClient.newBuilder().executor(executor).build();
+    }
 
 
     public String get(String path) throws Exception {
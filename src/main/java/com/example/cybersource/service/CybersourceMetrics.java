@@ -0,0 +1,175 @@
+package com.example.cybersource.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Timers for each stage of a tokenization: Cybersource calls, JWT generation and
+ * token persistence. All are published with percentile histograms, so the stage
+ * behind a p99 regression can be read from the metrics endpoint. The same
+ * durations are added to the caller's {@link StageTimings}, when there is one.
+ * <p>
+ * Merchants are tagged by a hash bucket rather than their ID, so the number of
+ * series stays bounded however many merchants there are.
+ */
+@Component
+public class CybersourceMetrics {
+
+    static final String API_CALLS = "cybersource.api.calls";
+    static final String JWT_GENERATE = "cybersource.jwt.generate";
+    static final String PERSIST = "cybersource.token_storage.persist";
+
+    // Status tag when the call got no HTTP response, or succeeded through retrieve() which only passes 2xx
+    static final String NO_STATUS = "none";
+    static final String SUCCESS_STATUS = "2xx";
+
+    private final MeterRegistry meterRegistry;
+    private final int merchantBuckets;
+
+    public CybersourceMetrics(MeterRegistry meterRegistry,
+                              @Value("${cybersource.metrics.merchant-buckets:16}") int merchantBuckets) {
+        this.meterRegistry = meterRegistry;
+        this.merchantBuckets = Math.max(1, merchantBuckets);
+    }
+
+    /**
+     * Metrics that are recorded nowhere, for services built outside a Spring context.
+     */
+    public static CybersourceMetrics noop() {
+        return new CybersourceMetrics(new CompositeMeterRegistry(), 1);
+    }
+
+    /**
+     * Time an upstream Cybersource call from subscription until it completes, fails or
+     * is cancelled. When the call emits a {@link ResponseEntity} its status is tagged.
+     * @param endpoint names the Cybersource operation
+     * @param merchantId the merchant the call is made for
+     * @param call the call, including any timeout
+     * @return the call, timed
+     */
+    public <T> Mono<T> timeApiCall(String endpoint, String merchantId, Mono<T> call) {
+        return Mono.deferContextual(context -> {
+            // Captured at subscription: the callbacks run on a client thread
+            StageTimings timings = StageTimings.from(context);
+            long start = System.nanoTime();
+            return call
+                    .doOnSuccess(result -> recordApiCall(endpoint, merchantId, start, "success",
+                            result instanceof ResponseEntity<?> entity
+                                    ? Integer.toString(entity.getStatusCode().value())
+                                    : SUCCESS_STATUS, timings))
+                    .doOnError(e -> recordApiCall(endpoint, merchantId, start, outcome(e), status(e), timings))
+                    .doOnCancel(() -> recordApiCall(endpoint, merchantId, start, "cancelled", NO_STATUS, timings));
+        });
+    }
+
+    /**
+     * Record one JWT generation.
+     * @param httpMethod the method the token is for
+     * @param merchantId the merchant the token is issued for
+     * @param source "cache" when a cached token was reused, otherwise "signed"
+     * @param startNanos {@link System#nanoTime()} when generation started
+     * @param succeeded false if generation threw
+     */
+    public void recordJwt(String httpMethod, String merchantId, String source, long startNanos, boolean succeeded) {
+        StageTimings.record(StageTimings.Stage.JWT_SIGN, System.nanoTime() - startNanos);
+        record(JWT_GENERATE, "Time to produce a Cybersource JWT, including cache lookup and key loading",
+                Tags.of("method", httpMethod, "merchant_bucket", merchantBucket(merchantId),
+                        "source", source, "outcome", succeeded ? "success" : "error"),
+                startNanos);
+    }
+
+    /**
+     * Time a reactive token storage write from subscription until it completes or fails.
+     * @param mode how the document is written: "save" or "write_behind"
+     * @param merchantId the merchant the token belongs to
+     * @param write the write
+     * @return the write, timed
+     */
+    public <T> Mono<T> timePersist(String mode, String merchantId, Mono<T> write) {
+        return Mono.deferContextual(context -> {
+            StageTimings timings = StageTimings.from(context);
+            long start = System.nanoTime();
+            return write
+                    .doOnSuccess(result -> recordPersist(mode, merchantId, start, true, timings))
+                    .doOnError(e -> recordPersist(mode, merchantId, start, false, timings));
+        });
+    }
+
+    /**
+     * Record one token storage write.
+     * @param mode how the document is written: "save" or "write_behind"
+     * @param merchantId the merchant the token belongs to
+     * @param startNanos {@link System#nanoTime()} when the write started
+     * @param succeeded false if the write failed
+     */
+    public void recordPersist(String mode, String merchantId, long startNanos, boolean succeeded) {
+        recordPersist(mode, merchantId, startNanos, succeeded, StageTimings.current());
+    }
+
+    private void recordPersist(String mode, String merchantId, long startNanos, boolean succeeded, StageTimings timings) {
+        if (timings != null) {
+            timings.add(StageTimings.Stage.PERSISTENCE, System.nanoTime() - startNanos);
+        }
+        record(PERSIST, "Time to persist a payment credentials response, or to queue it with write-behind",
+                Tags.of("mode", mode, "merchant_bucket", merchantBucket(merchantId),
+                        "outcome", succeeded ? "success" : "error"),
+                startNanos);
+    }
+
+    String merchantBucket(String merchantId) {
+        return merchantId == null ? "none" : Integer.toString(Math.floorMod(merchantId.hashCode(), merchantBuckets));
+    }
+
+    private void recordApiCall(String endpoint, String merchantId, long startNanos, String outcome, String status,
+                               StageTimings timings) {
+        StageTimings.Stage stage = switch (endpoint) {
+            case "create_instrument_identifier" -> StageTimings.Stage.CREATE_INSTRUMENT_IDENTIFIER;
+            case "get_payment_credentials" -> StageTimings.Stage.PAYMENT_CREDENTIALS;
+            default -> null;
+        };
+        if (timings != null && stage != null) {
+            timings.add(stage, System.nanoTime() - startNanos);
+        }
+        record(API_CALLS, "Cybersource API calls, from request to decoded response",
+                Tags.of("endpoint", endpoint, "merchant_bucket", merchantBucket(merchantId),
+                        "outcome", outcome, "status", status),
+                startNanos);
+    }
+
+    private void record(String name, String description, Tags tags, long startNanos) {
+        Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String outcome(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            return responseException.getStatusCode().is4xxClientError() ? "client_error" : "server_error";
+        } else if (e instanceof TimeoutException) {
+            return "timeout";
+        } else if (e instanceof WebClientException) {
+            return "network_error";
+        }
+        return "error";
+    }
+
+    private static String status(Throwable e) {
+        return e instanceof WebClientResponseException responseException
+                ? Integer.toString(responseException.getStatusCode().value())
+                : NO_STATUS;
+    }
+}
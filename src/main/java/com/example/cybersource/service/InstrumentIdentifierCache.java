@@ -0,0 +1,101 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded cache of decoded Cybersource GET responses for instrument identifiers, keyed by
+ * (merchantId, instrumentIdentifierTokenId). A response is served without a remote
+ * call for {@code ttl} after it was fetched or revalidated. After that, responses
+ * that came with an ETag are kept until {@code max-age} so the next lookup can send
+ * a conditional request and reuse the body on 304 Not Modified.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cybersource.instrument-identifier.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class InstrumentIdentifierCache {
+
+    private final Cache<CacheKey, CachedResponse> cache;
+    private final Ticker ticker;
+    private final long ttlNanos;
+    private final Counter notModified;
+
+    @Autowired
+    public InstrumentIdentifierCache(MeterRegistry meterRegistry,
+                                     @Value("${cybersource.instrument-identifier.cache.max-size:10000}") long maxSize,
+                                     @Value("${cybersource.instrument-identifier.cache.ttl:60s}") Duration ttl,
+                                     @Value("${cybersource.instrument-identifier.cache.max-age:1h}") Duration maxAge) {
+        this(meterRegistry, maxSize, ttl, maxAge, Ticker.systemTicker());
+    }
+
+    InstrumentIdentifierCache(MeterRegistry meterRegistry, long maxSize, Duration ttl, Duration maxAge, Ticker ticker) {
+        this.ticker = ticker;
+        this.ttlNanos = ttl.toNanos();
+        // Without an ETag a stale response is useless, so it goes as soon as the TTL is up
+        Duration revalidationWindow = maxAge.compareTo(ttl) > 0 ? maxAge : ttl;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfter(Expiry.<CacheKey, CachedResponse>writing(
+                        (key, response) -> response.etag() != null ? revalidationWindow : ttl))
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cybersource.instrument_identifier");
+        this.notModified = Counter.builder("cybersource.instrument_identifier.cache.not_modified")
+                .description("Conditional instrument identifier requests answered with 304 Not Modified")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Look up a cached response, fresh or not.
+     * @return the cached response, or null if there is none
+     */
+    public CachedResponse get(CacheKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Whether a cached response may be returned without asking Cybersource.
+     */
+    public boolean isFresh(CachedResponse response) {
+        return ticker.read() - response.fetchedAtNanos() < ttlNanos;
+    }
+
+    /**
+     * Store a response fetched from Cybersource.
+     * @param etag the ETag the response came with, may be null
+     */
+    public void put(CacheKey key, InstrumentIdentifierResponse body, String etag) {
+        cache.put(key, new CachedResponse(body, etag, ticker.read()));
+    }
+
+    /**
+     * Record that Cybersource confirmed a cached response is unchanged, starting
+     * a new TTL for it.
+     * @return the cached body
+     */
+    public InstrumentIdentifierResponse revalidated(CacheKey key, CachedResponse response) {
+        notModified.increment();
+        cache.put(key, new CachedResponse(response.body(), response.etag(), ticker.read()));
+        return response.body();
+    }
+
+    public void invalidate(CacheKey key) {
+        cache.invalidate(key);
+    }
+
+    public record CacheKey(String merchantId, String instrumentIdentifierTokenId) {}
+
+    public record CachedResponse(InstrumentIdentifierResponse body, String etag, long fetchedAtNanos) {}
+}
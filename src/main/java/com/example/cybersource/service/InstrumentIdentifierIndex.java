@@ -0,0 +1,192 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.entity.InstrumentIdentifierFingerprint;
+import com.example.cybersource.repository.InstrumentIdentifierFingerprintRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Index from card number to the instrument identifier already created for it, so
+ * tokenizing the same card again skips the remote create. Cards are identified by an
+ * HMAC-SHA256 fingerprint under a secret key; the card number is never stored or
+ * used as a cache key.
+ * <p>
+ * Lookups go to a bounded in-memory map first, then to the
+ * {@code InstrumentIdentifierFingerprint} collection. Recording a new mapping updates
+ * the map immediately and writes to Mongo off the caller's thread. Index failures
+ * are logged and treated as misses, so they never fail a tokenization.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cybersource.instrument-identifier.dedup", name = "enabled", havingValue = "true")
+public class InstrumentIdentifierIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstrumentIdentifierIndex.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_BYTES = 32;
+
+    private final InstrumentIdentifierFingerprintRepository repository;
+    private final Scheduler blockingIoScheduler;
+    private final Mac prototype;
+    private final Cache<String, String> frontTier;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public InstrumentIdentifierIndex(InstrumentIdentifierFingerprintRepository repository,
+                                     MeterRegistry meterRegistry,
+                                     @Qualifier("blockingIoScheduler") Scheduler blockingIoScheduler,
+                                     @Value("${cybersource.instrument-identifier.dedup.hmac-key:}") String hmacKey,
+                                     @Value("${cybersource.instrument-identifier.dedup.max-size:100000}") long maxSize) {
+        this.repository = repository;
+        this.blockingIoScheduler = blockingIoScheduler;
+        this.prototype = newMac(hmacKey);
+        this.frontTier = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, frontTier, "cybersource.instrument_identifier_index");
+        this.hits = Counter.builder("cybersource.instrument_identifier.dedup")
+                .description("Instrument identifier creates answered from the fingerprint index")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("cybersource.instrument_identifier.dedup")
+                .description("Instrument identifier creates answered from the fingerprint index")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fingerprint a card number. Separators are ignored, so "4111 1111 1111 1111"
+     * and "4111111111111111" match.
+     * @param cardNumber the card number
+     * @return the base64url HMAC-SHA256 of the card digits
+     */
+    public String fingerprint(String cardNumber) {
+        StringBuilder digits = new StringBuilder(cardNumber.length());
+        for (int i = 0; i < cardNumber.length(); i++) {
+            char c = cardNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        Mac mac;
+        try {
+            mac = (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HMAC provider does not support cloning", e);
+        }
+        byte[] hmac = mac.doFinal(digits.toString().getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hmac);
+    }
+
+    /**
+     * Find the instrument identifier recorded for a card.
+     * @param merchantId the merchant the instrument identifier belongs to
+     * @param fingerprint the card's {@link #fingerprint(String)}
+     * @return Optional containing the instrument identifier ID, if known
+     */
+    public Optional<String> find(String merchantId, String fingerprint) {
+        String id = InstrumentIdentifierFingerprint.id(merchantId, fingerprint);
+        String instrumentIdentifierId = frontTier.getIfPresent(id);
+        if (instrumentIdentifierId == null) {
+            instrumentIdentifierId = load(id);
+        }
+        (instrumentIdentifierId != null ? hits : misses).increment();
+        return Optional.ofNullable(instrumentIdentifierId);
+    }
+
+    /**
+     * Non-blocking variant of {@link #find(String, String)}; the Mongo lookup runs on
+     * the blocking I/O scheduler.
+     * @return a Mono emitting the instrument identifier ID, or empty if unknown
+     */
+    public Mono<String> findReactive(String merchantId, String fingerprint) {
+        String id = InstrumentIdentifierFingerprint.id(merchantId, fingerprint);
+        String cached = frontTier.getIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+            return Mono.just(cached);
+        }
+        return Mono.fromCallable(() -> load(id))
+                .subscribeOn(blockingIoScheduler)
+                .doOnNext(instrumentIdentifierId -> hits.increment())
+                .switchIfEmpty(Mono.fromRunnable(misses::increment));
+    }
+
+    /**
+     * Record the instrument identifier created for a card.
+     */
+    public void record(String merchantId, String fingerprint, String instrumentIdentifierId) {
+        String id = InstrumentIdentifierFingerprint.id(merchantId, fingerprint);
+        frontTier.put(id, instrumentIdentifierId);
+        InstrumentIdentifierFingerprint document = new InstrumentIdentifierFingerprint(
+                id, merchantId, fingerprint, instrumentIdentifierId, LocalDateTime.now());
+        Mono.fromRunnable(() -> repository.save(document))
+                .subscribeOn(blockingIoScheduler)
+                .subscribe(null, e -> logger.warn("Failed to persist instrument identifier fingerprint for merchant: {}",
+                                                 merchantId, e));
+    }
+
+    /**
+     * Forget a mapping, e.g. because Cybersource no longer knows the instrument identifier.
+     */
+    public void evict(String merchantId, String fingerprint) {
+        String id = InstrumentIdentifierFingerprint.id(merchantId, fingerprint);
+        frontTier.invalidate(id);
+        Mono.fromRunnable(() -> repository.deleteById(id))
+                .subscribeOn(blockingIoScheduler)
+                .subscribe(null, e -> logger.warn("Failed to delete instrument identifier fingerprint for merchant: {}",
+                                                 merchantId, e));
+    }
+
+    private String load(String id) {
+        try {
+            String instrumentIdentifierId = repository.findById(id)
+                    .map(InstrumentIdentifierFingerprint::getInstrumentIdentifierId)
+                    .orElse(null);
+            if (instrumentIdentifierId != null) {
+                frontTier.put(id, instrumentIdentifierId);
+            }
+            return instrumentIdentifierId;
+        } catch (org.springframework.dao.DataAccessException e) {
+            logger.warn("Instrument identifier fingerprint lookup failed, creating a new instrument identifier", e);
+            return null;
+        }
+    }
+
+    private static Mac newMac(String hmacKey) {
+        byte[] key = hmacKey == null || hmacKey.isBlank() ? new byte[0] : Base64.getDecoder().decode(hmacKey.trim());
+        if (key.length < MIN_KEY_BYTES) {
+            throw new IllegalStateException("cybersource.instrument-identifier.dedup.hmac-key must be a base64 key of at least "
+                    + MIN_KEY_BYTES + " bytes");
+        }
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to initialise " + HMAC_ALGORITHM, e);
+        }
+    }
+}
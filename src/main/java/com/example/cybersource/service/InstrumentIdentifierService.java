@@ -1,17 +1,23 @@
 package com.example.cybersource.service;
 
-import com.cybersource.authsdk.core.MerchantConfig;
+import com.example.cybersource.dto.InstrumentIdentifierRequest;
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
 import com.example.cybersource.exception.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 import com.example.cybersource.config.CybersourceConfig;
 
 import java.time.Duration;
+import java.util.function.Function;
 
 @Service
 public class InstrumentIdentifierService {
@@ -26,112 +32,269 @@ public class InstrumentIdentifierService {
     
     @Autowired
     private JwtTokenUtil jwtTokenUtil;
+    
+    @Autowired(required = false)
+    private InstrumentIdentifierCache instrumentIdentifierCache;
+    
+    // Replaced by the Spring bean; the default keeps instances built without a context working
+    @Autowired(required = false)
+    private CybersourceMetrics cybersourceMetrics = CybersourceMetrics.noop();
+
+    @Autowired(required = false)
+    private CybersourceConcurrencyLimiter concurrencyLimiter = CybersourceConcurrencyLimiter.unlimited();
 
-    public String createInstrumentIdentifier(String cardNumber, String merchantId) throws CybersourceException {
+    @Autowired(required = false)
+    private MerchantCircuitBreaker circuitBreaker = MerchantCircuitBreaker.disabled();
+
+    public InstrumentIdentifierResponse createInstrumentIdentifier(String cardNumber, String merchantId) throws CybersourceException {
         logger.info("Creating instrument identifier for merchant: {} and card ending in: {}", 
                    merchantId, cardNumber.substring(Math.max(0, cardNumber.length() - 4)));
         
         try {
-            String payload = String.format("""
-            {
-                "card": {
-                    "number": "%s"
-                }
-            }
-            """, cardNumber);
-
-            // Build the API path
-            String path = "/pts/v2/instrumentidentifiers";
-            
-            // Generate JWT for authentication with the specific merchant ID
-            String jwt = jwtTokenUtil.generateJwt(
-                merchantId, 
-                cybersourceConfig.getApiKey(), 
-                cybersourceConfig.getSecretKey(), 
-                path, 
-                "POST"
-            );
-            
-            // Make the API call using WebClient with specific merchant ID
-            String response = webClient.post()
-                    .uri(cybersourceConfig.getBaseUrl() + path)
-                    .header("Content-Type", "application/json")
-                    .header("v-c-merchant-id", merchantId)
-                    .header("Authorization", "Bearer " + jwt)
-                    .bodyValue(payload)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(Duration.ofSeconds(30))
-                    .block();
+            InstrumentIdentifierResponse response = postInstrumentIdentifier(cardNumber, merchantId).block();
             
             logger.info("Successfully created instrument identifier for merchant: {}", merchantId);
             return response;
             
-        } catch (WebClientResponseException e) {
-            logger.error("Cybersource API error while creating instrument identifier for merchant {}: Status={}, Body={}", 
-                        merchantId, e.getStatusCode(), e.getResponseBodyAsString(), e);
-            throw new CybersourceApiException(
-                "Failed to create instrument identifier", 
-                e.getStatusCode().value(), 
-                e.getResponseBodyAsString(), 
-                e
-            );
-        } catch (WebClientException e) {
-            logger.error("Network error while creating instrument identifier for merchant {}", merchantId, e);
-            throw new NetworkException("Network error while calling Cybersource API", e);
         } catch (Exception e) {
-            logger.error("Unexpected error while creating instrument identifier for merchant {}", merchantId, e);
-            throw new CybersourceException("Unexpected error while creating instrument identifier", e);
+            // block() wraps checked failures, such as a rejection by the concurrency limiter
+            throw translateCreateFailure(Exceptions.unwrap(e), merchantId);
         }
     }
 
-    public String getInstrumentIdentifier(String instrumentIdentifierTokenId, String merchantId) throws CybersourceException {
+    /**
+     * Non-blocking variant of {@link #createInstrumentIdentifier(String, String)}.
+     * Failures are signalled with the same exception types as the blocking method.
+     * @param cardNumber the card number to tokenize
+     * @param merchantId the merchant ID for the request
+     * @return a Mono emitting the decoded Cybersource response
+     */
+    public Mono<InstrumentIdentifierResponse> createInstrumentIdentifierReactive(String cardNumber, String merchantId) {
+        return Mono.defer(() -> {
+                    logger.info("Creating instrument identifier for merchant: {} and card ending in: {}",
+                               merchantId, cardNumber.substring(Math.max(0, cardNumber.length() - 4)));
+                    return postInstrumentIdentifier(cardNumber, merchantId);
+                })
+                .doOnSuccess(response -> logger.info("Successfully created instrument identifier for merchant: {}", merchantId))
+                .onErrorMap(e -> translateCreateFailure(e, merchantId));
+    }
+
+    public InstrumentIdentifierResponse getInstrumentIdentifier(String instrumentIdentifierTokenId, String merchantId)
+            throws CybersourceException {
+        return getInstrumentIdentifier(instrumentIdentifierTokenId, merchantId, true);
+    }
+
+    /**
+     * Get an instrument identifier, optionally bypassing the response cache.
+     * @param instrumentIdentifierTokenId the instrument identifier token ID
+     * @param merchantId the merchant ID for the request
+     * @param useCache false to always fetch the current response from Cybersource;
+     *                 the fetched response still replaces the cached one
+     * @return the decoded Cybersource response
+     */
+    public InstrumentIdentifierResponse getInstrumentIdentifier(String instrumentIdentifierTokenId, String merchantId,
+                                                                boolean useCache)
+            throws CybersourceException {
         logger.info("Getting instrument identifier: {} for merchant: {}", instrumentIdentifierTokenId, merchantId);
         
         try {
-            // Build the API path
-            String path = "/pts/v2/instrumentidentifiers/" + instrumentIdentifierTokenId;
+            InstrumentIdentifierResponse response = fetchInstrumentIdentifier(instrumentIdentifierTokenId, merchantId, useCache).block();
             
+            logger.info("Successfully retrieved instrument identifier: {} for merchant: {}", 
+                       instrumentIdentifierTokenId, merchantId);
+            return response;
+            
+        } catch (Exception e) {
+            throw translateGetFailure(Exceptions.unwrap(e), instrumentIdentifierTokenId, merchantId);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #getInstrumentIdentifier(String, String)}.
+     * @param instrumentIdentifierTokenId the instrument identifier token ID
+     * @param merchantId the merchant ID for the request
+     * @return a Mono emitting the decoded Cybersource response
+     */
+    public Mono<InstrumentIdentifierResponse> getInstrumentIdentifierReactive(String instrumentIdentifierTokenId, String merchantId) {
+        return getInstrumentIdentifierReactive(instrumentIdentifierTokenId, merchantId, true);
+    }
+
+    /**
+     * Non-blocking variant of {@link #getInstrumentIdentifier(String, String, boolean)}.
+     */
+    public Mono<InstrumentIdentifierResponse> getInstrumentIdentifierReactive(String instrumentIdentifierTokenId,
+                                                                              String merchantId, boolean useCache) {
+        return Mono.defer(() -> {
+                    logger.info("Getting instrument identifier: {} for merchant: {}", instrumentIdentifierTokenId, merchantId);
+                    return fetchInstrumentIdentifier(instrumentIdentifierTokenId, merchantId, useCache);
+                })
+                .doOnSuccess(response -> logger.info("Successfully retrieved instrument identifier: {} for merchant: {}",
+                                                     instrumentIdentifierTokenId, merchantId))
+                .onErrorMap(e -> translateGetFailure(e, instrumentIdentifierTokenId, merchantId));
+    }
+
+    private Mono<InstrumentIdentifierResponse> postInstrumentIdentifier(String cardNumber, String merchantId) {
+        // Build the API path
+        String path = "/pts/v2/instrumentidentifiers";
+        
+        // Signed only once the breaker and limiter admit the call, so rejected calls skip the RSA signature
+        Mono<InstrumentIdentifierResponse> call = Mono.deferContextual(context -> {
             // Generate JWT for authentication with the specific merchant ID
-            String jwt = jwtTokenUtil.generateJwt(
-                merchantId, 
-                cybersourceConfig.getApiKey(), 
-                cybersourceConfig.getSecretKey(), 
-                path, 
-                "GET"
-            );
+            String jwt;
+            try (StageTimings.Scope ignored = StageTimings.bind(context)) {
+                jwt = jwtTokenUtil.generateJwt(
+                    merchantId, 
+                    cybersourceConfig.getApiKey(), 
+                    cybersourceConfig.getSecretKey(), 
+                    path, 
+                    "POST"
+                );
+            } catch (Exception e) {
+                return Mono.error(e);
+            }
             
             // Make the API call using WebClient with specific merchant ID
-            String response = webClient.get()
+            return cybersourceMetrics.timeApiCall("create_instrument_identifier", merchantId, webClient.post()
                     .uri(cybersourceConfig.getBaseUrl() + path)
+                    .header("Content-Type", "application/json")
                     .header("v-c-merchant-id", merchantId)
                     .header("Authorization", "Bearer " + jwt)
+                    // The JSON codec writes the request straight into the outbound buffer
+                    .bodyValue(InstrumentIdentifierRequest.of(cardNumber))
                     .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(Duration.ofSeconds(30))
-                    .block();
-            
-            logger.info("Successfully retrieved instrument identifier: {} for merchant: {}", 
-                       instrumentIdentifierTokenId, merchantId);
-            return response;
-            
-        } catch (WebClientResponseException e) {
+                    .bodyToMono(InstrumentIdentifierResponse.class)
+                    .timeout(Duration.ofSeconds(30)));
+        });
+        return circuitBreaker.execute(merchantId, "create_instrument_identifier",
+                concurrencyLimiter.limit("create_instrument_identifier", call));
+    }
+
+    private Mono<InstrumentIdentifierResponse> fetchInstrumentIdentifier(String instrumentIdentifierTokenId, String merchantId,
+                                                                         boolean useCache) {
+        if (instrumentIdentifierCache == null) {
+            return fetchInstrumentIdentifier(instrumentIdentifierTokenId, merchantId);
+        }
+
+        InstrumentIdentifierCache.CacheKey key = new InstrumentIdentifierCache.CacheKey(merchantId, instrumentIdentifierTokenId);
+        InstrumentIdentifierCache.CachedResponse cached = useCache ? instrumentIdentifierCache.get(key) : null;
+        if (cached != null && instrumentIdentifierCache.isFresh(cached)) {
+            logger.debug("Serving cached instrument identifier: {} for merchant: {}", instrumentIdentifierTokenId, merchantId);
+            return Mono.just(cached.body());
+        }
+
+        // Revalidate a stale response instead of downloading it again
+        String etag = cached != null ? cached.etag() : null;
+        return timedGet(instrumentIdentifierTokenId, merchantId, etag,
+                        request -> request.retrieve().toEntity(InstrumentIdentifierResponse.class))
+                .mapNotNull(entity -> {
+                    if (entity.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && cached != null) {
+                        return instrumentIdentifierCache.revalidated(key, cached);
+                    }
+                    if (entity.getBody() != null) {
+                        instrumentIdentifierCache.put(key, entity.getBody(), entity.getHeaders().getETag());
+                    }
+                    return entity.getBody();
+                })
+                // Cybersource no longer has it, so a stale copy must not be served or revalidated
+                .doOnError(WebClientResponseException.NotFound.class, e -> instrumentIdentifierCache.invalidate(key));
+    }
+
+    private Mono<InstrumentIdentifierResponse> fetchInstrumentIdentifier(String instrumentIdentifierTokenId, String merchantId) {
+        return timedGet(instrumentIdentifierTokenId, merchantId, null,
+                request -> request.retrieve().bodyToMono(InstrumentIdentifierResponse.class));
+    }
+
+    /**
+     * Signed GET of an instrument identifier, shared by the cached and uncached fetches.
+     * @param etag sent as If-None-Match when not null
+     */
+    private WebClient.RequestHeadersSpec<?> instrumentIdentifierRequest(String instrumentIdentifierTokenId, String merchantId,
+                                                                        String etag) throws Exception {
+        // Build the API path
+        String path = "/pts/v2/instrumentidentifiers/" + instrumentIdentifierTokenId;
+        
+        // Generate JWT for authentication with the specific merchant ID
+        String jwt = jwtTokenUtil.generateJwt(
+            merchantId, 
+            cybersourceConfig.getApiKey(), 
+            cybersourceConfig.getSecretKey(), 
+            path, 
+            "GET"
+        );
+
+        WebClient.RequestHeadersSpec<?> request = webClient.get()
+                .uri(cybersourceConfig.getBaseUrl() + path)
+                .header("v-c-merchant-id", merchantId)
+                .header("Authorization", "Bearer " + jwt);
+        if (etag != null) {
+            request = request.header(HttpHeaders.IF_NONE_MATCH, etag);
+        }
+        return request;
+    }
+
+    /**
+     * GET of an instrument identifier through the merchant's circuit breaker and the
+     * concurrency limiter. The request is signed only once both admit the call.
+     * @param exchange sends the signed request and decodes the response
+     */
+    private <T> Mono<T> timedGet(String instrumentIdentifierTokenId, String merchantId, String etag,
+                                 Function<WebClient.RequestHeadersSpec<?>, Mono<T>> exchange) {
+        Mono<T> call = Mono.deferContextual(context -> {
+            WebClient.RequestHeadersSpec<?> request;
+            try (StageTimings.Scope ignored = StageTimings.bind(context)) {
+                request = instrumentIdentifierRequest(instrumentIdentifierTokenId, merchantId, etag);
+            } catch (Exception e) {
+                return Mono.error(e);
+            }
+            return cybersourceMetrics.timeApiCall("get_instrument_identifier", merchantId,
+                    exchange.apply(request).timeout(Duration.ofSeconds(30)));
+        });
+        return circuitBreaker.execute(merchantId, "get_instrument_identifier",
+                concurrencyLimiter.limit("get_instrument_identifier", call));
+    }
+
+    private CybersourceException translateCreateFailure(Throwable e, String merchantId) {
+        if (e instanceof CybersourceException cybersourceException) {
+            return cybersourceException;
+        } else if (e instanceof WebClientResponseException responseException) {
+            logger.error("Cybersource API error while creating instrument identifier for merchant {}: Status={}, Body={}", 
+                        merchantId, responseException.getStatusCode(), responseException.getResponseBodyAsString(), e);
+            return new CybersourceApiException(
+                "Failed to create instrument identifier", 
+                responseException.getStatusCode().value(), 
+                responseException.getResponseBodyAsString(), 
+                e
+            );
+        } else if (e instanceof WebClientException) {
+            logger.error("Network error while creating instrument identifier for merchant {}", merchantId, e);
+            return new NetworkException("Network error while calling Cybersource API", e);
+        } else {
+            logger.error("Unexpected error while creating instrument identifier for merchant {}", merchantId, e);
+            return new CybersourceException("Unexpected error while creating instrument identifier", e);
+        }
+    }
+
+    private CybersourceException translateGetFailure(Throwable e, String instrumentIdentifierTokenId, String merchantId) {
+        if (e instanceof CybersourceException cybersourceException) {
+            return cybersourceException;
+        } else if (e instanceof WebClientResponseException responseException) {
             logger.error("Cybersource API error while getting instrument identifier {} for merchant {}: Status={}, Body={}", 
-                        instrumentIdentifierTokenId, merchantId, e.getStatusCode(), e.getResponseBodyAsString(), e);
-            throw new CybersourceApiException(
+                        instrumentIdentifierTokenId, merchantId, responseException.getStatusCode(),
+                        responseException.getResponseBodyAsString(), e);
+            return new CybersourceApiException(
                 "Failed to get instrument identifier", 
-                e.getStatusCode().value(), 
-                e.getResponseBodyAsString(), 
+                responseException.getStatusCode().value(), 
+                responseException.getResponseBodyAsString(), 
                 e
             );
-        } catch (WebClientException e) {
+        } else if (e instanceof WebClientException) {
             logger.error("Network error while getting instrument identifier {} for merchant {}", 
                         instrumentIdentifierTokenId, merchantId, e);
-            throw new NetworkException("Network error while calling Cybersource API", e);
-        } catch (Exception e) {
+            return new NetworkException("Network error while calling Cybersource API", e);
+        } else {
             logger.error("Unexpected error while getting instrument identifier {} for merchant {}", 
                         instrumentIdentifierTokenId, merchantId, e);
-            throw new CybersourceException("Unexpected error while getting instrument identifier", e);
+            return new CybersourceException("Unexpected error while getting instrument identifier", e);
         }
     }
-}
\ No newline at end of file
+}
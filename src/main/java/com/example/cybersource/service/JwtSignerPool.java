@@ -0,0 +1,133 @@
+package com.example.cybersource.service;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one prepared RS256 signer per (merchantId, kid). Each signer holds a
+ * bounded pool of {@link Signature} objects already initialised with the
+ * private key, so signing skips the provider lookup and key setup that
+ * {@code Algorithm.RSA256} repeats on every call.
+ */
+@Component
+public class JwtSignerPool {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    private final ConcurrentMap<SignerKey, PooledRsaSigner> signers = new ConcurrentHashMap<>();
+    private final Timer signTimer;
+    private final int poolSize;
+
+    public JwtSignerPool(MeterRegistry meterRegistry,
+                         @Value("${cybersource.jwt.signature-pool-size:0}") int poolSize) {
+        this.poolSize = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
+        this.signTimer = Timer.builder("cybersource.jwt.sign")
+                .description("Time spent producing RS256 signatures for Cybersource JWTs")
+                .register(meterRegistry);
+        Gauge.builder("cybersource.jwt.signers", signers, ConcurrentMap::size)
+                .description("Number of prepared JWT signers (one per merchantId and kid)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Return the prepared signer for the given merchant and key id, rebuilding it
+     * if the private key has been rotated since it was created.
+     * @param merchantId the merchant the token is issued for
+     * @param kid the key id placed in the JWT header
+     * @param privateKey the current signing key
+     * @return an {@link Algorithm} that signs with pooled {@link Signature} instances
+     */
+    public Algorithm signerFor(String merchantId, String kid, RSAPrivateKey privateKey) {
+        SignerKey key = new SignerKey(merchantId, kid);
+        PooledRsaSigner signer = signers.get(key);
+        if (signer != null && signer.privateKey == privateKey) {
+            return signer;
+        }
+        return signers.compute(key, (k, existing) ->
+                existing != null && existing.privateKey == privateKey
+                        ? existing
+                        : new PooledRsaSigner(privateKey, signTimer, poolSize));
+    }
+
+    private record SignerKey(String merchantId, String kid) {}
+
+    static final class PooledRsaSigner extends Algorithm {
+
+        private final RSAPrivateKey privateKey;
+        private final Timer signTimer;
+        private final BlockingQueue<Signature> idle;
+        private volatile Algorithm verifier;
+
+        PooledRsaSigner(RSAPrivateKey privateKey, Timer signTimer, int poolSize) {
+            super("RS256", SIGNATURE_ALGORITHM);
+            this.privateKey = privateKey;
+            this.signTimer = signTimer;
+            this.idle = new ArrayBlockingQueue<>(poolSize);
+        }
+
+        @Override
+        public byte[] sign(byte[] contentBytes) throws SignatureGenerationException {
+            long start = System.nanoTime();
+            try {
+                Signature signature = idle.poll();
+                if (signature == null) {
+                    signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+                    signature.initSign(privateKey);
+                }
+                signature.update(contentBytes);
+                byte[] result = signature.sign();
+                // sign() resets the object to its post-initSign state, so it can be reused
+                idle.offer(signature);
+                return result;
+            } catch (GeneralSecurityException e) {
+                throw new SignatureGenerationException(this, e);
+            } finally {
+                signTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Verifies against the public half of the signing key, built on first use.
+         * Only keys that carry their public exponent (CRT keys, as read from PEM key
+         * pairs) can be verified; tokens are rejected for any other key.
+         */
+        @Override
+        public void verify(DecodedJWT jwt) throws SignatureVerificationException {
+            Algorithm algorithm = verifier;
+            if (algorithm == null) {
+                if (!(privateKey instanceof RSAPrivateCrtKey crtKey)) {
+                    throw new SignatureVerificationException(this);
+                }
+                try {
+                    RSAPublicKey publicKey = (RSAPublicKey) KeyFactory.getInstance("RSA")
+                            .generatePublic(new RSAPublicKeySpec(crtKey.getModulus(), crtKey.getPublicExponent()));
+                    algorithm = Algorithm.RSA256(publicKey, null);
+                } catch (GeneralSecurityException e) {
+                    throw new SignatureVerificationException(this, e);
+                }
+                verifier = algorithm;
+            }
+            algorithm.verify(jwt);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.cybersource.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+
+/**
+ * Bounded cache of signed JWTs for requests without a body. A token is reused
+ * until {@code safetyMargin} before its expiry, after which it is evicted and
+ * the next request signs a fresh one. Requests that carry a body (POST) are
+ * never cached, so a token is never replayed against a different payload.
+ */
+@Component
+public class JwtTokenCache {
+
+    private final Cache<CacheKey, String> cache;
+    private final boolean enabled;
+
+    @Autowired
+    public JwtTokenCache(MeterRegistry meterRegistry,
+                         @Value("${cybersource.jwt.cache.max-size:10000}") long maxSize,
+                         @Value("${cybersource.jwt.cache.safety-margin:60s}") Duration safetyMargin) {
+        this(meterRegistry, maxSize, safetyMargin, Ticker.systemTicker());
+    }
+
+    JwtTokenCache(MeterRegistry meterRegistry, long maxSize, Duration safetyMargin, Ticker ticker) {
+        Duration reuseWindow = JwtTokenUtil.TOKEN_LIFETIME.minus(safetyMargin);
+        this.enabled = maxSize > 0 && !reuseWindow.isNegative() && !reuseWindow.isZero();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfterWrite(enabled ? reuseWindow : Duration.ZERO)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cybersource.jwt");
+    }
+
+    /**
+     * Whether tokens for the given HTTP method may be reused.
+     * @param httpMethod the HTTP method the token is scoped to
+     * @return true only for body-less methods while the cache is enabled
+     */
+    public boolean isReusable(String httpMethod) {
+        return enabled && "GET".equalsIgnoreCase(httpMethod);
+    }
+
+    public String get(CacheKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(CacheKey key, String jwt) {
+        cache.put(key, jwt);
+    }
+
+    /**
+     * Identifies a reusable token. Besides (merchantId, resource, method) the key
+     * carries the subject and kid, since both are part of the signed token, and the
+     * identity of the signing key, so tokens signed before a key file is reloaded
+     * under the same kid are not served afterwards.
+     */
+    public record CacheKey(String merchantId, String apiKey, String kid, String resourcePath, String httpMethod,
+                           int signingKeyIdentity) {
+
+        public CacheKey(String merchantId, String apiKey, String kid, String resourcePath, String httpMethod,
+                        RSAPrivateKey signingKey) {
+            this(merchantId, apiKey, kid, resourcePath, httpMethod, System.identityHashCode(signingKey));
+        }
+    }
+}
@@ -6,23 +6,64 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
 import java.util.Date;
 
 @Component
 public class JwtTokenUtil {
 
+    static final Duration TOKEN_LIFETIME = Duration.ofMinutes(5);
+
     @Autowired
     private com.example.cybersource.util.KeyLoader keyLoader;
 
+    @Autowired
+    private JwtSignerPool jwtSignerPool;
+
+    @Autowired
+    private JwtTokenCache jwtTokenCache;
+
+    // Replaced by the Spring bean; the default keeps instances built without a context working
+    @Autowired(required = false)
+    private CybersourceMetrics cybersourceMetrics = CybersourceMetrics.noop();
+
     // You can inject this path via config
     private final String privateKeyPath = "/path/to/your/private_key.pem";
 
     public String generateJwt(String merchantId, String apiKey, String kid, String resourcePath, String httpMethod) throws Exception {
+        long start = System.nanoTime();
+        String source = "signed";
+        boolean succeeded = false;
+        try {
+            String jwt;
+            // Cheap within the key loader's reload interval; picks up a rotated key before the cache lookup
+            RSAPrivateKey privateKey = keyLoader.loadPrivateKey(java.nio.file.Paths.get(privateKeyPath));
+            if (!jwtTokenCache.isReusable(httpMethod)) {
+                jwt = signJwt(merchantId, apiKey, kid, resourcePath, httpMethod, privateKey);
+            } else {
+                JwtTokenCache.CacheKey cacheKey =
+                        new JwtTokenCache.CacheKey(merchantId, apiKey, kid, resourcePath, httpMethod, privateKey);
+                jwt = jwtTokenCache.get(cacheKey);
+                if (jwt == null) {
+                    jwt = signJwt(merchantId, apiKey, kid, resourcePath, httpMethod, privateKey);
+                    jwtTokenCache.put(cacheKey, jwt);
+                } else {
+                    source = "cache";
+                }
+            }
+            succeeded = true;
+            return jwt;
+        } finally {
+            cybersourceMetrics.recordJwt(httpMethod, merchantId, source, start, succeeded);
+        }
+    }
+
+    private String signJwt(String merchantId, String apiKey, String kid, String resourcePath, String httpMethod,
+                           RSAPrivateKey privateKey) {
         long nowMillis = System.currentTimeMillis();
-        long expMillis = nowMillis + (5 * 60 * 1000);
+        long expMillis = nowMillis + TOKEN_LIFETIME.toMillis();
 
-        RSAPrivateKey privateKey = keyLoader.loadPrivateKey(java.nio.file.Paths.get(privateKeyPath));
-        Algorithm algorithm = Algorithm.RSA256(null, privateKey);
+        Algorithm algorithm = jwtSignerPool.signerFor(merchantId, kid, privateKey);
 
         return JWT.create()
                 .withKeyId(kid) // 'kid' header, required by Cybersource
@@ -0,0 +1,281 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.exception.CallRejectedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-merchant circuit breaker and bulkhead for Cybersource calls, so one merchant
+ * whose calls keep failing or hanging cannot take the capacity of the others.
+ * See {@link CybersourceConfig.CircuitBreaker} for the thresholds. It wraps the
+ * {@link CybersourceConcurrencyLimiter}, so calls of a merchant whose circuit is open
+ * never take one of the shared permits.
+ * <p>
+ * Only Cybersource answering with another 4xx counts as a success. Everything else
+ * fails: timeouts, network failures, 5xx, 429, 401 and 403 responses, and JWTs that
+ * cannot be signed for the merchant. A merchant with bad credentials is therefore
+ * cut off too. Callers sign inside the call, so calls rejected here never pay for the
+ * signature. Rejected calls fail at
+ * once with {@link CallRejectedException}, without reaching Cybersource, and are
+ * counted in {@code cybersource.circuit_breaker.rejections} by reason. State changes
+ * are counted in {@code cybersource.circuit_breaker.transitions}.
+ * <p>
+ * Circuits of merchants without calls for {@link #IDLE_EXPIRY} (or the open duration,
+ * if longer) are dropped, and at most {@link #MAX_MERCHANTS} are kept. A dropped
+ * circuit starts again closed with an empty window.
+ */
+@Component
+public class MerchantCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(MerchantCircuitBreaker.class);
+
+    static final String REJECTIONS = "cybersource.circuit_breaker.rejections";
+    static final String TRANSITIONS = "cybersource.circuit_breaker.transitions";
+
+    static final long MAX_MERCHANTS = 100_000;
+    static final Duration IDLE_EXPIRY = Duration.ofMinutes(10);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final CybersourceConfig.CircuitBreaker config;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final Cache<String, Circuit> circuits;
+
+    @Autowired
+    public MerchantCircuitBreaker(CybersourceConfig cybersourceConfig, MeterRegistry meterRegistry) {
+        this(cybersourceConfig, meterRegistry, System::nanoTime);
+    }
+
+    MerchantCircuitBreaker(CybersourceConfig cybersourceConfig, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.config = cybersourceConfig.getCircuitBreaker();
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+        // An open circuit must outlive its open duration, or an idle merchant would skip it
+        Duration idleExpiry = config.getOpenDuration().compareTo(IDLE_EXPIRY) > 0 ? config.getOpenDuration() : IDLE_EXPIRY;
+        this.circuits = Caffeine.newBuilder()
+                .maximumSize(MAX_MERCHANTS)
+                .expireAfterAccess(idleExpiry)
+                .ticker(nanoClock::getAsLong)
+                .build();
+    }
+
+    /**
+     * A breaker that lets every call through, for services built outside a Spring context.
+     */
+    public static MerchantCircuitBreaker disabled() {
+        CybersourceConfig config = new CybersourceConfig();
+        config.getCircuitBreaker().setEnabled(false);
+        return new MerchantCircuitBreaker(config, new CompositeMeterRegistry());
+    }
+
+    /**
+     * Run a Cybersource call through the merchant's bulkhead and circuit. Permission is
+     * checked on subscription, and the outcome is recorded when the call completes or fails.
+     * @param merchantId the merchant the call is made for
+     * @param endpoint names the Cybersource operation, for the rejection counter
+     * @param call the call, including its timeout
+     * @return the call, or a Mono failing with {@link CallRejectedException} when the
+     *         merchant's circuit is open or its bulkhead is full
+     */
+    public <T> Mono<T> execute(String merchantId, String endpoint, Mono<T> call) {
+        if (!config.isEnabled()) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            Circuit circuit = circuits.get(merchantId, id -> new Circuit());
+            if (!circuit.enterBulkhead()) {
+                return reject(endpoint, "bulkhead", "Too many concurrent Cybersource calls for merchant "
+                        + merchantId + ", call to " + endpoint + " rejected");
+            }
+            Boolean probe = circuit.tryAcquire(merchantId);
+            if (probe == null) {
+                circuit.leaveBulkhead();
+                return reject(endpoint, "open", "Circuit breaker open for merchant "
+                        + merchantId + ", call to " + endpoint + " rejected");
+            }
+            AtomicBoolean released = new AtomicBoolean();
+            return call
+                    .doOnSuccess(result -> {
+                        if (released.compareAndSet(false, true)) {
+                            circuit.onResult(merchantId, probe, false);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (released.compareAndSet(false, true)) {
+                            if (e instanceof CallRejectedException) {
+                                // Refused locally by the concurrency limiter; Cybersource was not called
+                                circuit.onAbandoned(probe);
+                            } else {
+                                circuit.onResult(merchantId, probe, isFailure(e));
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (released.compareAndSet(false, true)) {
+                            circuit.onAbandoned(probe);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Upstream failures, authentication and authorization failures, and anything that
+     * failed before Cybersource answered, such as signing the JWT with the merchant's key.
+     */
+    static boolean isFailure(Throwable e) {
+        if (e instanceof WebClientResponseException responseException) {
+            int status = responseException.getStatusCode().value();
+            return status == 401 || status == 403 || CybersourceConcurrencyLimiter.isUpstreamFailure(e);
+        }
+        return true;
+    }
+
+    State state(String merchantId) {
+        Circuit circuit = circuits.getIfPresent(merchantId);
+        return circuit == null ? State.CLOSED : circuit.state;
+    }
+
+    long trackedMerchants() {
+        circuits.cleanUp();
+        return circuits.estimatedSize();
+    }
+
+    private <T> Mono<T> reject(String endpoint, String reason, String message) {
+        Counter.builder(REJECTIONS)
+                .description("Cybersource calls rejected by a merchant's circuit breaker or bulkhead")
+                .tag("endpoint", endpoint)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        return Mono.error(new CallRejectedException(message));
+    }
+
+    /**
+     * State of one merchant. Outcomes of the last calls are kept in a ring while closed;
+     * all state changes happen under the circuit's lock.
+     */
+    private final class Circuit {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final boolean[] failures = new boolean[Math.max(1, config.getSlidingWindowSize())];
+        private int next;
+        private int recorded;
+        private int failed;
+
+        private volatile State state = State.CLOSED;
+        private long openedAtNanos;
+        private int probesInFlight;
+        private int probesSucceeded;
+
+        boolean enterBulkhead() {
+            if (inFlight.incrementAndGet() > config.getMaxConcurrentCalls()) {
+                inFlight.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        void leaveBulkhead() {
+            inFlight.decrementAndGet();
+        }
+
+        /**
+         * @return null if the call is rejected, otherwise whether it is a half-open probe
+         */
+        synchronized Boolean tryAcquire(String merchantId) {
+            if (state == State.OPEN) {
+                if (nanoClock.getAsLong() - openedAtNanos < config.getOpenDuration().toNanos()) {
+                    return null;
+                }
+                transition(merchantId, State.HALF_OPEN);
+                probesInFlight = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight >= Math.max(1, config.getHalfOpenProbes())) {
+                    return null;
+                }
+                probesInFlight++;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void onResult(String merchantId, boolean probe, boolean failure) {
+            leaveBulkhead();
+            if (probe) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                probesInFlight--;
+                if (failure) {
+                    open(merchantId);
+                } else if (++probesSucceeded >= Math.max(1, config.getHalfOpenProbes())) {
+                    transition(merchantId, State.CLOSED);
+                    next = 0;
+                    recorded = 0;
+                    failed = 0;
+                }
+            } else if (state == State.CLOSED) {
+                // Outcomes of calls that complete after the circuit opened are dropped
+                record(merchantId, failure);
+            }
+        }
+
+        synchronized void onAbandoned(boolean probe) {
+            leaveBulkhead();
+            if (probe && state == State.HALF_OPEN) {
+                probesInFlight--;
+            }
+        }
+
+        private void record(String merchantId, boolean failure) {
+            if (recorded == failures.length) {
+                failed -= failures[next] ? 1 : 0;
+            } else {
+                recorded++;
+            }
+            failures[next] = failure;
+            failed += failure ? 1 : 0;
+            next = (next + 1) % failures.length;
+            if (recorded >= config.getMinimumCalls() && failed * 100 >= config.getFailureRateThreshold() * recorded) {
+                open(merchantId);
+            }
+        }
+
+        private void open(String merchantId) {
+            transition(merchantId, State.OPEN);
+            openedAtNanos = nanoClock.getAsLong();
+        }
+
+        private void transition(String merchantId, State to) {
+            if (to == State.OPEN) {
+                logger.warn("Opening Cybersource circuit for merchant: {} for {}", merchantId, config.getOpenDuration());
+            } else {
+                logger.info("Cybersource circuit for merchant: {} is now {}", merchantId, to);
+            }
+            state = to;
+            Counter.builder(TRANSITIONS)
+                    .description("Merchant circuit breaker state changes")
+                    .tag("state", to.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+}
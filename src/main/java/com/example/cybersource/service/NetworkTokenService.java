@@ -1,60 +1,266 @@
 package com.example.cybersource.service;
 
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
+import com.example.cybersource.dto.PaymentCredentialsResponse;
 import com.example.cybersource.exception.*;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.json.JSONObject;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class NetworkTokenService {
 
     private static final Logger logger = LoggerFactory.getLogger(NetworkTokenService.class);
+
+    static final String GENERATE_OBSERVATION = "cybersource.network_token.generate";
     
     private final InstrumentIdentifierService instrumentIdentifierService;
     private final PaymentCredentialsService paymentCredentialsService;
+    // Keys single-flight entries when there is no index; random per process, since the keys never leave it
+    private final Mac singleFlightMac;
+    
+    // Present only when cybersource.instrument-identifier.dedup.enabled=true
+    @Autowired(required = false)
+    private InstrumentIdentifierIndex instrumentIdentifierIndex;
+    
+    // Absent when cybersource.single-flight.enabled=false
+    @Autowired(required = false)
+    private SingleFlight singleFlight;
+    
+    @Autowired(required = false)
+    private StageLatencyWindow stageLatencyWindow;
+
+    // Replaced by the Spring bean; the default keeps instances built without a context working
+    @Autowired(required = false)
+    private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
 
     public NetworkTokenService(InstrumentIdentifierService instrumentIdentifierService, PaymentCredentialsService paymentCredentialsService) {
         this.instrumentIdentifierService = instrumentIdentifierService;
         this.paymentCredentialsService = paymentCredentialsService;
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        try {
+            this.singleFlightMac = Mac.getInstance("HmacSHA256");
+            this.singleFlightMac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to initialise HmacSHA256", e);
+        }
     }
 
     public NetworkTokenResult generateNetworkTokenAndCryptogram(String cardNumber, String merchantId) throws CybersourceException {
+        return observation(merchantId, "blocking").observeChecked(() -> generate(cardNumber, merchantId));
+    }
+
+    private NetworkTokenResult generate(String cardNumber, String merchantId) throws CybersourceException {
         logger.info("Generating network token and cryptogram for merchant: {} and card number ending in: {}", 
                    merchantId, cardNumber.substring(Math.max(0, cardNumber.length() - 4)));
         
-        long start = System.currentTimeMillis();
-
-        try {
-            // Step 1: Create Instrument Identifier
-            String instrumentResponse = instrumentIdentifierService.createInstrumentIdentifier(cardNumber, merchantId);
-            JSONObject instrumentJson = new JSONObject(instrumentResponse);
-            String instrumentIdentifierId = instrumentJson.getString("id");
+        StageTimings timings = new StageTimings();
 
-            // Step 2: Get Network Token and Cryptogram with enhanced error handling
-            String credentialsResponse = paymentCredentialsService.getPaymentCredentials(instrumentIdentifierId, merchantId);
-            JSONObject credentialsJson = new JSONObject(credentialsResponse);
+        String fingerprint = instrumentIdentifierIndex != null ? instrumentIdentifierIndex.fingerprint(cardNumber) : null;
+        try (StageTimings.Scope ignored = timings.bind()) {
+            // Step 1: Reuse or create the Instrument Identifier
+            String instrumentIdentifierId = fingerprint != null
+                    ? instrumentIdentifierIndex.find(merchantId, fingerprint).orElse(null)
+                    : null;
+            if (instrumentIdentifierId == null) {
+                InstrumentIdentifierResponse instrumentResponse = singleFlight == null
+                        ? instrumentIdentifierService.createInstrumentIdentifier(cardNumber, merchantId)
+                        : singleFlight.execute(instrumentIdentifierKey(cardNumber, merchantId),
+                                () -> instrumentIdentifierService.createInstrumentIdentifier(cardNumber, merchantId));
+                instrumentIdentifierId = extractInstrumentIdentifierId(instrumentResponse);
+                if (fingerprint != null) {
+                    instrumentIdentifierIndex.record(merchantId, fingerprint, instrumentIdentifierId);
+                }
+            }
 
-            // Parse network token and cryptogram from response
-            String networkToken = credentialsJson.getJSONObject("networkToken").getString("number");
-            String cryptogram = credentialsJson.getJSONObject("networkToken").getString("cryptogram");
+            // Step 2: Get Network Token and Cryptogram; never shared, the cryptogram is single-use
+            PaymentCredentialsResponse credentialsResponse = paymentCredentialsService.getPaymentCredentials(instrumentIdentifierId, merchantId);
 
-            long end = System.currentTimeMillis();
-            long elapsedMs = end - start;
+            return toResult(credentialsResponse, merchantId, timings);
             
-            logger.info("Successfully generated network token and cryptogram for merchant: {} in {}ms", merchantId, elapsedMs);
+        } catch (Exception e) {
+            evictIfNotFound(e, merchantId, fingerprint);
+            throw translateFailure(e, merchantId);
+        }
+    }
 
-            return new NetworkTokenResult(networkToken, cryptogram, elapsedMs);
-            
-        } catch (PaymentCredentialsException | NetworkException | DataAccessException | CybersourceApiException e) {
+    /**
+     * Non-blocking variant of {@link #generateNetworkTokenAndCryptogram(String, String)}.
+     * Both upstream calls are chained without blocking, so no thread is held while
+     * waiting on Cybersource.
+     * @param cardNumber the card number to tokenize
+     * @param merchantId the merchant ID for the request
+     * @return a Mono emitting the network token result, or failing with the same
+     *         exception types as the blocking method
+     */
+    public Mono<NetworkTokenResult> generateNetworkTokenAndCryptogramReactive(String cardNumber, String merchantId) {
+        Mono<NetworkTokenResult> result = generateReactive(cardNumber, merchantId);
+        return Mono.deferContextual(context -> {
+            Observation observation = observation(merchantId, "reactive")
+                    .parentObservation(context.getOrDefault(ObservationThreadLocalAccessor.KEY, null))
+                    .start();
+            // WebClient and the reactive Mongo driver look up their parent span in the Reactor context
+            return result
+                    .doOnError(observation::error)
+                    .doFinally(signal -> observation.stop())
+                    .contextWrite(downstream -> downstream.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+
+    /**
+     * The span around one tokenization. The merchant ID is a high-cardinality value,
+     * so it is added to the span but not to the timer derived from the observation.
+     */
+    private Observation observation(String merchantId, String mode) {
+        return Observation.createNotStarted(GENERATE_OBSERVATION, observationRegistry)
+                .contextualName("generate network token")
+                .lowCardinalityKeyValue("mode", mode)
+                .highCardinalityKeyValue("merchant.id", String.valueOf(merchantId));
+    }
+
+    private Mono<NetworkTokenResult> generateReactive(String cardNumber, String merchantId) {
+        return Mono.defer(() -> {
+                    logger.info("Generating network token and cryptogram for merchant: {} and card number ending in: {}",
+                               merchantId, cardNumber.substring(Math.max(0, cardNumber.length() - 4)));
+
+                    StageTimings timings = new StageTimings();
+                    String fingerprint = instrumentIdentifierIndex != null ? instrumentIdentifierIndex.fingerprint(cardNumber) : null;
+                    Mono<String> known = fingerprint != null
+                            ? instrumentIdentifierIndex.findReactive(merchantId, fingerprint)
+                            : Mono.empty();
+                    return known
+                            .switchIfEmpty(Mono.defer(() -> createInstrumentIdentifierReactive(cardNumber, merchantId)
+                                    .single()
+                                    .map(this::extractInstrumentIdentifierId)
+                                    .doOnNext(instrumentIdentifierId -> {
+                                        if (fingerprint != null) {
+                                            instrumentIdentifierIndex.record(merchantId, fingerprint, instrumentIdentifierId);
+                                        }
+                                    })))
+                            .flatMap(instrumentIdentifierId ->
+                                    paymentCredentialsService.getPaymentCredentialsReactive(instrumentIdentifierId, merchantId))
+                            .single()
+                            .map(credentialsResponse -> toResult(credentialsResponse, merchantId, timings))
+                            .doOnError(e -> evictIfNotFound(e, merchantId, fingerprint))
+                            .contextWrite(context -> context.put(StageTimings.CONTEXT_KEY, timings));
+                })
+                .onErrorMap(e -> translateFailure(e, merchantId));
+    }
+
+    private Mono<InstrumentIdentifierResponse> createInstrumentIdentifierReactive(String cardNumber, String merchantId) {
+        if (singleFlight == null) {
+            return instrumentIdentifierService.createInstrumentIdentifierReactive(cardNumber, merchantId);
+        }
+        return singleFlight.executeReactive(instrumentIdentifierKey(cardNumber, merchantId),
+                () -> instrumentIdentifierService.createInstrumentIdentifierReactive(cardNumber, merchantId));
+    }
+
+    /**
+     * Identifies a card in the single-flight map without holding its number: the
+     * index fingerprint when deduplication is on, otherwise an HMAC-SHA256 under a
+     * random per-process key, so the key cannot be brute-forced back to the number.
+     * Only the instrument identifier is coalesced: Cybersource returns the same one
+     * for the same card, whereas each checkout needs its own cryptogram.
+     */
+    private SingleFlight.Key instrumentIdentifierKey(String cardNumber, String merchantId) {
+        String card;
+        if (instrumentIdentifierIndex != null) {
+            card = instrumentIdentifierIndex.fingerprint(cardNumber);
+        } else {
+            Mac mac;
+            try {
+                mac = (Mac) singleFlightMac.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("HMAC provider does not support cloning", e);
+            }
+            byte[] hmac = mac.doFinal(cardNumber.getBytes(StandardCharsets.US_ASCII));
+            card = Base64.getUrlEncoder().withoutPadding().encodeToString(hmac);
+        }
+        return new SingleFlight.Key(merchantId, "createInstrumentIdentifier", card);
+    }
+
+    /**
+     * A 404 for a known card means Cybersource no longer has its instrument
+     * identifier, so the next attempt should create a new one.
+     */
+    private void evictIfNotFound(Throwable e, String merchantId, String fingerprint) {
+        if (fingerprint != null && e instanceof CybersourceApiException apiException && apiException.getStatusCode() == 404) {
+            logger.warn("Instrument identifier for merchant: {} was not found, dropping it from the fingerprint index", merchantId);
+            instrumentIdentifierIndex.evict(merchantId, fingerprint);
+        }
+    }
+
+    private String extractInstrumentIdentifierId(InstrumentIdentifierResponse instrumentResponse) {
+        String id = instrumentResponse != null ? instrumentResponse.id() : null;
+        if (id == null) {
+            throw new IllegalArgumentException("Instrument identifier response has no id");
+        }
+        return id;
+    }
+
+    private NetworkTokenResult toResult(PaymentCredentialsResponse credentialsResponse, String merchantId, StageTimings timings) {
+        PaymentCredentialsResponse.NetworkToken token = credentialsResponse != null ? credentialsResponse.networkToken() : null;
+        String networkToken = token != null ? token.number() : null;
+        String cryptogram = token != null ? token.cryptogram() : null;
+        if (networkToken == null || cryptogram == null) {
+            throw new IllegalArgumentException("Payment credentials response has no networkToken number or cryptogram");
+        }
+
+        StageTimings.Breakdown stages = timings.breakdown();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(stages.totalNanos());
+        if (stageLatencyWindow != null) {
+            stageLatencyWindow.record(stages);
+        }
+
+        logger.atInfo()
+                .addKeyValue("merchantId", merchantId)
+                .addKeyValue("jwtSignNanos", stages.jwtSignNanos())
+                .addKeyValue("createInstrumentIdentifierNanos", stages.createInstrumentIdentifierNanos())
+                .addKeyValue("paymentCredentialsNanos", stages.paymentCredentialsNanos())
+                .addKeyValue("jsonParseNanos", stages.jsonParseNanos())
+                .addKeyValue("persistenceNanos", stages.persistenceNanos())
+                .addKeyValue("totalNanos", stages.totalNanos())
+                .log("Successfully generated network token and cryptogram for merchant: {} in {}ms", merchantId, elapsedMs);
+        return new NetworkTokenResult(networkToken, cryptogram, elapsedMs, stages);
+    }
+
+    private CybersourceException translateFailure(Throwable e, String merchantId) {
+        if (e instanceof PaymentCredentialsException || e instanceof NetworkException
+                || e instanceof DataAccessException || e instanceof CybersourceApiException) {
             logger.error("Failed to generate network token and cryptogram for merchant: {}", merchantId, e);
-            throw e;
-        } catch (Exception e) {
-            logger.error("Unexpected error while generating network token and cryptogram for merchant: {}", merchantId, e);
-            throw new CybersourceException("Unexpected error while generating network token and cryptogram", e);
+            return (CybersourceException) e;
         }
+        logger.error("Unexpected error while generating network token and cryptogram for merchant: {}", merchantId, e);
+        return new CybersourceException("Unexpected error while generating network token and cryptogram", e);
     }
 
-    public static record NetworkTokenResult(String networkToken, String cryptogram, long elapsedMilliseconds) {}
+    /**
+     * @param stages per-stage breakdown; null when the caller did not ask for it
+     */
+    public static record NetworkTokenResult(String networkToken, String cryptogram, long elapsedMilliseconds,
+                                            @JsonInclude(JsonInclude.Include.NON_NULL) StageTimings.Breakdown stages) {
+
+        public NetworkTokenResult(String networkToken, String cryptogram, long elapsedMilliseconds) {
+            this(networkToken, cryptogram, elapsedMilliseconds, null);
+        }
+
+        public NetworkTokenResult withoutStages() {
+            return stages == null ? this : new NetworkTokenResult(networkToken, cryptogram, elapsedMilliseconds);
+        }
+    }
 }
\ No newline at end of file
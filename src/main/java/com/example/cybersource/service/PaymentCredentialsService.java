@@ -1,22 +1,34 @@
 package com.example.cybersource.service;
 
+import com.example.cybersource.dto.PaymentCredentialsResponse;
 import com.example.cybersource.entity.TokenStorage;
 import com.example.cybersource.exception.*;
+import com.example.cybersource.repository.ReactiveTokenStorageRepository;
+import com.example.cybersource.repository.TokenStorageCursor;
 import com.example.cybersource.repository.TokenStorageRepository;
+import com.example.cybersource.repository.TokenStorageWriteBehind;
 import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.util.JsonFieldExtractor;
+import com.example.cybersource.util.ResponseCompression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -25,6 +37,9 @@ public class PaymentCredentialsService {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentCredentialsService.class);
     
+    private static final JsonFieldExtractor NETWORK_TOKEN_FIELDS = JsonFieldExtractor.of(
+            "networkToken.number", "networkToken.expirationMonth", "networkToken.expirationYear", "networkToken.cryptogram");
+    
     @Autowired
     private WebClient webClient;
     
@@ -37,11 +52,38 @@ public class PaymentCredentialsService {
     @Autowired
     private TokenStorageRepository tokenStorageRepository;
     
+    @Autowired
+    private ReactiveTokenStorageRepository reactiveTokenStorageRepository;
+    
+    @Autowired
+    private TokenStorageCache tokenStorageCache;
+    
     @Autowired
     private MongoTemplate mongoTemplate;
+    
+    // Present only when cybersource.persistence.write-behind-enabled=true
+    @Autowired(required = false)
+    private TokenStorageWriteBehind tokenStorageWriteBehind;
+    
+    @Autowired(required = false)
+    @Qualifier("blockingIoScheduler")
+    private Scheduler blockingIoScheduler = Schedulers.boundedElastic();
+    
+    // Replaced by the Spring bean; the default keeps instances built without a context working
+    @Autowired(required = false)
+    private CybersourceMetrics cybersourceMetrics = CybersourceMetrics.noop();
+
+    @Autowired(required = false)
+    private CybersourceConcurrencyLimiter concurrencyLimiter = CybersourceConcurrencyLimiter.unlimited();
+
+    @Autowired(required = false)
+    private MerchantCircuitBreaker circuitBreaker = MerchantCircuitBreaker.disabled();
 
     /**
      * Enhanced getPaymentCredentials with robust exception handling and MongoDB persistence
+     * <p>
+     * Concurrent calls for the same instrument are not coalesced: each one issues its
+     * own cryptogram, which is single-use per transaction.
      * @param instrumentIdentifierTokenId the instrument identifier token ID
      * @param merchantId the merchant ID for the request
      * @return the payment credentials response
@@ -50,7 +92,7 @@ public class PaymentCredentialsService {
      * @throws DataAccessException if data access operations fail
      * @throws CybersourceApiException if Cybersource API errors occur
      */
-    public String getPaymentCredentials(String instrumentIdentifierTokenId, String merchantId) 
+    public PaymentCredentialsResponse getPaymentCredentials(String instrumentIdentifierTokenId, String merchantId) 
             throws PaymentCredentialsException, NetworkException, DataAccessException, CybersourceApiException {
         
         logger.info("Getting payment credentials for instrument identifier: {} and merchant: {}", 
@@ -60,14 +102,14 @@ public class PaymentCredentialsService {
             // Build the API path
             String path = "/pts/v2/instrumentidentifiers/" + instrumentIdentifierTokenId + "/networkTokens";
             
-            // Generate JWT for authentication with the specific merchant ID
-            String jwt = generateJwtToken(path, "GET", merchantId);
-            
             // Make the API call using WebClient with specific merchant ID
-            String response = makeApiCall(path, jwt, merchantId);
+            byte[] body = makeApiCall(path, merchantId);
             
             // Parse and persist the response
-            persistPaymentCredentials(instrumentIdentifierTokenId, merchantId, response);
+            long parseStart = System.nanoTime();
+            PaymentCredentialsResponse response = parseResponse(body);
+            StageTimings.record(StageTimings.Stage.JSON_PARSE, System.nanoTime() - parseStart);
+            persistPaymentCredentials(instrumentIdentifierTokenId, merchantId, body, response);
             
             logger.info("Successfully retrieved and persisted payment credentials for instrument: {} and merchant: {}", 
                        instrumentIdentifierTokenId, merchantId);
@@ -92,6 +134,10 @@ public class PaymentCredentialsService {
             logger.error("Network error while calling Cybersource API for instrument {} and merchant {}", 
                         instrumentIdentifierTokenId, merchantId, e);
             throw new NetworkException("Network error while calling Cybersource API", e);
+        } catch (NetworkException e) {
+            logger.warn("Call to Cybersource rejected for instrument {} and merchant {}: {}",
+                        instrumentIdentifierTokenId, merchantId, e.getMessage());
+            throw e;
         } catch (DataAccessException e) {
             // Re-throw DataAccessException (from persistence operations)
             logger.error("Database error while persisting payment credentials for instrument {} and merchant {}", 
@@ -108,6 +154,38 @@ public class PaymentCredentialsService {
         }
     }
     
+    /**
+     * Non-blocking variant of {@link #getPaymentCredentials(String, String)}.
+     * The response is persisted through the reactive repository, so no thread waits on
+     * Mongo I/O.
+     * @param instrumentIdentifierTokenId the instrument identifier token ID
+     * @param merchantId the merchant ID for the request
+     * @return a Mono emitting the payment credentials response, or failing with the
+     *         same exception types as the blocking method
+     */
+    public Mono<PaymentCredentialsResponse> getPaymentCredentialsReactive(String instrumentIdentifierTokenId, String merchantId) {
+        return Mono.defer(() -> {
+                    logger.info("Getting payment credentials for instrument identifier: {} and merchant: {}",
+                               instrumentIdentifierTokenId, merchantId);
+                    String path = "/pts/v2/instrumentidentifiers/" + instrumentIdentifierTokenId + "/networkTokens";
+                    return requestPaymentCredentials(path, merchantId);
+                })
+                .flatMap(body -> Mono.deferContextual(context -> {
+                    PaymentCredentialsResponse response;
+                    try (StageTimings.Scope ignored = StageTimings.bind(context)) {
+                        long parseStart = System.nanoTime();
+                        response = parseResponse(body);
+                        StageTimings.record(StageTimings.Stage.JSON_PARSE, System.nanoTime() - parseStart);
+                    }
+                    return persistPaymentCredentialsReactive(instrumentIdentifierTokenId, merchantId, body, response)
+                            .thenReturn(response);
+                }))
+                .doOnSuccess(response -> logger.info(
+                        "Successfully retrieved and persisted payment credentials for instrument: {} and merchant: {}",
+                        instrumentIdentifierTokenId, merchantId))
+                .onErrorMap(e -> translateFailure(e, instrumentIdentifierTokenId, merchantId));
+    }
+    
     /**
      * Query token storage by payment token ID
      * @param paymentTokenId the payment token ID to search for
@@ -120,7 +198,16 @@ public class PaymentCredentialsService {
         logger.info("Querying token storage for payment token ID: {}", paymentTokenId);
         
         try {
-            Optional<TokenStorage> result = tokenStorageRepository.findByPaymentTokenId(paymentTokenId);
+            Optional<TokenStorage> result = tokenStorageWriteBehind != null
+                    ? tokenStorageWriteBehind.findPending(paymentTokenId)
+                    : Optional.empty();
+            if (result.isEmpty()) {
+                result = Optional.ofNullable(tokenStorageCache.get(paymentTokenId));
+            }
+            if (result.isEmpty()) {
+                result = tokenStorageRepository.findByPaymentTokenId(paymentTokenId);
+                result.ifPresent(tokenStorageCache::put);
+            }
             logger.info("Token storage query result for payment token ID {}: {}", 
                        paymentTokenId, result.isPresent() ? "found" : "not found");
             return result;
@@ -131,6 +218,74 @@ public class PaymentCredentialsService {
         }
     }
     
+    /**
+     * Non-blocking variant of {@link #getTokenStorageByPaymentTokenId(String)}
+     * @param paymentTokenId the payment token ID to search for
+     * @return a Mono emitting the token storage, or empty if not found; fails with
+     *         DataAccessException on database errors
+     */
+    public Mono<TokenStorage> getTokenStorageByPaymentTokenIdReactive(String paymentTokenId) {
+        return Mono.defer(() -> {
+                    Optional<TokenStorage> local = tokenStorageWriteBehind != null
+                            ? tokenStorageWriteBehind.findPending(paymentTokenId)
+                            : Optional.empty();
+                    if (local.isEmpty()) {
+                        local = Optional.ofNullable(tokenStorageCache.get(paymentTokenId));
+                    }
+                    return local.map(Mono::just)
+                            .orElseGet(() -> reactiveTokenStorageRepository.findByPaymentTokenId(paymentTokenId)
+                                    .doOnNext(tokenStorageCache::put));
+                })
+                .onErrorMap(org.springframework.dao.DataAccessException.class, e -> {
+                    logger.error("Database error while querying token storage for payment token ID {}", 
+                                paymentTokenId, e);
+                    return new DataAccessException("Failed to query token storage", e);
+                });
+    }
+    
+    /**
+     * Fetch one page of a merchant's token storage records, newest first
+     * @param merchantId the merchant ID
+     * @param cursor the {@code nextCursor} of the previous page, or null for the first page
+     * @param limit the page size, capped at {@code cybersource.persistence.max-page-size}
+     * @return the records and the cursor for the following page (null on the last page)
+     * @throws DataAccessException if data access operations fail
+     */
+    public TokenStoragePage getTokenStoragePage(String merchantId, String cursor, int limit)
+            throws DataAccessException {
+        
+        int pageSize = Math.max(1, Math.min(limit, cybersourceConfig.getPersistence().getMaxPageSize()));
+        TokenStorageCursor after = cursor == null || cursor.isBlank() ? null : TokenStorageCursor.decode(cursor);
+        try {
+            List<TokenStorage> records = tokenStorageRepository.findPageByMerchantId(merchantId, after, pageSize);
+            String nextCursor = records.size() < pageSize
+                    ? null
+                    : TokenStorageCursor.after(records.get(records.size() - 1)).encode();
+            return new TokenStoragePage(records, nextCursor);
+        } catch (org.springframework.dao.DataAccessException e) {
+            logger.error("Database error while paging token storage for merchant {}", merchantId, e);
+            throw new DataAccessException("Failed to query token storage", e);
+        }
+    }
+    
+    /**
+     * Stream every token storage record of a merchant, newest first, from a reactive
+     * Mongo cursor. Records are requested in batches of
+     * {@code cybersource.persistence.cursor-batch-size} as the subscriber consumes them,
+     * so memory use does not depend on the merchant's size.
+     * @param merchantId the merchant ID
+     * @return a Flux of the merchant's records, failing with DataAccessException on database errors
+     */
+    public Flux<TokenStorage> streamTokenStorageByMerchantId(String merchantId) {
+        return Flux.defer(() -> reactiveTokenStorageRepository.findByMerchantIdOrderByCreatedAtDescPaymentTokenIdAsc(merchantId))
+                // Demand drives the driver's getMore batch size
+                .limitRate(cybersourceConfig.getPersistence().getCursorBatchSize())
+                .onErrorMap(org.springframework.dao.DataAccessException.class, e -> {
+                    logger.error("Database error while streaming token storage for merchant {}", merchantId, e);
+                    return new DataAccessException("Failed to stream token storage", e);
+                });
+    }
+    
     private String generateJwtToken(String path, String method, String merchantId) throws PaymentCredentialsException {
         try {
             return jwtTokenUtil.generateJwt(
@@ -145,18 +300,19 @@ public class PaymentCredentialsService {
         }
     }
     
-    private String makeApiCall(String path, String jwt, String merchantId) {
+    private byte[] makeApiCall(String path, String merchantId) throws NetworkException, PaymentCredentialsException {
         try {
-            return webClient.get()
-                    .uri(cybersourceConfig.getBaseUrl() + path)
-                    .header("v-c-merchant-id", merchantId)
-                    .header("Authorization", "Bearer " + jwt)
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .timeout(Duration.ofSeconds(30))
-                    .block();
+            return requestPaymentCredentials(path, merchantId).block();
         } catch (Exception e) {
-            if (e instanceof WebClientResponseException) {
+            // block() wraps checked exceptions
+            Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof NetworkException networkException) {
+                // Rejected by the circuit breaker or concurrency limiter
+                throw networkException;
+            } else if (cause instanceof PaymentCredentialsException credentialsException) {
+                // JWT generation, which runs once the call is admitted
+                throw credentialsException;
+            } else if (e instanceof WebClientResponseException) {
                 throw (WebClientResponseException) e;
             } else if (e instanceof WebClientException) {
                 throw (WebClientException) e;
@@ -166,42 +322,168 @@ public class PaymentCredentialsService {
         }
     }
     
-    private void persistPaymentCredentials(String instrumentIdentifierTokenId, String merchantId, String response) 
-            throws DataAccessException {
+    /**
+     * The body is read as bytes rather than a String: the typed response is bound from
+     * them and the same bytes are stored, so the body is never decoded to characters.
+     */
+    private Mono<byte[]> requestPaymentCredentials(String path, String merchantId) {
+        // Signed only once the breaker and limiter admit the call, so rejected calls skip the RSA signature
+        Mono<byte[]> call = Mono.deferContextual(context -> {
+            String jwt;
+            try (StageTimings.Scope ignored = StageTimings.bind(context)) {
+                jwt = generateJwtToken(path, "GET", merchantId);
+            } catch (PaymentCredentialsException e) {
+                return Mono.error(e);
+            }
+            return cybersourceMetrics.timeApiCall("get_payment_credentials", merchantId, webClient.get()
+                    .uri(cybersourceConfig.getBaseUrl() + path)
+                    .header("v-c-merchant-id", merchantId)
+                    .header("Authorization", "Bearer " + jwt)
+                    .retrieve()
+                    .bodyToMono(byte[].class)
+                    .timeout(Duration.ofSeconds(30)));
+        });
+        return circuitBreaker.execute(merchantId, "get_payment_credentials",
+                concurrencyLimiter.limit("get_payment_credentials", call));
+    }
+    
+    private CybersourceException translateFailure(Throwable e, String instrumentIdentifierTokenId, String merchantId) {
+        if (e instanceof PaymentCredentialsException) {
+            // Re-throw PaymentCredentialsException (from JWT generation)
+            logger.error("Payment credentials error for instrument {} and merchant {}", 
+                        instrumentIdentifierTokenId, merchantId, e);
+            return (PaymentCredentialsException) e;
+        } else if (e instanceof WebClientResponseException responseException) {
+            logger.error("Cybersource API error for instrument {} and merchant {}: Status={}, Body={}", 
+                        instrumentIdentifierTokenId, merchantId, responseException.getStatusCode(),
+                        responseException.getResponseBodyAsString(), e);
+            return new CybersourceApiException(
+                "Failed to get payment credentials from Cybersource API", 
+                responseException.getStatusCode().value(), 
+                responseException.getResponseBodyAsString(), 
+                e
+            );
+        } else if (e instanceof WebClientException) {
+            logger.error("Network error while calling Cybersource API for instrument {} and merchant {}", 
+                        instrumentIdentifierTokenId, merchantId, e);
+            return new NetworkException("Network error while calling Cybersource API", e);
+        } else if (e instanceof DataAccessException) {
+            // Re-throw DataAccessException (from persistence operations)
+            logger.error("Database error while persisting payment credentials for instrument {} and merchant {}", 
+                        instrumentIdentifierTokenId, merchantId, e);
+            return (DataAccessException) e;
+        } else if (e instanceof org.springframework.dao.DataAccessException) {
+            logger.error("Spring database error while persisting payment credentials for instrument {} and merchant {}", 
+                        instrumentIdentifierTokenId, merchantId, e);
+            return new DataAccessException("Failed to persist payment credentials", e);
+        } else if (e instanceof CybersourceException) {
+            return (CybersourceException) e;
+        } else {
+            logger.error("Unexpected error while getting payment credentials for instrument {} and merchant {}", 
+                        instrumentIdentifierTokenId, merchantId, e);
+            return new PaymentCredentialsException("Unexpected error while getting payment credentials", e);
+        }
+    }
+    
+    private void persistPaymentCredentials(String instrumentIdentifierTokenId, String merchantId, byte[] body,
+                                           PaymentCredentialsResponse response) throws DataAccessException {
         
+        long start = System.nanoTime();
+        String mode = tokenStorageWriteBehind != null ? "write_behind" : "save";
+        boolean persisted = false;
         try {
-            // Parse the response to extract relevant information
-            String paymentTokenId = UUID.randomUUID().toString(); // Generate unique payment token ID
-            String cryptogram = extractCryptogramFromResponse(response);
-            
-            // Create metadata
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("instrumentIdentifierTokenId", instrumentIdentifierTokenId);
-            metadata.put("apiResponse", response);
-            metadata.put("creationTimestamp", LocalDateTime.now().toString());
-            
-            // Create and save token storage
-            TokenStorage tokenStorage = new TokenStorage(paymentTokenId, cryptogram, merchantId, metadata);
+            TokenStorage tokenStorage = buildTokenStorage(instrumentIdentifierTokenId, merchantId, body, response);
+            if (tokenStorageWriteBehind != null) {
+                tokenStorageWriteBehind.enqueue(tokenStorage);
+                tokenStorageCache.invalidate(tokenStorage.getPaymentTokenId());
+                persisted = true;
+                logger.info("Queued token storage with payment token ID: {} for merchant: {}", 
+                           tokenStorage.getPaymentTokenId(), merchantId);
+                return;
+            }
             tokenStorageRepository.save(tokenStorage);
+            persisted = true;
+            tokenStorageCache.invalidate(tokenStorage.getPaymentTokenId());
             
             logger.info("Successfully persisted token storage with payment token ID: {} for merchant: {}", 
-                       paymentTokenId, merchantId);
+                       tokenStorage.getPaymentTokenId(), merchantId);
             
         } catch (org.springframework.dao.DataAccessException e) {
             throw new DataAccessException("Failed to persist payment credentials to database", e);
+        } finally {
+            cybersourceMetrics.recordPersist(mode, merchantId, start, persisted);
         }
         // Note: Let other exceptions bubble up so they can be caught by the main method
     }
     
-    private String extractCryptogramFromResponse(String response) {
-        // Simplified cryptogram extraction - in real implementation, use proper JSON parsing
-        try {
-            // This would typically use Jackson or similar to parse JSON response
-            // For now, return a placeholder
-            return "extracted_cryptogram_" + System.currentTimeMillis();
-        } catch (Exception e) {
-            logger.warn("Could not extract cryptogram from response, using placeholder");
-            return "placeholder_cryptogram";
+    private Mono<Void> persistPaymentCredentialsReactive(String instrumentIdentifierTokenId, String merchantId,
+                                                         byte[] body, PaymentCredentialsResponse response) {
+        String mode = tokenStorageWriteBehind != null ? "write_behind" : "save";
+        return cybersourceMetrics.timePersist(mode, merchantId, Mono.defer(() -> {
+                    TokenStorage tokenStorage = buildTokenStorage(instrumentIdentifierTokenId, merchantId, body, response);
+                    if (tokenStorageWriteBehind != null) {
+                        // enqueue can wait for queue space, so keep it off the event loop
+                        return Mono.fromCallable(() -> {
+                                    tokenStorageWriteBehind.enqueue(tokenStorage);
+                                    return tokenStorage;
+                                })
+                                .subscribeOn(blockingIoScheduler);
+                    }
+                    return reactiveTokenStorageRepository.save(tokenStorage);
+                }))
+                .doOnNext(tokenStorage -> {
+                    tokenStorageCache.invalidate(tokenStorage.getPaymentTokenId());
+                    logger.info("Successfully persisted token storage with payment token ID: {} for merchant: {}",
+                               tokenStorage.getPaymentTokenId(), merchantId);
+                })
+                .onErrorMap(org.springframework.dao.DataAccessException.class,
+                        e -> new DataAccessException("Failed to persist payment credentials to database", e))
+                .then();
+    }
+    
+    private TokenStorage buildTokenStorage(String instrumentIdentifierTokenId, String merchantId, byte[] body,
+                                           PaymentCredentialsResponse response) {
+        String paymentTokenId = UUID.randomUUID().toString(); // Generate unique payment token ID
+        String cryptogram = response.networkToken() != null ? response.networkToken().cryptogram() : null;
+        if (cryptogram == null) {
+            logger.warn("Payment credentials response has no networkToken.cryptogram");
         }
+        
+        TokenStorage tokenStorage = new TokenStorage(paymentTokenId, cryptogram, merchantId, new HashMap<>());
+        tokenStorage.setInstrumentIdentifierTokenId(instrumentIdentifierTokenId);
+        storeRawResponse(tokenStorage, body);
+        return tokenStorage;
     }
-}
\ No newline at end of file
+    
+    private void storeRawResponse(TokenStorage tokenStorage, byte[] body) {
+        switch (cybersourceConfig.getPersistence().getRawResponse()) {
+            case FULL -> {
+                tokenStorage.getMetadata().put("apiResponse", new String(body, StandardCharsets.UTF_8));
+                tokenStorage.getMetadata().put("creationTimestamp", tokenStorage.getCreatedAt().toString());
+            }
+            case COMPRESSED -> tokenStorage.setCompressedApiResponse(ResponseCompression.deflate(body));
+            case NONE -> {
+                // createdAt and the typed fields carry everything that is queried
+            }
+        }
+    }
+    
+    static PaymentCredentialsResponse parseResponse(byte[] body) {
+        if (body == null) {
+            throw new IllegalArgumentException("Empty payment credentials response");
+        }
+        String[] fields = NETWORK_TOKEN_FIELDS.extract(body);
+        boolean hasNetworkToken = false;
+        for (String field : fields) {
+            hasNetworkToken |= field != null;
+        }
+        return new PaymentCredentialsResponse(hasNetworkToken
+                ? new PaymentCredentialsResponse.NetworkToken(fields[0], fields[1], fields[2], fields[3])
+                : null);
+    }
+    
+    /**
+     * One page of a merchant's token storage records.
+     */
+    public static record TokenStoragePage(List<TokenStorage> records, String nextCursor) {}
+}
@@ -0,0 +1,129 @@
+package com.example.cybersource.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical upstream calls. The first caller for a key makes
+ * the call; callers arriving while it is in flight wait for and share its result,
+ * or its exception. Once the call finishes the key is released, so results are
+ * never served after the fact; caching is left to the dedicated caches.
+ * <p>
+ * Blocking and reactive callers are tracked separately.
+ */
+@Component
+@ConditionalOnProperty(prefix = "cybersource.single-flight", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class SingleFlight {
+
+    private static final String CALLS = "cybersource.single_flight.calls";
+
+    private final ConcurrentMap<Key, CompletableFuture<Object>> blockingCalls = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, Mono<Object>> reactiveCalls = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cybersource.single_flight.in_flight", this, flight -> flight.blockingCalls.size() + flight.reactiveCalls.size())
+                .description("Distinct upstream calls currently in flight")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run a blocking call, or wait for the identical call already in flight.
+     * @param key identifies identical calls
+     * @param call the upstream call
+     * @return the result of whichever call ran
+     * @throws E the exception thrown by whichever call ran
+     */
+    public <T, E extends Exception> T execute(Key key, Call<T, E> call) throws E {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = blockingCalls.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            count(key, "coalesced");
+            return await(inFlight);
+        }
+        count(key, "leader");
+        try {
+            T result = call.call();
+            flight.complete(result);
+            return result;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            blockingCalls.remove(key, flight);
+        }
+    }
+
+    /**
+     * Reactive variant of {@link #execute(Key, Call)}. The shared call is not
+     * cancelled when one of its subscribers cancels.
+     * @param key identifies identical calls
+     * @param call supplies the upstream call; only invoked for the first subscriber
+     * @return a Mono emitting the shared result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> executeReactive(Key key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<Object>> created = new AtomicReference<>();
+            Mono<Object> flight = reactiveCalls.computeIfAbsent(key, k -> {
+                AtomicReference<Mono<Object>> self = new AtomicReference<>();
+                Mono<Object> shared = Mono.defer(call)
+                        .cast(Object.class)
+                        .doFinally(signal -> reactiveCalls.remove(k, self.get()))
+                        .share();
+                self.set(shared);
+                created.set(shared);
+                return shared;
+            });
+            count(key, created.get() == flight ? "leader" : "coalesced");
+            return (Mono<T>) flight;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Exception> T await(CompletableFuture<Object> flight) throws E {
+        try {
+            return (T) flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            // Same key, same call site, so the leader can only have thrown E
+            throw (E) cause;
+        }
+    }
+
+    private void count(Key key, String result) {
+        Counter.builder(CALLS)
+                .description("Upstream calls by whether they ran or joined an identical call in flight")
+                .tag("operation", key.operation())
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Identifies identical calls. {@code resource} must not contain card numbers.
+     */
+    public record Key(String merchantId, String operation, String resource) {}
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+}
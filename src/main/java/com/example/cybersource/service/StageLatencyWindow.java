@@ -0,0 +1,86 @@
+package com.example.cybersource.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the stage breakdowns of the most recent tokenizations in a fixed-size ring
+ * and summarises them per stage, so a regressed stage can be spotted from a running
+ * node without a profiler. Older samples are overwritten.
+ */
+@Component
+public class StageLatencyWindow {
+
+    private static final Map<String, ToLongFunction<StageTimings.Breakdown>> STAGES = stages();
+
+    private final StageTimings.Breakdown[] samples;
+    private int next;
+    private int size;
+
+    public StageLatencyWindow(@Value("${cybersource.stage-timings.window-size:1024}") int windowSize) {
+        this.samples = new StageTimings.Breakdown[Math.max(1, windowSize)];
+    }
+
+    public synchronized void record(StageTimings.Breakdown breakdown) {
+        samples[next] = breakdown;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+    }
+
+    /**
+     * @return mean, p50, p99 and max of each stage over the samples currently in the window
+     */
+    public Summary summary() {
+        StageTimings.Breakdown[] window;
+        synchronized (this) {
+            window = Arrays.copyOf(samples, size);
+        }
+
+        Map<String, StageSummary> stages = new LinkedHashMap<>();
+        long[] nanos = new long[window.length];
+        STAGES.forEach((stage, value) -> {
+            long sum = 0;
+            for (int i = 0; i < window.length; i++) {
+                nanos[i] = value.applyAsLong(window[i]);
+                sum += nanos[i];
+            }
+            Arrays.sort(nanos);
+            stages.put(stage, window.length == 0
+                    ? new StageSummary(0, 0, 0, 0)
+                    : new StageSummary(millis(sum / window.length), millis(percentile(nanos, 0.50)),
+                            millis(percentile(nanos, 0.99)), millis(nanos[nanos.length - 1])));
+        });
+        return new Summary(window.length, stages);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static Map<String, ToLongFunction<StageTimings.Breakdown>> stages() {
+        Map<String, ToLongFunction<StageTimings.Breakdown>> stages = new LinkedHashMap<>();
+        stages.put("jwtSign", StageTimings.Breakdown::jwtSignNanos);
+        stages.put("createInstrumentIdentifier", StageTimings.Breakdown::createInstrumentIdentifierNanos);
+        stages.put("paymentCredentials", StageTimings.Breakdown::paymentCredentialsNanos);
+        stages.put("jsonParse", StageTimings.Breakdown::jsonParseNanos);
+        stages.put("persistence", StageTimings.Breakdown::persistenceNanos);
+        stages.put("total", StageTimings.Breakdown::totalNanos);
+        return stages;
+    }
+
+    /**
+     * Per-stage latency over the window, in milliseconds.
+     */
+    public record Summary(int samples, Map<String, StageSummary> stages) {}
+
+    public record StageSummary(double meanMillis, double p50Millis, double p99Millis, double maxMillis) {}
+}
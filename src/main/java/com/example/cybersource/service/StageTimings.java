@@ -0,0 +1,107 @@
+package com.example.cybersource.service;
+
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Nanosecond time spent in each stage of one tokenization. The services add to
+ * the timings bound to the calling thread, or carried in the Reactor context on
+ * the reactive path; with neither present, nothing is recorded.
+ * <p>
+ * A stage that runs more than once, such as JWT signing, accumulates. Work done
+ * by an identical call already in flight (single-flight) is counted once, by the
+ * caller that ran it.
+ */
+public final class StageTimings {
+
+    public enum Stage {
+        JWT_SIGN, CREATE_INSTRUMENT_IDENTIFIER, PAYMENT_CREDENTIALS, JSON_PARSE, PERSISTENCE
+    }
+
+    static final String CONTEXT_KEY = StageTimings.class.getName();
+
+    private static final ThreadLocal<StageTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray nanos = new AtomicLongArray(Stage.values().length);
+
+    /**
+     * Bind these timings to the calling thread until the returned scope is closed.
+     */
+    public Scope bind() {
+        StageTimings previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public void add(Stage stage, long elapsedNanos) {
+        nanos.addAndGet(stage.ordinal(), elapsedNanos);
+    }
+
+    public long nanos(Stage stage) {
+        return nanos.get(stage.ordinal());
+    }
+
+    public Breakdown breakdown() {
+        return new Breakdown(nanos(Stage.JWT_SIGN), nanos(Stage.CREATE_INSTRUMENT_IDENTIFIER),
+                nanos(Stage.PAYMENT_CREDENTIALS), nanos(Stage.JSON_PARSE), nanos(Stage.PERSISTENCE),
+                System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the timings bound to the calling thread, or null
+     */
+    static StageTimings current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return the timings in the Reactor context, else those bound to the calling thread, or null
+     */
+    static StageTimings from(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, CURRENT.get());
+    }
+
+    /**
+     * Bind the timings carried in the Reactor context, if any, to the calling thread
+     * until the returned scope is closed. Used around synchronous steps of the
+     * reactive path, such as JWT generation.
+     */
+    static Scope bind(ContextView context) {
+        StageTimings timings = context.getOrDefault(CONTEXT_KEY, null);
+        return timings != null ? timings.bind() : () -> {};
+    }
+
+    /**
+     * Add to the stage of the timings bound to the calling thread, if any.
+     */
+    static void record(Stage stage, long elapsedNanos) {
+        StageTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.add(stage, elapsedNanos);
+        }
+    }
+
+    /**
+     * Restores the previous binding; never throws.
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Per-stage nanoseconds of one tokenization. {@code totalNanos} also covers the
+     * work between stages, such as the fingerprint lookup.
+     */
+    public record Breakdown(long jwtSignNanos, long createInstrumentIdentifierNanos, long paymentCredentialsNanos,
+                            long jsonParseNanos, long persistenceNanos, long totalNanos) {}
+}
@@ -0,0 +1,58 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.entity.TokenStorage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded read-through cache of TokenStorage documents by payment token ID, so
+ * repeated lookups within the TTL skip Mongo. Caffeine's W-TinyLFU admission keeps
+ * frequently read tokens resident when the cache is full. Only found documents are
+ * cached; writes invalidate the entry for their payment token ID.
+ */
+@Component
+public class TokenStorageCache {
+
+    private final Cache<String, TokenStorage> cache;
+
+    @Autowired
+    public TokenStorageCache(MeterRegistry meterRegistry,
+                             @Value("${cybersource.token-storage.cache.max-size:10000}") long maxSize,
+                             @Value("${cybersource.token-storage.cache.ttl:30s}") Duration ttl) {
+        this(meterRegistry, maxSize, ttl, Ticker.systemTicker());
+    }
+
+    TokenStorageCache(MeterRegistry meterRegistry, long maxSize, Duration ttl, Ticker ticker) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "cybersource.token_storage");
+        Gauge.builder("cybersource.token_storage.cache.hit_ratio", cache, c -> c.stats().hitRate())
+                .description("Share of token storage lookups served from the local cache")
+                .register(meterRegistry);
+    }
+
+    public TokenStorage get(String paymentTokenId) {
+        return cache.getIfPresent(paymentTokenId);
+    }
+
+    public void put(TokenStorage tokenStorage) {
+        cache.put(tokenStorage.getPaymentTokenId(), tokenStorage);
+    }
+
+    public void invalidate(String paymentTokenId) {
+        cache.invalidate(paymentTokenId);
+    }
+}
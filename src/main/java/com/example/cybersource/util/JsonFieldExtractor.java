@@ -0,0 +1,144 @@
+package com.example.cybersource.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pulls a few scalar fields out of a JSON response with a streaming parser, without
+ * building a tree. Subtrees that cannot contain a requested field are skipped, and
+ * parsing stops as soon as every field has been seen, so the cost depends on where
+ * the fields are rather than on the size of the response.
+ * <p>
+ * Fields are addressed by dot-separated object paths such as
+ * {@code networkToken.cryptogram}; paths through arrays are not supported.
+ */
+public final class JsonFieldExtractor {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String[][] paths;
+
+    private JsonFieldExtractor(String[][] paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * Create an extractor for the given fields. Extractors are immutable and
+     * thread-safe, so create them once and reuse them.
+     * @param paths dot-separated paths of the fields to extract
+     */
+    public static JsonFieldExtractor of(String... paths) {
+        String[][] split = new String[paths.length][];
+        for (int i = 0; i < paths.length; i++) {
+            split[i] = paths[i].split("\\.");
+        }
+        return new JsonFieldExtractor(split);
+    }
+
+    /**
+     * Extract the fields from a UTF-8 encoded response body.
+     * @param json the response body
+     * @return the field values in the order the paths were given; an entry is null if
+     *         the field is absent or null. Numbers and booleans are returned as text.
+     * @throws IllegalArgumentException if the body is not valid JSON up to the last field read
+     */
+    public String[] extract(byte[] json) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return extract(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON response", e);
+        }
+    }
+
+    /**
+     * Extract the fields from a response body that has already been decoded.
+     * @see #extract(byte[])
+     */
+    public String[] extract(String json) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return extract(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid JSON response", e);
+        }
+    }
+
+    private String[] extract(JsonParser parser) throws IOException {
+        String[] values = new String[paths.length];
+        boolean[] found = new boolean[paths.length];
+        int remaining = paths.length;
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return values;
+        }
+
+        // Field names of the objects enclosing the current position
+        List<String> parents = new ArrayList<>();
+        while (remaining > 0) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                break;
+            }
+            if (token == JsonToken.END_OBJECT) {
+                if (parents.isEmpty()) {
+                    break;
+                }
+                parents.remove(parents.size() - 1);
+                continue;
+            }
+
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT) {
+                if (leadsToField(parents, name)) {
+                    parents.add(name);
+                } else {
+                    parser.skipChildren();
+                }
+            } else if (value == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else {
+                int index = fieldAt(parents, name);
+                if (index >= 0 && !found[index]) {
+                    found[index] = true;
+                    values[index] = value == JsonToken.VALUE_NULL ? null : parser.getText();
+                    remaining--;
+                }
+            }
+        }
+        return values;
+    }
+
+    private boolean leadsToField(List<String> parents, String name) {
+        int depth = parents.size();
+        for (String[] path : paths) {
+            if (path.length > depth + 1 && path[depth].equals(name) && startsWith(path, parents)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int fieldAt(List<String> parents, String name) {
+        int depth = parents.size();
+        for (int i = 0; i < paths.length; i++) {
+            String[] path = paths[i];
+            if (path.length == depth + 1 && path[depth].equals(name) && startsWith(path, parents)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(String[] path, List<String> parents) {
+        for (int i = 0; i < parents.size(); i++) {
+            if (!path[i].equals(parents.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,20 +1,80 @@
 package com.example.cybersource.util;
 
 import java.io.FileReader;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.PrivateKey;
+import java.nio.file.attribute.FileTime;
 import java.security.Security;
 import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.openssl.PEMKeyPair;
 import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+/**
+ * Loads RSA private keys from PEM files and caches the parsed key per path.
+ * The file's modification time is re-checked at most once per reload interval,
+ * so repeated calls inside that window do no file I/O; a changed file is
+ * re-parsed on the next check (hot reload).
+ */
 @Component
 public class KeyLoader {
+    private static final Logger logger = LoggerFactory.getLogger(KeyLoader.class);
+
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    private final ConcurrentMap<Path, CachedKey> cache = new ConcurrentHashMap<>();
+
+    @Value("${cybersource.key-reload-interval:5s}")
+    private Duration reloadInterval = Duration.ofSeconds(5);
+
     public RSAPrivateKey loadPrivateKey(Path pemPath) throws Exception {
-        Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
+        Path key = pemPath.toAbsolutePath().normalize();
+        long now = System.nanoTime();
+        CachedKey cached = cache.get(key);
+        if (cached != null && now - cached.checkedAtNanos() < reloadInterval.toNanos()) {
+            return cached.privateKey();
+        }
+
+        FileTime lastModified = Files.getLastModifiedTime(key);
+        if (cached != null && cached.lastModified().equals(lastModified)) {
+            cache.put(key, new CachedKey(cached.privateKey(), lastModified, now));
+            return cached.privateKey();
+        }
+
+        RSAPrivateKey privateKey = readPrivateKey(key);
+        cache.put(key, new CachedKey(privateKey, lastModified, now));
+        if (cached != null) {
+            logger.info("Reloaded private key from {} after on-disk change", key);
+        }
+        return privateKey;
+    }
+
+    /**
+     * Drop any cached key for the given path so the next load re-reads the file.
+     * @param pemPath the PEM file path
+     */
+    public void evict(Path pemPath) {
+        cache.remove(pemPath.toAbsolutePath().normalize());
+    }
+
+    public void setReloadInterval(Duration reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    private RSAPrivateKey readPrivateKey(Path pemPath) throws Exception {
         try (PEMParser pemParser = new PEMParser(new FileReader(pemPath.toFile()))) {
             Object object = pemParser.readObject();
             if (object instanceof PEMKeyPair) {
@@ -24,4 +84,6 @@ public class KeyLoader {
             }
         }
     }
-}
\ No newline at end of file
+
+    private record CachedKey(RSAPrivateKey privateKey, FileTime lastModified, long checkedAtNanos) {}
+}
@@ -0,0 +1,72 @@
+package com.example.cybersource.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Non-blocking per-merchant rate limiter. Each merchant gets evenly spaced permits
+ * at the configured rate; a caller over the rate is delayed until its reserved
+ * slot instead of being rejected, and no thread is parked while it waits.
+ * <p>
+ * Merchants idle for {@link #IDLE_EXPIRY} are forgotten, and at most
+ * {@link #MAX_MERCHANTS} are tracked; a forgotten merchant starts again with a
+ * free permit, which is what it would get after being idle anyway.
+ */
+public class MerchantRateLimiter {
+
+    static final long MAX_MERCHANTS = 100_000;
+    static final Duration IDLE_EXPIRY = Duration.ofMinutes(10);
+
+    private final long intervalNanos;
+    private final LongSupplier nanoClock;
+    private final Cache<String, AtomicLong> nextFreeSlot;
+
+    public MerchantRateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    MerchantRateLimiter(double permitsPerSecond, LongSupplier nanoClock) {
+        this.intervalNanos = permitsPerSecond > 0 ? (long) (1_000_000_000L / permitsPerSecond) : 0;
+        this.nanoClock = nanoClock;
+        this.nextFreeSlot = Caffeine.newBuilder()
+                .maximumSize(MAX_MERCHANTS)
+                .expireAfterAccess(IDLE_EXPIRY)
+                .ticker(nanoClock::getAsLong)
+                .build();
+    }
+
+    /**
+     * Reserve the next permit for a merchant.
+     * @param merchantId the merchant the call is made for
+     * @return a Mono that completes once the permit may be used
+     */
+    public Mono<Void> acquire(String merchantId) {
+        long delayNanos = reserve(merchantId);
+        return delayNanos > 0 ? Mono.delay(Duration.ofNanos(delayNanos)).then() : Mono.empty();
+    }
+
+    long reserve(String merchantId) {
+        if (intervalNanos == 0) {
+            return 0;
+        }
+        AtomicLong slot = nextFreeSlot.get(merchantId, id -> new AtomicLong(Long.MIN_VALUE));
+        long now = nanoClock.getAsLong();
+        while (true) {
+            long next = slot.get();
+            long granted = next == Long.MIN_VALUE ? now : Math.max(now, next);
+            if (slot.compareAndSet(next, granted + intervalNanos)) {
+                return granted - now;
+            }
+        }
+    }
+
+    long trackedMerchants() {
+        nextFreeSlot.cleanUp();
+        return nextFreeSlot.estimatedSize();
+    }
+}
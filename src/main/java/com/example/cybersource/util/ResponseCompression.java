@@ -0,0 +1,83 @@
+package com.example.cybersource.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression for raw API responses stored alongside tokens. JSON responses
+ * are highly repetitive, so they typically shrink to a fraction of their size.
+ */
+public final class ResponseCompression {
+
+    private ResponseCompression() {
+    }
+
+    /**
+     * Compress a response body.
+     * @param response the raw response, may be null
+     * @return the deflated UTF-8 bytes, or null if the response was null
+     */
+    public static byte[] deflate(String response) {
+        if (response == null) {
+            return null;
+        }
+        return deflate(response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compress a response body that is still in its UTF-8 wire form.
+     * @param input the raw response bytes, may be null
+     * @return the deflated bytes, or null if no bytes were given
+     */
+    public static byte[] deflate(byte[] input) {
+        if (input == null) {
+            return null;
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, input.length / 4));
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Restore a response compressed with {@link #deflate(String)}.
+     * @param compressed the deflated bytes, may be null
+     * @return the original response, or null if no bytes were given
+     * @throws IllegalArgumentException if the bytes are not valid deflate data
+     */
+    public static String inflate(byte[] compressed) {
+        if (compressed == null) {
+            return null;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated or invalid compressed response");
+                }
+                output.write(buffer, 0, inflated);
+            }
+            return output.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed response", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
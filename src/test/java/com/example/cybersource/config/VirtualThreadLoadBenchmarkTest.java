@@ -0,0 +1,167 @@
+package com.example.cybersource.config;
+
+import com.example.cybersource.service.InstrumentIdentifierService;
+import com.example.cybersource.service.JwtTokenUtil;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the blocking service path on a Tomcat-sized platform thread pool against
+ * virtual threads, with a stub Cybersource endpoint that adds fixed latency.
+ * <p>
+ * Run with {@code mvn test -Dtest=VirtualThreadLoadBenchmarkTest -Dbenchmark=true} on Java 21+.
+ */
+@Tag("benchmark")
+@EnabledForJreRange(min = JRE.JAVA_21)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class VirtualThreadLoadBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadLoadBenchmarkTest.class);
+
+    private static final int REQUESTS = 5000;
+    private static final int PLATFORM_THREADS = 200; // server.tomcat.threads.max default
+    private static final int MAX_CONNECTIONS = 2000;
+    private static final long UPSTREAM_LATENCY_MS = 50;
+
+    private static DisposableServer stubServer;
+    private static InstrumentIdentifierService instrumentIdentifierService;
+
+    @BeforeAll
+    static void startStub() throws Exception {
+        // Per-request service and Netty logging would otherwise dominate the measurement
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(VirtualThreadLoadBenchmarkTest.class))
+                .setLevel(ch.qos.logback.classic.Level.INFO);
+
+        // Non-blocking stub so the upstream itself is never the bottleneck
+        stubServer = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes.get("/pts/v2/instrumentidentifiers/{id}", (request, response) ->
+                        response.header("Content-Type", "application/json")
+                                .sendString(Mono.delay(Duration.ofMillis(UPSTREAM_LATENCY_MS))
+                                        .thenReturn("{\"id\":\"" + request.param("id") + "\"}"))))
+                .bindNow();
+
+        CybersourceConfig cybersourceConfig = new CybersourceConfig();
+        cybersourceConfig.setBaseUrl("http://127.0.0.1:" + stubServer.port());
+        cybersourceConfig.setApiKey("benchmark-api-key");
+        cybersourceConfig.setSecretKey("benchmark-secret-key");
+
+        // A plain stub rather than a Mockito mock, which would record every invocation
+        JwtTokenUtil jwtTokenUtil = new JwtTokenUtil() {
+            @Override
+            public String generateJwt(String merchantId, String apiKey, String kid, String resourcePath, String httpMethod) {
+                return "benchmark-jwt";
+            }
+        };
+
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("benchmark")
+                .maxConnections(MAX_CONNECTIONS)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                .build();
+
+        instrumentIdentifierService = new InstrumentIdentifierService();
+        ReflectionTestUtils.setField(instrumentIdentifierService, "cybersourceConfig", cybersourceConfig);
+        ReflectionTestUtils.setField(instrumentIdentifierService, "webClient", webClient);
+        ReflectionTestUtils.setField(instrumentIdentifierService, "jwtTokenUtil", jwtTokenUtil);
+
+        // Warm up connections and JIT before either measurement
+        run("warm-up", Executors.newFixedThreadPool(PLATFORM_THREADS), 1000);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        stubServer.disposeNow();
+    }
+
+    @Test
+    void benchmarkPlatformThreads() throws Exception {
+        Result result = run("platform-threads", Executors.newFixedThreadPool(PLATFORM_THREADS), REQUESTS);
+
+        assertEquals(0, result.errors());
+    }
+
+    @Test
+    void benchmarkVirtualThreads() throws Exception {
+        Result result = run("virtual-threads", new VirtualThreadTaskExecutor("benchmark-"), REQUESTS);
+
+        assertEquals(0, result.errors());
+    }
+
+    private static Result run(String mode, Executor executor, int requests) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger errors = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            long submitted = System.nanoTime();
+            futures[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    instrumentIdentifierService.getInstrumentIdentifier("id-" + index, "merchant-" + (index % 10));
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+                // Latency is measured from submission so queueing for a thread is included
+                latencies[index] = System.nanoTime() - submitted;
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).get(5, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+
+        if (executor instanceof ExecutorService executorService) {
+            executorService.shutdown();
+        }
+
+        Arrays.sort(latencies);
+        Result result = new Result(
+                requests / (elapsed / 1_000_000_000.0),
+                percentileMillis(latencies, 0.50),
+                percentileMillis(latencies, 0.99),
+                errors.get());
+        logger.info("{}: {} requests, {} req/s, p50={}ms, p99={}ms, errors={}",
+                mode, requests, String.format("%.0f", result.throughput()),
+                result.p50Millis(), result.p99Millis(), result.errors());
+        return result;
+    }
+
+    private static long percentileMillis(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos[Math.max(0, index)]);
+    }
+
+    private record Result(double throughput, long p50Millis, long p99Millis, int errors) {}
+}
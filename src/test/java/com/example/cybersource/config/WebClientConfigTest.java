@@ -0,0 +1,112 @@
+package com.example.cybersource.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebClientConfigTest {
+
+    private final WebClientConfig webClientConfig = new WebClientConfig();
+
+    private CybersourceConfig cybersourceConfig;
+    private ConnectionProvider connectionProvider;
+    private DisposableServer stubServer;
+
+    @BeforeEach
+    void setUp() {
+        cybersourceConfig = new CybersourceConfig();
+        stubServer = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .get("/small", (request, response) -> response.sendString(Mono.just("{\"id\":\"abc\"}")))
+                        .get("/large", (request, response) -> response.sendString(Mono.just("x".repeat(4096))))
+                        .get("/slow", (request, response) -> response.sendString(
+                                Mono.delay(Duration.ofSeconds(2)).thenReturn("late"))))
+                .bindNow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+        stubServer.disposeNow();
+    }
+
+    @Test
+    void testConnectionProvider_UsesConfiguredPoolSize() {
+        // Arrange
+        cybersourceConfig.getHttp().setMaxConnections(42);
+
+        // Act
+        connectionProvider = webClientConfig.cybersourceConnectionProvider(cybersourceConfig);
+
+        // Assert
+        assertEquals(42, connectionProvider.maxConnections());
+    }
+
+    @Test
+    void testWebClient_ReadsResponseWithinLimit() {
+        // Arrange
+        WebClient webClient = createWebClient();
+
+        // Act
+        String body = webClient.get().uri(url("/small")).retrieve().bodyToMono(String.class).block();
+
+        // Assert
+        assertEquals("{\"id\":\"abc\"}", body);
+    }
+
+    @Test
+    void testWebClient_RejectsResponseOverMaxInMemorySize() {
+        // Arrange
+        cybersourceConfig.getHttp().setMaxInMemorySize(DataSize.ofKilobytes(1));
+        WebClient webClient = createWebClient();
+
+        // Act & Assert
+        Exception exception = assertThrows(Exception.class,
+                () -> webClient.get().uri(url("/large")).retrieve().bodyToMono(String.class).block());
+        assertInstanceOf(DataBufferLimitException.class, rootCause(exception));
+    }
+
+    @Test
+    void testWebClient_AppliesResponseTimeout() {
+        // Arrange
+        cybersourceConfig.getHttp().setResponseTimeout(Duration.ofMillis(200));
+        WebClient webClient = createWebClient();
+
+        // Act & Assert
+        assertThrows(WebClientRequestException.class,
+                () -> webClient.get().uri(url("/slow")).retrieve().bodyToMono(String.class).block());
+    }
+
+    private WebClient createWebClient() {
+        connectionProvider = webClientConfig.cybersourceConnectionProvider(cybersourceConfig);
+        return webClientConfig.webClient(WebClient.builder(), cybersourceConfig, connectionProvider);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + stubServer.port() + path;
+    }
+
+    private static Throwable rootCause(Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
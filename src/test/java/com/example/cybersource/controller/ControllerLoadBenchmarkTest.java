@@ -0,0 +1,256 @@
+package com.example.cybersource.controller;
+
+import com.example.cybersource.util.KeyLoader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end load test: the full application, with Mongo in a Testcontainers
+ * container and Cybersource replaced by {@link CybersourceStubServer}, is driven
+ * over HTTP at a fixed request rate. Each scenario reports achieved throughput,
+ * p50/p99/p999 latency and a breakdown of errors by HTTP status or exception,
+ * logged and written to {@code target/load-test.json}.
+ * <p>
+ * The driver is open-loop: requests are sent on schedule whether or not earlier
+ * ones have finished, and latency is measured from the scheduled send time, so a
+ * stalled server shows up as latency rather than as a lower request rate. Requests
+ * still outstanding when the driver gives up count as "unfinished" errors and with
+ * their latency so far, so they raise the percentiles instead of hiding from them.
+ * <p>
+ * Run with {@code mvn test -Dtest=ControllerLoadBenchmarkTest -Dbenchmark=true}
+ * (needs Docker). Tune with {@code -Dloadtest.rps=200}, {@code -Dloadtest.duration=30s}
+ * and the {@code stub.*} properties of {@link CybersourceStubServer}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        classes = ControllerLoadBenchmarkTest.LoadTestApplication.class,
+        properties = "logging.level.com.example.cybersource=WARN")
+@Testcontainers(disabledWithoutDocker = true)
+class ControllerLoadBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ControllerLoadBenchmarkTest.class);
+
+    private static final int RPS = Integer.getInteger("loadtest.rps", 200);
+    private static final Duration DURATION = DurationStyle.detectAndParse(System.getProperty("loadtest.duration", "30s"));
+    private static final Duration WARM_UP = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final int MERCHANTS = 10;
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4.2");
+
+    private static CybersourceStubServer stubServer;
+    private static final List<Report> reports = new ArrayList<>();
+
+    @LocalServerPort
+    private int port;
+
+    private WebClient client;
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        stubServer = CybersourceStubServer.start(CybersourceStubServer.Settings.fromSystemProperties());
+        logger.info("Stub Cybersource at {} with {}", stubServer.baseUrl(), stubServer.settings());
+        registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+        registry.add("cybersource.base-url", stubServer::baseUrl);
+        registry.add("cybersource.merchant-id", () -> "loadtest-merchant");
+        registry.add("cybersource.api-key", () -> "loadtest-api-key");
+        registry.add("cybersource.secret-key", () -> "loadtest-kid");
+    }
+
+    // The application class lives in another package, so give the test its own root
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @AutoConfigurationPackage(basePackages = "com.example.cybersource")
+    @ComponentScan(basePackages = "com.example.cybersource",
+            excludeFilters = @ComponentScan.Filter(type = FilterType.CUSTOM, classes = TypeExcludeFilter.class))
+    static class LoadTestApplication {
+
+        // Signs with a generated key instead of reading the PEM file configured for production
+        @Bean
+        @Primary
+        KeyLoader loadTestKeyLoader() throws Exception {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            RSAPrivateKey privateKey = (RSAPrivateKey) generator.generateKeyPair().getPrivate();
+            return new KeyLoader() {
+                @Override
+                public RSAPrivateKey loadPrivateKey(Path pemPath) {
+                    return privateKey;
+                }
+            };
+        }
+    }
+
+    @AfterAll
+    static void writeReports() throws Exception {
+        if (stubServer == null) {
+            return;
+        }
+        stubServer.close();
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(Path.of("target", "load-test.json").toFile(),
+                        Map.of("rps", RPS, "durationSeconds", DURATION.toSeconds(),
+                                "stub", stubServer.settings(), "scenarios", reports));
+    }
+
+    @Test
+    void loadNetworkToken() throws Exception {
+        run("POST /network-token", index -> client().post()
+                .uri("/network-token?cardNumber={card}&merchantId={merchant}", cardNumber(index), merchantId(index)));
+    }
+
+    @Test
+    void loadCreateInstrumentIdentifier() throws Exception {
+        run("POST /cybersource/instrument-identifier", index -> client().post()
+                .uri("/cybersource/instrument-identifier?cardNumber={card}&merchantId={merchant}",
+                        cardNumber(index), merchantId(index)));
+    }
+
+    @Test
+    void loadPaymentCredentials() throws Exception {
+        run("GET /cybersource/payment-credentials", index -> client().get()
+                .uri("/cybersource/payment-credentials/{id}?merchantId={merchant}",
+                        7010000000016240000L + index, merchantId(index)));
+    }
+
+    private void run(String scenario, IntFunction<WebClient.RequestHeadersSpec<?>> request) throws Exception {
+        drive(scenario + " (warm-up)", request, (int) (RPS * WARM_UP.toSeconds()));
+        Report report = drive(scenario, request, (int) (RPS * DURATION.toSeconds()));
+        reports.add(report);
+        logger.info("{}", report);
+
+        // A run where nearly everything failed measures the failure path, not the service
+        assertTrue(report.errors().values().stream().mapToInt(Integer::intValue).sum() < report.requests() / 2,
+                () -> scenario + " failed too often: " + report.errors());
+    }
+
+    private Report drive(String scenario, IntFunction<WebClient.RequestHeadersSpec<?>> request, int requests)
+            throws InterruptedException {
+        // Zero until the request finishes; a late finish cannot overwrite the latency of an unfinished one
+        AtomicLongArray latencies = new AtomicLongArray(requests);
+        Map<String, Integer> errors = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(requests);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RPS;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long scheduled = start + i * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int index = i;
+            request.apply(i)
+                    .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                    .timeout(REQUEST_TIMEOUT)
+                    .map(status -> status < 400 ? "" : "HTTP " + status)
+                    .onErrorResume(e -> Mono.just(e.getClass().getSimpleName()))
+                    .subscribe(outcome -> {
+                        if (latencies.compareAndSet(index, 0, Math.max(1, System.nanoTime() - scheduled))) {
+                            if (!outcome.isEmpty()) {
+                                errors.merge(outcome, 1, Integer::sum);
+                            }
+                            done.countDown();
+                        }
+                    });
+        }
+        done.await(REQUEST_TIMEOUT.toSeconds() * 2, TimeUnit.SECONDS);
+        long end = System.nanoTime();
+        double seconds = (end - start) / 1_000_000_000.0;
+
+        long[] sorted = new long[requests];
+        int unfinished = 0;
+        for (int i = 0; i < requests; i++) {
+            if (latencies.compareAndSet(i, 0, end - (start + i * intervalNanos))) {
+                unfinished++;
+            }
+            sorted[i] = latencies.get(i);
+        }
+        if (unfinished > 0) {
+            errors.merge("unfinished", unfinished, Integer::sum);
+        }
+        Arrays.sort(sorted);
+        return new Report(scenario, requests, requests / seconds,
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99),
+                percentileMillis(sorted, 0.999), new TreeMap<>(errors));
+    }
+
+    private WebClient client() {
+        if (client == null) {
+            // Open-loop load needs a connection per outstanding request, not a queue
+            ConnectionProvider connectionProvider = ConnectionProvider.builder("loadtest")
+                    .maxConnections(RPS * (int) REQUEST_TIMEOUT.toSeconds())
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            client = WebClient.builder()
+                    .baseUrl("http://127.0.0.1:" + port)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider)))
+                    .build();
+        }
+        return client;
+    }
+
+    private static String cardNumber(int index) {
+        // Distinct cards, so single-flight does not coalesce the load away
+        return String.format("41111111%08d", index);
+    }
+
+    private static String merchantId(int index) {
+        return "loadtest-merchant-" + (index % MERCHANTS);
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    record Report(String scenario, int requests, double throughputPerSecond, double p50Millis,
+                  double p99Millis, double p999Millis, Map<String, Integer> errors) {}
+}
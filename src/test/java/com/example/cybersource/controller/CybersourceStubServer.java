@@ -0,0 +1,123 @@
+package com.example.cybersource.controller;
+
+import org.reactivestreams.Publisher;
+import org.springframework.boot.convert.DurationStyle;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the Cybersource endpoints this service calls, for load tests
+ * that cannot reach {@code cybersource.base-url}. Every response is delayed by the
+ * configured latency plus a random jitter, a configured fraction fail with 500 or
+ * 503, and successful bodies are padded to the configured size.
+ * <p>
+ * Settings can be overridden with {@code -Dstub.latency=50ms},
+ * {@code -Dstub.jitter=20ms}, {@code -Dstub.error-rate=0.01} and
+ * {@code -Dstub.payload-bytes=2048}.
+ */
+public final class CybersourceStubServer implements AutoCloseable {
+
+    private static final int[] ERROR_STATUSES = {500, 503};
+
+    private final Settings settings;
+    private final DisposableServer server;
+    private final AtomicLong instrumentIdentifiers = new AtomicLong(7010000000016240000L);
+
+    private CybersourceStubServer(Settings settings) {
+        this.settings = settings;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .post("/pts/v2/instrumentidentifiers", (request, response) ->
+                                respond(response, instrumentIdentifier(Long.toString(instrumentIdentifiers.incrementAndGet()))))
+                        .get("/pts/v2/instrumentidentifiers/{id}/networkTokens", (request, response) ->
+                                respond(response, networkTokens(request.param("id"))))
+                        .get("/pts/v2/instrumentidentifiers/{id}", (request, response) ->
+                                respond(response, instrumentIdentifier(request.param("id")))))
+                .bindNow();
+    }
+
+    public static CybersourceStubServer start(Settings settings) {
+        return new CybersourceStubServer(settings);
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Publisher<Void> respond(HttpServerResponse response, String body) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long jitterNanos = settings.jitter().isZero() ? 0 : random.nextLong(settings.jitter().toNanos());
+        Duration delay = settings.latency().plusNanos(jitterNanos);
+        if (random.nextDouble() < settings.errorRate()) {
+            return Mono.delay(delay).then(response
+                    .status(ERROR_STATUSES[random.nextInt(ERROR_STATUSES.length)])
+                    .header("Content-Type", "application/json")
+                    .sendString(Mono.just("{\"status\":\"SERVER_ERROR\",\"reason\":\"SYSTEM_ERROR\"}"))
+                    .then());
+        }
+        // Delay without holding an event-loop thread, like a slow upstream would
+        return Mono.delay(delay).then(response
+                .header("Content-Type", "application/json")
+                .sendString(Mono.just(body))
+                .then());
+    }
+
+    private String instrumentIdentifier(String id) {
+        return pad("{\"id\":\"" + id + "\",\"object\":\"instrumentIdentifier\",\"state\":\"ACTIVE\","
+                + "\"card\":{\"number\":\"411111XXXXXX1111\",\"expirationMonth\":\"12\",\"expirationYear\":\"2031\"}");
+    }
+
+    private String networkTokens(String id) {
+        return pad("{\"id\":\"" + id + "\",\"object\":\"instrumentIdentifier\",\"state\":\"ACTIVE\","
+                + "\"networkToken\":{\"state\":\"ACTIVE\",\"type\":\"visa\",\"number\":\"4895370012003478\","
+                + "\"expirationMonth\":\"12\",\"expirationYear\":\"2031\",\"cryptogram\":\"AceY+igABPs3jdwNaDg3MAACAAA=\"}");
+    }
+
+    // Closes the object, adding a field the service ignores so the body is about payloadBytes long
+    private String pad(String body) {
+        int padding = settings.payloadBytes() - body.length() - "\"padding\":\"\"}".length() - 1;
+        if (padding <= 0) {
+            return body + "}";
+        }
+        return body + ",\"padding\":\"" + "x".repeat(padding) + "\"}";
+    }
+
+    /**
+     * @param latency fixed delay added to every response
+     * @param jitter upper bound of a uniformly random extra delay
+     * @param errorRate fraction of requests, from 0 to 1, answered with 500 or 503
+     * @param payloadBytes approximate size of each successful response body
+     */
+    public record Settings(Duration latency, Duration jitter, double errorRate, int payloadBytes) {
+
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                    duration("stub.latency", Duration.ofMillis(50)),
+                    duration("stub.jitter", Duration.ofMillis(20)),
+                    Double.parseDouble(System.getProperty("stub.error-rate", "0.01")),
+                    Integer.parseInt(System.getProperty("stub.payload-bytes", "2048")));
+        }
+
+        private static Duration duration(String property, Duration defaultValue) {
+            String value = System.getProperty(property);
+            return value == null ? defaultValue : DurationStyle.detectAndParse(value);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.entity.TokenStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataMongoTest
+@Testcontainers(disabledWithoutDocker = true)
+class ReactiveTokenStorageRepositoryTest {
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4.2");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+    }
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    // The application class lives in another package, so give the slice its own root
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = TokenStorage.class)
+    static class TestConfig {
+    }
+
+    @Autowired
+    private ReactiveTokenStorageRepository reactiveTokenStorageRepository;
+
+    @BeforeEach
+    void setUp() {
+        reactiveTokenStorageRepository.deleteAll().block(TIMEOUT);
+    }
+
+    @Test
+    void testSaveAndFindByPaymentTokenId() {
+        // Arrange
+        TokenStorage tokenStorage = new TokenStorage("token-1", "crypto-1", "merchant-1", new HashMap<>());
+
+        // Act
+        TokenStorage saved = reactiveTokenStorageRepository.save(tokenStorage).block(TIMEOUT);
+
+        // Assert
+        assertNotNull(saved.getId());
+        assertEquals("crypto-1", reactiveTokenStorageRepository.findByPaymentTokenId("token-1").block(TIMEOUT).getCryptogram());
+        assertTrue(reactiveTokenStorageRepository.existsByPaymentTokenId("token-1").block(TIMEOUT));
+        assertNull(reactiveTokenStorageRepository.findByPaymentTokenId("missing").block(TIMEOUT));
+    }
+
+    @Test
+    void testFindByMerchantIdOrderByCreatedAtDesc() {
+        // Arrange
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        TokenStorage older = new TokenStorage("token-older", "crypto-1", "merchant-1", new HashMap<>());
+        older.setCreatedAt(now.minusMinutes(1));
+        TokenStorage newer = new TokenStorage("token-newer", "crypto-2", "merchant-1", new HashMap<>());
+        newer.setCreatedAt(now);
+        TokenStorage other = new TokenStorage("token-other", "crypto-3", "merchant-2", new HashMap<>());
+        reactiveTokenStorageRepository.saveAll(List.of(older, newer, other)).blockLast(TIMEOUT);
+
+        // Act
+        List<String> ids = reactiveTokenStorageRepository.findByMerchantIdOrderByCreatedAtDescPaymentTokenIdAsc("merchant-1")
+                .map(TokenStorage::getPaymentTokenId)
+                .collectList()
+                .block(TIMEOUT);
+
+        // Assert
+        assertEquals(List.of("token-newer", "token-older"), ids);
+    }
+}
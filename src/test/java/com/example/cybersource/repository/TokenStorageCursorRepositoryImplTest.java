@@ -0,0 +1,97 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.entity.TokenStorage;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenStorageCursorRepositoryImplTest {
+
+    private static final String MERCHANT_ID = "merchant-1";
+    private static final Document MERCHANT_ORDER = new Document("createdAt", -1).append("paymentTokenId", 1);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private final CybersourceConfig cybersourceConfig = new CybersourceConfig();
+
+    @Test
+    void testFindPageByMerchantId_FirstPageUsesIndexOrder() {
+        // Arrange
+        when(mongoTemplate.find(any(Query.class), eq(TokenStorage.class))).thenReturn(List.of());
+
+        // Act
+        repository().findPageByMerchantId(MERCHANT_ID, null, 50);
+
+        // Assert
+        Query query = capturedFindQuery();
+        assertEquals(new Document("merchantId", MERCHANT_ID), query.getQueryObject());
+        assertEquals(MERCHANT_ORDER, query.getSortObject());
+        assertEquals(50, query.getLimit());
+    }
+
+    @Test
+    void testFindPageByMerchantId_ContinuesAfterCursor() {
+        // Arrange
+        LocalDateTime createdAt = LocalDateTime.of(2025, 1, 1, 12, 0);
+        when(mongoTemplate.find(any(Query.class), eq(TokenStorage.class))).thenReturn(List.of());
+
+        // Act
+        repository().findPageByMerchantId(MERCHANT_ID, new TokenStorageCursor(createdAt, "token-9"), 50);
+
+        // Assert: strictly older, or the same instant with a later paymentTokenId
+        Document expected = new Document("merchantId", MERCHANT_ID).append("$or", List.of(
+                new Document("createdAt", new Document("$lt", createdAt)),
+                new Document("createdAt", createdAt).append("paymentTokenId", new Document("$gt", "token-9"))));
+        assertEquals(expected, capturedFindQuery().getQueryObject());
+    }
+
+    @Test
+    void testStreamByMerchantId_UsesConfiguredCursorBatchSize() {
+        // Arrange
+        cybersourceConfig.getPersistence().setCursorBatchSize(250);
+        when(mongoTemplate.stream(any(Query.class), eq(TokenStorage.class))).thenReturn(Stream.empty());
+
+        // Act
+        repository().streamByMerchantId(MERCHANT_ID).close();
+
+        // Assert
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(TokenStorage.class));
+        assertEquals(250, query.getValue().getMeta().getCursorBatchSize());
+        assertEquals(MERCHANT_ORDER, query.getValue().getSortObject());
+    }
+
+    @Test
+    void testCursor_RoundTripsAndRejectsGarbage() {
+        TokenStorageCursor cursor = new TokenStorageCursor(LocalDateTime.of(2025, 1, 1, 12, 0, 0, 123_000_000), "a|b");
+
+        assertEquals(cursor, TokenStorageCursor.decode(cursor.encode()));
+        assertThrows(IllegalArgumentException.class, () -> TokenStorageCursor.decode("not a cursor"));
+    }
+
+    private TokenStorageCursorRepositoryImpl repository() {
+        return new TokenStorageCursorRepositoryImpl(mongoTemplate, cybersourceConfig);
+    }
+
+    private Query capturedFindQuery() {
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(TokenStorage.class));
+        return query.getValue();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig.RawResponse;
+import com.example.cybersource.entity.TokenStorage;
+import com.example.cybersource.util.ResponseCompression;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MongoDBContainer;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the legacy TokenStorage format (full response in metadata) with the
+ * compressed and dropped raw-response formats: encoded BSON size per document, and
+ * bulk insert throughput against a real MongoDB (the latter needs Docker).
+ * <p>
+ * Run with {@code mvn test -Dtest=TokenStorageFormatBenchmarkTest -Dbenchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TokenStorageFormatBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenStorageFormatBenchmarkTest.class);
+
+    private static final int DOCUMENTS = 20_000;
+    private static final int BATCH_SIZE = 500;
+    private static final int MERCHANTS = 100;
+
+    private static int sequence;
+
+    // Shape of a GET .../networkTokens response; the real one is of similar size
+    private static final String API_RESPONSE = """
+            {"_links":{"self":{"href":"/pts/v2/instrumentidentifiers/7010000000016241111/networkTokens"},\
+            "paymentInstruments":{"href":"/tms/v1/instrumentidentifiers/7010000000016241111/paymentinstruments"}},\
+            "id":"7010000000016241111","object":"instrumentIdentifier","state":"ACTIVE",\
+            "card":{"number":"411111XXXXXX1111","expirationMonth":"12","expirationYear":"2031"},\
+            "tokenizedCard":{"state":"ACTIVE","enrollmentId":"9ef7b0b8a1c3d3e3f2a5b6c7d8e9f0a1","tokenReferenceId":"c2e8b5a7d9f1e3b4a6c8d0e2f4a6b8c0",\
+            "type":"visa","number":"4895370012003478","expirationMonth":"12","expirationYear":"2031",\
+            "cryptogram":"AceY+igABPs3jdwNaDg3MAACAAA=","requestorId":"40010052236",\
+            "card":{"suffix":"1111","expirationMonth":"12","expirationYear":"2031"},\
+            "metadata":{"cardArt":{"foregroundColor":"1a1f71","combinedAsset":{"id":"5bcd2a1e-1d2b-4d88-9c2f-5b0a3a6b0e11",\
+            "_links":{"self":{"href":"/tms/v2/tokens/7010000000016241111/visa/assets/card-art-combined"}}},\
+            "brandLogoAsset":{"id":"800200c9-629a-4f2e-a7b9-0a5e4b6c7d8f",\
+            "_links":{"self":{"href":"/tms/v2/tokens/7010000000016241111/visa/assets/brand-logo"}}},\
+            "issuerLogoAsset":{"id":"100200c9-629a-4f2e-a7b9-0a5e4b6c7d8f",\
+            "_links":{"self":{"href":"/tms/v2/tokens/7010000000016241111/visa/assets/issuer-logo"}}},\
+            "iconAsset":{"id":"300200c9-629a-4f2e-a7b9-0a5e4b6c7d8f",\
+            "_links":{"self":{"href":"/tms/v2/tokens/7010000000016241111/visa/assets/icon"}}}}}},\
+            "issuer":{"paymentAccountReference":"V0010013020225167482489113290"},\
+            "processingInformation":{"authorizationOptions":{"initiator":{"merchantInitiatedTransaction":\
+            {"previousTransactionId":"123456789619999"}}}},\
+            "metadata":{"creator":"merchant_test","createdAt":"2025-01-01T00:00:00Z","updatedAt":"2025-01-01T00:00:00Z"}}""";
+
+    @Test
+    void benchmarkDocumentSize() {
+        MappingMongoConverter converter = converter();
+        int legacy = encodedSize(converter, document(RawResponse.FULL));
+        for (RawResponse format : RawResponse.values()) {
+            int size = encodedSize(converter, document(format));
+            logger.info("{}: {} bytes per document ({}% of legacy)", format, size, size * 100 / legacy);
+        }
+
+        assertTrue(encodedSize(converter, document(RawResponse.COMPRESSED)) < legacy / 2);
+        assertTrue(encodedSize(converter, document(RawResponse.NONE)) < legacy / 4);
+    }
+
+    @Test
+    void benchmarkInsertThroughput() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is required for the insert benchmark");
+
+        try (MongoDBContainer mongo = new MongoDBContainer("mongo:4.4.2")) {
+            mongo.start();
+            try (MongoClient client = MongoClients.create(mongo.getReplicaSetUrl())) {
+                MongoTemplate mongoTemplate = new MongoTemplate(client, "benchmark");
+                // Warm up the connection pool, JIT and WiredTiger cache
+                insert(mongoTemplate, RawResponse.FULL, DOCUMENTS / 4);
+
+                for (RawResponse format : RawResponse.values()) {
+                    mongoTemplate.dropCollection(TokenStorage.class);
+                    long start = System.nanoTime();
+                    insert(mongoTemplate, format, DOCUMENTS);
+                    double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+                    Document stats = mongoTemplate.getDb().runCommand(
+                            new Document("collStats", mongoTemplate.getCollectionName(TokenStorage.class)));
+                    logger.info("{}: {} inserts/s, avgObjSize={} bytes, size={} KB, storageSize={} KB",
+                            format, String.format("%.0f", DOCUMENTS / seconds), stats.get("avgObjSize"),
+                            stats.get("size", Number.class).longValue() / 1024,
+                            stats.get("storageSize", Number.class).longValue() / 1024);
+                    assertEquals(DOCUMENTS, mongoTemplate.count(new Query(), TokenStorage.class));
+                }
+            }
+        }
+    }
+
+    private static void insert(MongoTemplate mongoTemplate, RawResponse format, int count) {
+        List<TokenStorage> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < count; i++) {
+            batch.add(document(format));
+            if (batch.size() == BATCH_SIZE || i == count - 1) {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TokenStorage.class).insert(batch).execute();
+                batch.clear();
+            }
+        }
+    }
+
+    /** Mirrors the mapping in PaymentCredentialsService for each raw-response format. */
+    private static TokenStorage document(RawResponse format) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("instrumentIdentifierTokenId", "7010000000016241111");
+        TokenStorage tokenStorage = new TokenStorage(UUID.randomUUID().toString(), "AceY+igABPs3jdwNaDg3MAACAAA=",
+                "merchant-" + (sequence++ % MERCHANTS), metadata);
+        switch (format) {
+            case FULL -> {
+                metadata.put("apiResponse", API_RESPONSE);
+                metadata.put("creationTimestamp", LocalDateTime.now().toString());
+            }
+            case COMPRESSED -> tokenStorage.setCompressedApiResponse(ResponseCompression.deflate(API_RESPONSE));
+            case NONE -> {
+            }
+        }
+        return tokenStorage;
+    }
+
+    private static MappingMongoConverter converter() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+    private static int encodedSize(MappingMongoConverter converter, TokenStorage tokenStorage) {
+        Document document = new Document();
+        converter.write(tokenStorage, document);
+        return new RawBsonDocument(document, new DocumentCodec()).getByteBuffer().remaining();
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.entity.TokenStorage;
+import com.mongodb.ExplainVerbosity;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Projections.excludeId;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the merchant lookups are served by the declared compound indexes, and
+ * that the reference projections are covered (no documents fetched).
+ */
+@DataMongoTest(properties = "spring.data.mongodb.auto-index-creation=true")
+@Testcontainers(disabledWithoutDocker = true)
+class TokenStorageIndexTest {
+
+    @Container
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:4.4.2");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+    }
+
+    private static final String MERCHANT_ID = "merchant-1";
+
+    // The application class lives in another package, so give the slice its own root
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = TokenStorage.class)
+    static class TestConfig {
+    }
+
+    @Autowired
+    private TokenStorageRepository tokenStorageRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        tokenStorageRepository.deleteAll();
+        List<TokenStorage> tokens = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            tokens.add(new TokenStorage("token-" + i, "crypto-" + i, "merchant-" + (i % 4), new HashMap<>()));
+        }
+        tokenStorageRepository.saveAll(tokens);
+    }
+
+    @Test
+    void testDeclaredIndexesExist() {
+        List<String> indexNames = mongoTemplate.indexOps(TokenStorage.class).getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .toList();
+
+        assertTrue(indexNames.containsAll(List.of("paymentTokenId", "merchant_cryptogram", "merchant_created")),
+                "indexes: " + indexNames);
+    }
+
+    @Test
+    void testFindReferenceByMerchantIdAndCryptogram_IsCovered() {
+        // Act
+        Optional<TokenReference> reference = tokenStorageRepository.findReferenceByMerchantIdAndCryptogram(MERCHANT_ID, "crypto-5");
+
+        // Assert
+        assertEquals(new TokenReference("token-5", MERCHANT_ID, "crypto-5", null), reference.orElseThrow());
+
+        Document explain = explain(and(eq("merchantId", MERCHANT_ID), eq("cryptogram", "crypto-5")),
+                fields(excludeId(), include("paymentTokenId", "merchantId", "cryptogram")));
+        assertEquals(List.of("merchant_cryptogram"), indexesUsed(explain));
+        assertEquals(0, totalDocsExamined(explain));
+    }
+
+    @Test
+    void testFindReferencesByMerchantIdAndCreatedAtBetween_IsCovered() {
+        // Arrange
+        LocalDateTime from = LocalDateTime.now().minusHours(1);
+        LocalDateTime to = LocalDateTime.now().plusHours(1);
+
+        // Act
+        List<TokenReference> references = tokenStorageRepository.findReferencesByMerchantIdAndCreatedAtBetween(MERCHANT_ID, from, to);
+
+        // Assert
+        assertEquals(50, references.size());
+        assertTrue(references.stream().allMatch(ref -> ref.paymentTokenId() != null && ref.createdAt() != null));
+
+        Document explain = explain(and(eq("merchantId", MERCHANT_ID), gte("createdAt", from), lt("createdAt", to)),
+                fields(excludeId(), include("paymentTokenId", "merchantId", "createdAt")));
+        assertEquals(List.of("merchant_created"), indexesUsed(explain));
+        assertEquals(0, totalDocsExamined(explain));
+    }
+
+    @Test
+    void testFindByMerchantIdAndCryptogram_UsesIndexInsteadOfCollectionScan() {
+        Document explain = explain(and(eq("merchantId", MERCHANT_ID), eq("cryptogram", "crypto-5")), null);
+
+        assertEquals(List.of("merchant_cryptogram"), indexesUsed(explain));
+        assertEquals(1, totalDocsExamined(explain));
+    }
+
+    @Test
+    void testFindByMerchantId_UsesIndexInsteadOfCollectionScan() {
+        Document explain = explain(eq("merchantId", MERCHANT_ID), null);
+
+        assertFalse(stages(winningPlan(explain)).contains("COLLSCAN"));
+        assertEquals(1, indexesUsed(explain).size());
+        assertEquals(50, totalDocsExamined(explain));
+    }
+
+    @Test
+    void testFindPageByMerchantId_WalksAllTokensOnceInIndexOrder() {
+        // Arrange: identical timestamps force the paymentTokenId tie-breaker
+        LocalDateTime createdAt = LocalDateTime.now().withNano(0);
+        List<TokenStorage> ties = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            TokenStorage token = new TokenStorage("tie-" + i, "crypto-tie-" + i, MERCHANT_ID, new HashMap<>());
+            token.setCreatedAt(createdAt);
+            ties.add(token);
+        }
+        tokenStorageRepository.saveAll(ties);
+
+        // Act
+        List<String> seen = new ArrayList<>();
+        TokenStorageCursor cursor = null;
+        List<TokenStorage> page;
+        do {
+            page = tokenStorageRepository.findPageByMerchantId(MERCHANT_ID, cursor, 7);
+            page.forEach(token -> seen.add(token.getPaymentTokenId()));
+            cursor = page.isEmpty() ? null : TokenStorageCursor.after(page.get(page.size() - 1));
+        } while (page.size() == 7);
+
+        // Assert
+        assertEquals(75, seen.size());
+        assertEquals(75, seen.stream().distinct().count());
+        try (var stream = tokenStorageRepository.streamByMerchantId(MERCHANT_ID)) {
+            assertEquals(seen, stream.map(TokenStorage::getPaymentTokenId).toList());
+        }
+    }
+
+    private Document explain(Bson filter, Bson projection) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(TokenStorage.class))
+                .find(filter)
+                .projection(projection)
+                .explain(ExplainVerbosity.EXECUTION_STATS);
+    }
+
+    private static Document winningPlan(Document explain) {
+        return explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+    }
+
+    private static int totalDocsExamined(Document explain) {
+        return explain.get("executionStats", Document.class).getInteger("totalDocsExamined");
+    }
+
+    private static List<String> indexesUsed(Document explain) {
+        List<String> names = new ArrayList<>();
+        collect(winningPlan(explain), "indexName", names);
+        return names;
+    }
+
+    private static List<String> stages(Document plan) {
+        List<String> stages = new ArrayList<>();
+        collect(plan, "stage", stages);
+        return stages;
+    }
+
+    private static void collect(Document plan, String key, List<String> values) {
+        if (plan.containsKey(key)) {
+            values.add(plan.getString(key));
+        }
+        if (plan.containsKey("inputStage")) {
+            collect(plan.get("inputStage", Document.class), key, values);
+        }
+        if (plan.containsKey("inputStages")) {
+            for (Document input : plan.getList("inputStages", Document.class)) {
+                collect(input, key, values);
+            }
+        }
+    }
+}
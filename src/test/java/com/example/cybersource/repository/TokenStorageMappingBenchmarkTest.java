@@ -0,0 +1,128 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig.RawResponse;
+import com.example.cybersource.entity.TokenStorage;
+import com.example.cybersource.util.ResponseCompression;
+import org.bson.Document;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JMH cost of mapping a {@link TokenStorage} to and from its BSON document with
+ * Spring Data's converter, for each raw-response format. No database is involved.
+ * Results are written to {@code target/jmh-token-storage-mapping.json}.
+ * <p>
+ * Run with {@code mvn test -Dtest=TokenStorageMappingBenchmarkTest -Dbenchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenStorageMappingBenchmarkTest {
+
+    private static final String API_RESPONSE = """
+            {"id":"7010000000016241111","object":"instrumentIdentifier","state":"ACTIVE",\
+            "card":{"number":"411111XXXXXX1111","expirationMonth":"12","expirationYear":"2031"},\
+            "networkToken":{"state":"ACTIVE","type":"visa","number":"4895370012003478",\
+            "expirationMonth":"12","expirationYear":"2031","cryptogram":"AceY+igABPs3jdwNaDg3MAACAAA=",\
+            "requestorId":"40010052236","card":{"suffix":"1111","expirationMonth":"12","expirationYear":"2031"}},\
+            "issuer":{"paymentAccountReference":"V0010013020225167482489113290"}}""";
+
+    @Param({"FULL", "COMPRESSED", "NONE"})
+    public RawResponse format;
+
+    private MappingMongoConverter converter;
+    private TokenStorage tokenStorage;
+    private Document document;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+        // Mirrors the mapping in PaymentCredentialsService
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("instrumentIdentifierTokenId", "7010000000016241111");
+        tokenStorage = new TokenStorage("5f0c2b8e-7d3a-4c1e-9b6f-2a4d8e0c1b3f", "AceY+igABPs3jdwNaDg3MAACAAA=",
+                "benchmark-merchant", metadata);
+        switch (format) {
+            case FULL -> {
+                metadata.put("apiResponse", API_RESPONSE);
+                metadata.put("creationTimestamp", LocalDateTime.now().toString());
+            }
+            case COMPRESSED -> tokenStorage.setCompressedApiResponse(ResponseCompression.deflate(API_RESPONSE));
+            case NONE -> {
+            }
+        }
+        document = write();
+    }
+
+    @Benchmark
+    public Document write() {
+        Document target = new Document();
+        converter.write(tokenStorage, target);
+        return target;
+    }
+
+    @Benchmark
+    public TokenStorage read() {
+        return converter.read(TokenStorage.class, document);
+    }
+
+    @Test
+    void benchmarkMapping() throws Exception {
+        for (RawResponse rawResponse : RawResponse.values()) {
+            format = rawResponse;
+            setUp();
+            // Timestamps are truncated to millis in BSON, so compare the other fields
+            TokenStorage mapped = read();
+            assertEquals(tokenStorage.getPaymentTokenId(), mapped.getPaymentTokenId());
+            assertEquals(tokenStorage.getMetadata(), mapped.getMetadata());
+            assertArrayEquals(tokenStorage.getCompressedApiResponse(), mapped.getCompressedApiResponse());
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(getClass().getName() + "\\.")
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-token-storage-mapping.json")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.entity.TokenStorage;
+import com.example.cybersource.util.ResponseCompression;
+import com.mongodb.bulk.BulkWriteResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.util.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenStorageRawResponseMigrationTest {
+
+    private static final String COLLECTION = "TokenStorage";
+    private static final String BASELINE_RESPONSE = "{\"tokenizedCard\":{\"state\":\"ACTIVE\"},"
+            + "\"networkToken\":{\"number\":\"4895370013193500\",\"cryptogram\":\"AceY+igABPs3jdwNaDg3MAACAAA=\"}}";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Mock
+    private BulkWriteResult bulkWriteResult;
+
+    private final CybersourceConfig cybersourceConfig = new CybersourceConfig();
+    private final List<List<Pair<Query, UpdateDefinition>>> batches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        cybersourceConfig.getPersistence().setBatchSize(2);
+        lenient().when(mongoTemplate.getCollectionName(TokenStorage.class)).thenReturn(COLLECTION);
+        lenient().when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION)).thenReturn(bulkOperations);
+        // The migration reuses its update list, so copy each batch
+        lenient().when(bulkOperations.updateOne(anyList())).thenAnswer(invocation -> {
+            batches.add(List.copyOf(invocation.getArgument(0)));
+            return bulkOperations;
+        });
+        lenient().when(bulkOperations.execute()).thenReturn(bulkWriteResult);
+    }
+
+    @Test
+    void testMigrate_CompressesLegacyResponsesInBatches() {
+        // Arrange
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(Stream.of(legacy("id-1", "{\"a\":1}"), legacy("id-2", "{\"b\":2}"), legacy("id-3", "{\"c\":3}")));
+        when(bulkWriteResult.getModifiedCount()).thenReturn(2, 1);
+
+        // Act
+        long migrated = new TokenStorageRawResponseMigration(mongoTemplate, cybersourceConfig).migrate();
+
+        // Assert
+        assertEquals(3, migrated);
+        assertEquals(List.of(2, 1), batches.stream().map(List::size).toList());
+
+        Pair<Query, UpdateDefinition> first = batches.get(0).get(0);
+        assertEquals("id-1", first.getFirst().getQueryObject().get("_id"));
+        Document update = first.getSecond().getUpdateObject();
+        Document unset = update.get("$unset", Document.class);
+        assertTrue(unset.containsKey("metadata.apiResponse"));
+        assertTrue(unset.containsKey("metadata.creationTimestamp"));
+        byte[] compressed = (byte[]) update.get("$set", Document.class).get("compressedApiResponse");
+        assertEquals("{\"a\":1}", ResponseCompression.inflate(compressed));
+    }
+
+    @Test
+    void testMigrate_BaselineDocumentKeepsItsCryptogram() {
+        // Arrange: baseline stored a placeholder cryptogram; the real one is only in the response
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(Stream.of(baseline("id-1")));
+        when(bulkWriteResult.getModifiedCount()).thenReturn(1);
+
+        // Act
+        new TokenStorageRawResponseMigration(mongoTemplate, cybersourceConfig).migrate();
+
+        // Assert
+        Document update = batches.get(0).get(0).getSecond().getUpdateObject();
+        Document set = update.get("$set", Document.class);
+        assertEquals("AceY+igABPs3jdwNaDg3MAACAAA=", set.get("cryptogram"));
+        assertEquals("instrument-1", set.get("instrumentIdentifierTokenId"));
+        assertEquals(BASELINE_RESPONSE, ResponseCompression.inflate((byte[]) set.get("compressedApiResponse")));
+        Document unset = update.get("$unset", Document.class);
+        assertTrue(unset.containsKey("metadata.apiResponse"));
+        assertTrue(unset.containsKey("metadata.instrumentIdentifierTokenId"));
+    }
+
+    @Test
+    void testMigrate_NoneDropsResponsesOnlyOnceTheCryptogramIsCopied() {
+        // Arrange
+        cybersourceConfig.getPersistence().setRawResponse(CybersourceConfig.RawResponse.NONE);
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(Stream.of(baseline("id-1"), legacy("id-2", "{\"a\":1}")));
+        when(bulkWriteResult.getModifiedCount()).thenReturn(1);
+
+        // Act
+        long migrated = new TokenStorageRawResponseMigration(mongoTemplate, cybersourceConfig).migrate();
+
+        // Assert: id-2 has no cryptogram in its response, so it is left alone
+        assertEquals(1, migrated);
+        assertEquals(1, batches.get(0).size());
+        Document update = batches.get(0).get(0).getSecond().getUpdateObject();
+        Document set = update.get("$set", Document.class);
+        assertEquals("AceY+igABPs3jdwNaDg3MAACAAA=", set.get("cryptogram"));
+        assertNull(set.get("compressedApiResponse"));
+        assertTrue(update.get("$unset", Document.class).containsKey("metadata.apiResponse"));
+    }
+
+    @Test
+    void testMigrate_FullPromotesFieldsAndKeepsResponses() {
+        // Arrange
+        cybersourceConfig.getPersistence().setRawResponse(CybersourceConfig.RawResponse.FULL);
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(Stream.of(baseline("id-1")));
+        when(bulkWriteResult.getModifiedCount()).thenReturn(1);
+
+        // Act
+        long migrated = new TokenStorageRawResponseMigration(mongoTemplate, cybersourceConfig).migrate();
+
+        // Assert
+        assertEquals(1, migrated);
+        Document update = batches.get(0).get(0).getSecond().getUpdateObject();
+        assertEquals("AceY+igABPs3jdwNaDg3MAACAAA=", update.get("$set", Document.class).get("cryptogram"));
+        Document unset = update.get("$unset", Document.class);
+        assertTrue(unset.containsKey("metadata.instrumentIdentifierTokenId"));
+        assertFalse(unset.containsKey("metadata.apiResponse"));
+    }
+
+    private static Document legacy(String id, String apiResponse) {
+        return new Document("_id", id).append("metadata", new Document("apiResponse", apiResponse));
+    }
+
+    private static Document baseline(String id) {
+        return new Document("_id", id)
+                .append("cryptogram", "extracted_cryptogram_1700000000000")
+                .append("metadata", new Document("instrumentIdentifierTokenId", "instrument-1")
+                        .append("apiResponse", BASELINE_RESPONSE)
+                        .append("creationTimestamp", "2024-01-01T00:00:00"));
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.cybersource.repository;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.entity.TokenStorage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.mongodb.bulk.BulkWriteError;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenStorageWriteBehindTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @TempDir
+    Path tempDir;
+
+    private static final String SPILL_KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private final CybersourceConfig cybersourceConfig = new CybersourceConfig();
+    private final List<List<String>> inserted = new CopyOnWriteArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private TokenStorageWriteBehind writer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        CybersourceConfig.Persistence persistence = cybersourceConfig.getPersistence();
+        persistence.setBatchSize(3);
+        persistence.setFlushInterval(Duration.ofSeconds(30));
+        persistence.setQueueCapacity(10);
+        persistence.setShutdownTimeout(Duration.ofSeconds(5));
+        persistence.setFlushAttempts(2);
+        persistence.setFlushRetryBackoff(Duration.ofMillis(1));
+        persistence.setSpillFile(tempDir.resolve("spill.ndjson").toString());
+        persistence.setSpillKey(SPILL_KEY);
+        lenient().when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TokenStorage.class))
+                .thenReturn(bulkOperations);
+        // The writer reuses its batch list, so copy what each bulk insert was given
+        lenient().when(bulkOperations.insert(anyList())).thenAnswer(invocation -> {
+            inserted.add(paymentTokenIds(invocation.getArgument(0)));
+            return bulkOperations;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void testEnqueue_FlushesWhenBatchIsFull() throws Exception {
+        // Arrange
+        CountDownLatch flushed = new CountDownLatch(1);
+        when(bulkOperations.execute()).thenAnswer(invocation -> {
+            flushed.countDown();
+            return null;
+        });
+        writer = start();
+
+        // Act
+        writer.enqueue(document("token-1"));
+        writer.enqueue(document("token-2"));
+        writer.enqueue(document("token-3"));
+
+        // Assert: the 30s interval never elapses, so only the batch size can trigger this
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        writer.stop();
+        writer = null;
+        assertEquals(List.of(List.of("token-1", "token-2", "token-3")), inserted);
+        assertEquals(1, meterRegistry.get("cybersource.token_storage.flush").timer().count());
+    }
+
+    @Test
+    void testEnqueue_FlushesPartialBatchAfterInterval() throws Exception {
+        // Arrange
+        cybersourceConfig.getPersistence().setFlushInterval(Duration.ofMillis(50));
+        CountDownLatch flushed = new CountDownLatch(1);
+        when(bulkOperations.execute()).thenAnswer(invocation -> {
+            flushed.countDown();
+            return null;
+        });
+        writer = start();
+
+        // Act
+        writer.enqueue(document("token-1"));
+
+        // Assert
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("token-1")), inserted);
+    }
+
+    @Test
+    void testFindPending_VisibleUntilFlushed() throws Exception {
+        // Arrange
+        writer = start();
+
+        // Act
+        writer.enqueue(document("token-1"));
+
+        // Assert
+        assertTrue(writer.findPending("token-1").isPresent());
+        assertTrue(writer.findPending("token-2").isEmpty());
+    }
+
+    @Test
+    void testEnqueue_QueueFull_InsertsOnCallerThread() throws Exception {
+        // Arrange: hold the flusher inside its first bulk insert so the queue fills up
+        cybersourceConfig.getPersistence().setBatchSize(1);
+        cybersourceConfig.getPersistence().setQueueCapacity(1);
+        cybersourceConfig.getPersistence().setEnqueueTimeout(Duration.ofMillis(10));
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(bulkOperations.execute()).thenAnswer(invocation -> {
+            flushing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        });
+        writer = start();
+        writer.enqueue(document("token-1"));
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+
+        // Act
+        writer.enqueue(document("token-2"));
+        writer.enqueue(document("token-3"));
+        release.countDown();
+
+        // Assert
+        verify(mongoTemplate).insert(argThat((TokenStorage doc) -> doc.getPaymentTokenId().equals("token-3")));
+        assertEquals(1.0, meterRegistry.get("cybersource.token_storage.caller_inserts").counter().count());
+    }
+
+    @Test
+    void testFlush_FailedBatchIsRetriedAndStaysPendingUntilWritten() throws Exception {
+        // Arrange: both attempts of the first flush fail, so the batch goes back on the queue
+        cybersourceConfig.getPersistence().setFlushInterval(Duration.ofMillis(50));
+        CountDownLatch retrying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        when(bulkOperations.execute())
+                .thenThrow(new DataAccessResourceFailureException("Mongo unavailable"))
+                .thenThrow(new DataAccessResourceFailureException("Mongo unavailable"))
+                .thenAnswer(invocation -> {
+                    retrying.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    written.countDown();
+                    return null;
+                });
+        writer = start();
+
+        // Act
+        writer.enqueue(document("token-1"));
+
+        // Assert
+        assertTrue(retrying.await(5, TimeUnit.SECONDS));
+        assertTrue(writer.findPending("token-1").isPresent());
+        release.countDown();
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        writer.stop();
+        writer = null;
+        assertEquals(3, inserted.size());
+        assertFalse(Files.exists(tempDir.resolve("spill.ndjson")));
+        assertEquals(0.0, meterRegistry.get("cybersource.token_storage.spilled").counter().count());
+    }
+
+    @Test
+    void testStop_FailedFlushIsSpilledEncryptedAndReplayedOnStart() throws Exception {
+        // Arrange
+        when(bulkOperations.execute())
+                .thenThrow(new DataAccessResourceFailureException("Mongo unavailable"))
+                .thenThrow(new DataAccessResourceFailureException("Mongo unavailable"))
+                .thenReturn(null);
+        writer = start();
+        writer.enqueue(document("token-1"));
+        writer.enqueue(document("token-2"));
+
+        // Act: shutdown drains the queue; both attempts fail and the batch lands in the spill file
+        writer.stop();
+        writer = null;
+
+        // Assert
+        Path spillFile = tempDir.resolve("spill.ndjson");
+        List<String> lines = Files.readAllLines(spillFile);
+        assertEquals(2, lines.size());
+        assertTrue(lines.stream().noneMatch(line -> line.contains("cryptogram") || line.contains("token-1")));
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(spillFile)));
+
+        // Act: the next instance replays the file and removes it
+        writer = start();
+
+        // Assert
+        assertEquals(List.of(List.of("token-1", "token-2"), List.of("token-1", "token-2"),
+                List.of("token-1", "token-2")), inserted);
+        assertFalse(Files.exists(spillFile));
+        assertEquals(2.0, meterRegistry.get("cybersource.token_storage.spilled").counter().count());
+    }
+
+    @Test
+    void testStart_UnreadableSpillLinesAreQuarantinedAndReplayFinishes() throws Exception {
+        // Arrange: a spill file with a torn line and a line that is not base64 between two good ones
+        when(bulkOperations.execute())
+                .thenThrow(new DataAccessResourceFailureException("Mongo unavailable"))
+                .thenThrow(new DataAccessResourceFailureException("Mongo unavailable"))
+                .thenReturn(null);
+        writer = start();
+        writer.enqueue(document("token-1"));
+        writer.enqueue(document("token-2"));
+        writer.stop();
+        writer = null;
+        Path spillFile = tempDir.resolve("spill.ndjson");
+        List<String> lines = Files.readAllLines(spillFile);
+        String torn = lines.get(0).substring(0, lines.get(0).length() / 2);
+        Files.write(spillFile, List.of(lines.get(0), torn, "not base64!", lines.get(1)), StandardCharsets.UTF_8,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        // Act
+        writer = start();
+
+        // Assert
+        assertEquals(List.of("token-1", "token-2"), inserted.get(inserted.size() - 1));
+        assertFalse(Files.exists(spillFile));
+        assertFalse(Files.exists(tempDir.resolve("spill.ndjson.replay")));
+        assertEquals(List.of(torn, "not base64!"), Files.readAllLines(tempDir.resolve("spill.ndjson.quarantine")));
+        assertEquals(2.0, meterRegistry.get("cybersource.token_storage.quarantined").tag("reason", "corrupt")
+                .counter().count());
+    }
+
+    @Test
+    void testFlush_RejectedDocumentsAreQuarantinedNotSpilled() throws Exception {
+        // Arrange: Mongo refuses the second document of the batch for a reason other than a duplicate key
+        BulkOperationException rejected = mock(BulkOperationException.class);
+        when(rejected.getErrors()).thenReturn(List.of(
+                new BulkWriteError(121, "Document failed validation", new BsonDocument(), 1)));
+        CountDownLatch flushed = new CountDownLatch(1);
+        when(bulkOperations.execute()).thenAnswer(invocation -> {
+            flushed.countDown();
+            throw rejected;
+        });
+        writer = start();
+
+        // Act
+        writer.enqueue(document("token-1"));
+        writer.enqueue(document("token-2"));
+        writer.enqueue(document("token-3"));
+
+        // Assert
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        writer.stop();
+        writer = null;
+        assertEquals(1, inserted.size());
+        assertFalse(Files.exists(tempDir.resolve("spill.ndjson")));
+        assertEquals(1, Files.readAllLines(tempDir.resolve("spill.ndjson.quarantine")).size());
+        assertEquals(1.0, meterRegistry.get("cybersource.token_storage.quarantined").tag("reason", "rejected")
+                .counter().count());
+    }
+
+    @Test
+    void testConstructor_RequiresAbsoluteSpillFileAndKey() {
+        // Arrange
+        CybersourceConfig.Persistence persistence = cybersourceConfig.getPersistence();
+        persistence.setSpillFile("token-storage-spill.ndjson");
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class,
+                () -> new TokenStorageWriteBehind(mongoTemplate, objectMapper, cybersourceConfig, meterRegistry));
+        persistence.setSpillFile(tempDir.resolve("spill.ndjson").toString());
+        persistence.setSpillKey(null);
+        assertThrows(IllegalStateException.class,
+                () -> new TokenStorageWriteBehind(mongoTemplate, objectMapper, cybersourceConfig, meterRegistry));
+    }
+
+    private TokenStorageWriteBehind start() {
+        TokenStorageWriteBehind started =
+                new TokenStorageWriteBehind(mongoTemplate, objectMapper, cybersourceConfig, meterRegistry);
+        started.start();
+        return started;
+    }
+
+    private static TokenStorage document(String paymentTokenId) {
+        return new TokenStorage(paymentTokenId, "cryptogram", "merchant-1", Map.of("source", "test"));
+    }
+
+    private static List<String> paymentTokenIds(List<TokenStorage> batch) {
+        return batch.stream().map(TokenStorage::getPaymentTokenId).toList();
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.exception.NetworkException;
+import com.example.cybersource.service.BulkNetworkTokenService.BulkTokenRequest;
+import com.example.cybersource.service.BulkNetworkTokenService.BulkTokenResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkNetworkTokenServiceTest {
+
+    @Mock
+    private NetworkTokenService networkTokenService;
+
+    private CybersourceConfig cybersourceConfig;
+    private BulkNetworkTokenService bulkNetworkTokenService;
+
+    private static final String MERCHANT_ID = "test-merchant-123";
+
+    @BeforeEach
+    void setUp() {
+        cybersourceConfig = new CybersourceConfig();
+        cybersourceConfig.getBulk().setConcurrency(4);
+        cybersourceConfig.getBulk().setMerchantRequestsPerSecond(0);
+        bulkNetworkTokenService = new BulkNetworkTokenService(networkTokenService, cybersourceConfig);
+    }
+
+    @Test
+    void testGenerateNetworkTokens_ReturnsOneResultPerRequest() {
+        // Arrange
+        when(networkTokenService.generateNetworkTokenAndCryptogramReactive(anyString(), eq(MERCHANT_ID)))
+                .thenAnswer(invocation -> Mono.just(new NetworkTokenService.NetworkTokenResult(
+                        "token-" + invocation.getArgument(0, String.class), "cryptogram", 5)));
+
+        // Act
+        List<BulkTokenResult> results = bulkNetworkTokenService.generateNetworkTokens(Flux.just(
+                        new BulkTokenRequest("4111111111111111", MERCHANT_ID),
+                        new BulkTokenRequest("5555555555554444", MERCHANT_ID)))
+                .collectSortedList(Comparator.comparingLong(BulkTokenResult::index))
+                .block();
+
+        // Assert
+        assertEquals(2, results.size());
+        assertEquals(0, results.get(0).index());
+        assertEquals("token-4111111111111111", results.get(0).networkToken());
+        assertEquals("1111", results.get(0).cardLastFour());
+        assertEquals("4444", results.get(1).cardLastFour());
+        assertNull(results.get(1).error());
+    }
+
+    @Test
+    void testGenerateNetworkTokens_FailureDoesNotStopBatch() {
+        // Arrange
+        when(networkTokenService.generateNetworkTokenAndCryptogramReactive("4000000000000002", MERCHANT_ID))
+                .thenReturn(Mono.error(new NetworkException("Network error")));
+        when(networkTokenService.generateNetworkTokenAndCryptogramReactive("4111111111111111", MERCHANT_ID))
+                .thenReturn(Mono.just(new NetworkTokenService.NetworkTokenResult("token", "cryptogram", 5)));
+
+        // Act
+        List<BulkTokenResult> results = bulkNetworkTokenService.generateNetworkTokens(Flux.just(
+                        new BulkTokenRequest("4000000000000002", MERCHANT_ID),
+                        new BulkTokenRequest("4111111111111111", MERCHANT_ID)))
+                .collectSortedList(Comparator.comparingLong(BulkTokenResult::index))
+                .block();
+
+        // Assert
+        assertEquals("Network error", results.get(0).error());
+        assertNull(results.get(0).networkToken());
+        assertEquals("token", results.get(1).networkToken());
+    }
+
+    @Test
+    void testGenerateNetworkTokens_RejectsIncompleteRequestWithoutCallingUpstream() {
+        // Act
+        BulkTokenResult result = bulkNetworkTokenService.generateNetworkTokens(
+                Flux.just(new BulkTokenRequest("4111111111111111", null))).blockFirst();
+
+        // Assert
+        assertNotNull(result.error());
+        verifyNoInteractions(networkTokenService);
+    }
+
+    @Test
+    void testGenerateNetworkTokens_BoundsConcurrency() {
+        // Arrange
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(networkTokenService.generateNetworkTokenAndCryptogramReactive(anyString(), eq(MERCHANT_ID)))
+                .thenAnswer(invocation -> Mono.defer(() -> {
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            return Mono.delay(Duration.ofMillis(20));
+                        })
+                        .doOnNext(tick -> inFlight.decrementAndGet())
+                        .thenReturn(new NetworkTokenService.NetworkTokenResult("token", "cryptogram", 20)));
+
+        // Act
+        Long count = bulkNetworkTokenService.generateNetworkTokens(Flux.fromStream(IntStream.range(0, 40)
+                        .mapToObj(i -> new BulkTokenRequest("41111111111111" + String.format("%02d", i), MERCHANT_ID))))
+                .count()
+                .block();
+
+        // Assert
+        assertEquals(40, count);
+        assertTrue(maxInFlight.get() <= 4, "at most 4 tokenizations should run at once but saw " + maxInFlight.get());
+    }
+}
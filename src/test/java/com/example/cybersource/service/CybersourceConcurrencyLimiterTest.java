@@ -0,0 +1,128 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.exception.CallRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CybersourceConcurrencyLimiterTest {
+
+    private static final String ENDPOINT = "get_payment_credentials";
+
+    private SimpleMeterRegistry meterRegistry;
+    private CybersourceConfig cybersourceConfig;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cybersourceConfig = new CybersourceConfig();
+        CybersourceConfig.Limiter limiter = cybersourceConfig.getLimiter();
+        limiter.setInitialLimit(2);
+        limiter.setMinLimit(1);
+        limiter.setMaxLimit(4);
+        limiter.setBackoffRatio(0.5);
+        limiter.setLatencyThreshold(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void testLimit_RejectsCallsOverTheLimitWithoutSubscribing() {
+        // Arrange
+        CybersourceConcurrencyLimiter limiter = new CybersourceConcurrencyLimiter(cybersourceConfig, meterRegistry);
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        Disposable firstCall = limiter.limit(ENDPOINT, first.asMono()).subscribe();
+        Disposable secondCall = limiter.limit(ENDPOINT, second.asMono()).subscribe();
+
+        // Act
+        boolean[] subscribed = new boolean[1];
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class, () -> limiter.limit(ENDPOINT,
+                Mono.fromCallable(() -> subscribed[0] = true)).block()));
+
+        // Assert
+        assertInstanceOf(CallRejectedException.class, error);
+        assertFalse(subscribed[0]);
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, meterRegistry.get(CybersourceConcurrencyLimiter.REJECTIONS).tag("endpoint", ENDPOINT)
+                .counter().count());
+
+        firstCall.dispose();
+        secondCall.dispose();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testOnSample_GrowsOnFastCallsOnlyWhileTheLimitIsInUse() {
+        // Arrange
+        CybersourceConcurrencyLimiter limiter = new CybersourceConcurrencyLimiter(cybersourceConfig, meterRegistry);
+        long fast = Duration.ofMillis(50).toNanos();
+
+        // Act & Assert
+        limiter.onSample(fast, 1, false);
+        assertEquals(3, limiter.getLimit());
+        limiter.onSample(fast, 1, false);
+        assertEquals(3, limiter.getLimit());
+        limiter.onSample(fast, 2, false);
+        limiter.onSample(fast, 4, false);
+        assertEquals(4, limiter.getLimit());
+        assertEquals(4.0, meterRegistry.get(CybersourceConcurrencyLimiter.LIMIT).gauge().value());
+    }
+
+    @Test
+    void testLimit_BacksOffOnServerErrorsButNotClientErrors() {
+        // Arrange
+        cybersourceConfig.getLimiter().setInitialLimit(4);
+        CybersourceConcurrencyLimiter limiter = new CybersourceConcurrencyLimiter(cybersourceConfig, meterRegistry);
+
+        // Act
+        assertThrows(WebClientResponseException.class, () -> limiter.limit(ENDPOINT,
+                Mono.error(WebClientResponseException.create(400, "Bad Request", null, null, null))).block());
+        int afterClientError = limiter.getLimit();
+        assertThrows(WebClientResponseException.class, () -> limiter.limit(ENDPOINT,
+                Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null))).block());
+
+        // Assert
+        assertEquals(4, afterClientError);
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void testOnSample_BacksOffOnSlowCallsDownToMinimum() {
+        // Arrange
+        CybersourceConcurrencyLimiter limiter = new CybersourceConcurrencyLimiter(cybersourceConfig, meterRegistry);
+        long slow = Duration.ofSeconds(2).toNanos();
+
+        // Act
+        limiter.onSample(slow, 1, false);
+        limiter.onSample(slow, 1, false);
+
+        // Assert
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void testLimit_DisabledLetsEveryCallThrough() {
+        // Arrange
+        CybersourceConcurrencyLimiter limiter = CybersourceConcurrencyLimiter.unlimited();
+        Sinks.One<String> pending = Sinks.one();
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            limiter.limit(ENDPOINT, pending.asMono()).subscribe();
+        }
+
+        // Assert
+        assertEquals(0, limiter.getInFlight());
+        assertEquals("body", limiter.limit(ENDPOINT, Mono.just("body")).block());
+    }
+}
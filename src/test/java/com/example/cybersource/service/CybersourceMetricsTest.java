@@ -0,0 +1,133 @@
+package com.example.cybersource.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CybersourceMetricsTest {
+
+    private static final String MERCHANT_ID = "merchant-1";
+
+    private SimpleMeterRegistry meterRegistry;
+    private CybersourceMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        metrics = new CybersourceMetrics(meterRegistry, 4);
+    }
+
+    @Test
+    void testTimeApiCall_TagsSuccess() {
+        // Act
+        metrics.timeApiCall("get_payment_credentials", MERCHANT_ID, Mono.just("body")).block();
+
+        // Assert
+        Timer timer = apiTimer("get_payment_credentials", "success", "2xx");
+        assertEquals(1, timer.count());
+        assertEquals(metrics.merchantBucket(MERCHANT_ID), timer.getId().getTag("merchant_bucket"));
+    }
+
+    @Test
+    void testTimeApiCall_TagsResponseEntityStatus() {
+        // Act
+        metrics.timeApiCall("get_instrument_identifier", MERCHANT_ID,
+                Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).build())).block();
+
+        // Assert
+        assertEquals(1, apiTimer("get_instrument_identifier", "success", "304").count());
+    }
+
+    @Test
+    void testTimeApiCall_TagsUpstreamErrorStatus() {
+        // Arrange
+        Mono<String> call = Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null));
+
+        // Act
+        assertThrows(WebClientResponseException.class,
+                () -> metrics.timeApiCall("create_instrument_identifier", MERCHANT_ID, call).block());
+
+        // Assert
+        assertEquals(1, apiTimer("create_instrument_identifier", "server_error", "503").count());
+    }
+
+    @Test
+    void testTimeApiCall_TagsTimeoutAndNetworkErrors() {
+        // Arrange
+        Mono<String> slow = Mono.<String>never().timeout(Duration.ofMillis(10));
+        Mono<String> unreachable = Mono.error(new WebClientException("Connection refused") {});
+
+        // Act
+        assertThrows(RuntimeException.class, () -> metrics.timeApiCall("get_payment_credentials", MERCHANT_ID, slow).block());
+        assertThrows(WebClientException.class,
+                () -> metrics.timeApiCall("get_payment_credentials", MERCHANT_ID, unreachable).block());
+
+        // Assert
+        assertEquals(1, apiTimer("get_payment_credentials", "timeout", "none").count());
+        assertEquals(1, apiTimer("get_payment_credentials", "network_error", "none").count());
+    }
+
+    @Test
+    void testTimeApiCall_TimesFromSubscription() {
+        // Arrange
+        Mono<String> timed = metrics.timeApiCall("get_payment_credentials", MERCHANT_ID,
+                Mono.delay(Duration.ofMillis(20)).thenReturn("body"));
+
+        // Act
+        timed.block();
+        timed.block();
+
+        // Assert
+        Timer timer = apiTimer("get_payment_credentials", "success", "2xx");
+        assertEquals(2, timer.count());
+        assertTrue(timer.max(TimeUnit.MILLISECONDS) >= 20);
+    }
+
+    @Test
+    void testRecordPersist_TagsModeAndOutcome() {
+        // Act
+        metrics.recordPersist("save", MERCHANT_ID, System.nanoTime(), true);
+        assertThrows(IllegalStateException.class, () -> metrics.timePersist("write_behind", MERCHANT_ID,
+                Mono.error(new IllegalStateException("queue full"))).block());
+
+        // Assert
+        assertEquals(1, meterRegistry.get(CybersourceMetrics.PERSIST)
+                .tag("mode", "save").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get(CybersourceMetrics.PERSIST)
+                .tag("mode", "write_behind").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void testMerchantBucket_BoundsCardinality() {
+        // Act
+        Set<String> buckets = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            buckets.add(metrics.merchantBucket("merchant-" + i));
+        }
+
+        // Assert
+        assertEquals(4, buckets.size());
+        assertEquals(metrics.merchantBucket(MERCHANT_ID), metrics.merchantBucket(MERCHANT_ID));
+    }
+
+    private Timer apiTimer(String endpoint, String outcome, String status) {
+        return meterRegistry.get(CybersourceMetrics.API_CALLS)
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .tag("status", status)
+                .timer();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentIdentifierCacheTest {
+
+    private static final InstrumentIdentifierCache.CacheKey KEY =
+            new InstrumentIdentifierCache.CacheKey("merchant-1", "7010000000016241111");
+    private static final InstrumentIdentifierResponse BODY =
+            new InstrumentIdentifierResponse("7010000000016241111", "instrumentIdentifier", "ACTIVE", null);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private InstrumentIdentifierCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new InstrumentIdentifierCache(meterRegistry, 100, Duration.ofSeconds(60), Duration.ofHours(1), nanos::get);
+    }
+
+    @Test
+    void testIsFresh_OnlyWithinTtl() {
+        // Arrange
+        cache.put(KEY, BODY, "\"v1\"");
+
+        // Act & Assert
+        nanos.addAndGet(Duration.ofSeconds(59).toNanos());
+        assertTrue(cache.isFresh(cache.get(KEY)));
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertFalse(cache.isFresh(cache.get(KEY)));
+    }
+
+    @Test
+    void testGet_KeepsResponsesWithEtagUntilMaxAge() {
+        // Arrange
+        cache.put(KEY, BODY, "\"v1\"");
+
+        // Act & Assert: stale but still available for a conditional request
+        nanos.addAndGet(Duration.ofMinutes(59).toNanos());
+        assertEquals("\"v1\"", cache.get(KEY).etag());
+
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    void testGet_DropsResponsesWithoutEtagAfterTtl() {
+        cache.put(KEY, BODY, null);
+
+        nanos.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    void testRevalidated_StartsNewTtlAndCountsNotModified() {
+        // Arrange
+        cache.put(KEY, BODY, "\"v1\"");
+        nanos.addAndGet(Duration.ofMinutes(5).toNanos());
+
+        // Act
+        InstrumentIdentifierResponse body = cache.revalidated(KEY, cache.get(KEY));
+
+        // Assert
+        assertSame(BODY, body);
+        assertTrue(cache.isFresh(cache.get(KEY)));
+        assertEquals(1.0, meterRegistry.get("cybersource.instrument_identifier.cache.not_modified").counter().count());
+    }
+
+    @Test
+    void testGet_KeysByMerchant() {
+        cache.put(KEY, BODY, null);
+
+        assertNull(cache.get(new InstrumentIdentifierCache.CacheKey("merchant-2", KEY.instrumentIdentifierTokenId())));
+    }
+}
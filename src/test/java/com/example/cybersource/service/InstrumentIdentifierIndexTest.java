@@ -0,0 +1,127 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.entity.InstrumentIdentifierFingerprint;
+import com.example.cybersource.repository.InstrumentIdentifierFingerprintRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InstrumentIdentifierIndexTest {
+
+    private static final String CARD_NUMBER = "4111111111111111";
+    private static final String MERCHANT_ID = "merchant-1";
+    private static final String HMAC_KEY = Base64.getEncoder().encodeToString(new byte[32]);
+
+    @Mock
+    private InstrumentIdentifierFingerprintRepository repository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private InstrumentIdentifierIndex index;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        index = new InstrumentIdentifierIndex(repository, meterRegistry, Schedulers.immediate(), HMAC_KEY, 100);
+    }
+
+    @Test
+    void testFingerprint_IsKeyedAndIgnoresSeparators() {
+        String fingerprint = index.fingerprint(CARD_NUMBER);
+        InstrumentIdentifierIndex otherKey = new InstrumentIdentifierIndex(repository, new SimpleMeterRegistry(),
+                Schedulers.immediate(), Base64.getEncoder().encodeToString("k".repeat(32).getBytes()), 100);
+
+        assertEquals(fingerprint, index.fingerprint("4111 1111-1111 1111"));
+        assertNotEquals(fingerprint, otherKey.fingerprint(CARD_NUMBER));
+        assertFalse(fingerprint.contains("1111"));
+    }
+
+    @Test
+    void testConstructor_RejectsMissingOrShortKey() {
+        assertThrows(IllegalStateException.class, () -> new InstrumentIdentifierIndex(repository,
+                new SimpleMeterRegistry(), Schedulers.immediate(), "", 100));
+        assertThrows(IllegalStateException.class, () -> new InstrumentIdentifierIndex(repository,
+                new SimpleMeterRegistry(), Schedulers.immediate(), Base64.getEncoder().encodeToString(new byte[16]), 100));
+    }
+
+    @Test
+    void testRecord_PersistsFingerprintOnlyAndServesFromFrontTier() {
+        // Arrange
+        String fingerprint = index.fingerprint(CARD_NUMBER);
+
+        // Act
+        index.record(MERCHANT_ID, fingerprint, "ii-1");
+        Optional<String> found = index.find(MERCHANT_ID, fingerprint);
+
+        // Assert
+        assertEquals(Optional.of("ii-1"), found);
+        ArgumentCaptor<InstrumentIdentifierFingerprint> saved = ArgumentCaptor.forClass(InstrumentIdentifierFingerprint.class);
+        verify(repository).save(saved.capture());
+        assertEquals(MERCHANT_ID + ":" + fingerprint, saved.getValue().getId());
+        assertFalse(saved.getValue().toString().contains(CARD_NUMBER));
+        verify(repository, never()).findById(anyString());
+    }
+
+    @Test
+    void testFind_LoadsFromMongoOnFrontTierMiss() {
+        // Arrange
+        String fingerprint = index.fingerprint(CARD_NUMBER);
+        String id = InstrumentIdentifierFingerprint.id(MERCHANT_ID, fingerprint);
+        when(repository.findById(id)).thenReturn(Optional.of(
+                new InstrumentIdentifierFingerprint(id, MERCHANT_ID, fingerprint, "ii-1", LocalDateTime.now())));
+
+        // Act
+        Optional<String> first = index.find(MERCHANT_ID, fingerprint);
+        Optional<String> second = index.find(MERCHANT_ID, fingerprint);
+
+        // Assert
+        assertEquals(Optional.of("ii-1"), first);
+        assertEquals(first, second);
+        verify(repository, times(1)).findById(id);
+        assertEquals(2.0, meterRegistry.get("cybersource.instrument_identifier.dedup").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    void testFind_TreatsMongoFailureAsMiss() {
+        when(repository.findById(anyString())).thenThrow(new org.springframework.dao.DataAccessException("Mongo down") {});
+
+        assertTrue(index.find(MERCHANT_ID, index.fingerprint(CARD_NUMBER)).isEmpty());
+        assertEquals(1.0, meterRegistry.get("cybersource.instrument_identifier.dedup").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testFindReactive_EmptyWhenUnknown() {
+        when(repository.findById(anyString())).thenReturn(Optional.empty());
+
+        assertNull(index.findReactive(MERCHANT_ID, index.fingerprint(CARD_NUMBER)).block());
+        assertEquals(1.0, meterRegistry.get("cybersource.instrument_identifier.dedup").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testEvict_RemovesFromBothTiers() {
+        // Arrange
+        String fingerprint = index.fingerprint(CARD_NUMBER);
+        index.record(MERCHANT_ID, fingerprint, "ii-1");
+        when(repository.findById(anyString())).thenReturn(Optional.empty());
+
+        // Act
+        index.evict(MERCHANT_ID, fingerprint);
+
+        // Assert
+        verify(repository).deleteById(InstrumentIdentifierFingerprint.id(MERCHANT_ID, fingerprint));
+        assertTrue(index.find(MERCHANT_ID, fingerprint).isEmpty());
+    }
+}
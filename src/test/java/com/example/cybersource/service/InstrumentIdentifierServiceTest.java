@@ -1,17 +1,32 @@
 package com.example.cybersource.service;
 
 import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.dto.InstrumentIdentifierRequest;
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
 import com.example.cybersource.exception.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import reactor.core.Exceptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -48,7 +63,8 @@ class InstrumentIdentifierServiceTest {
     private static final String MERCHANT_ID = "test-merchant-123";
     private static final String INSTRUMENT_IDENTIFIER_TOKEN_ID = "test-instrument-id";
     private static final String JWT_TOKEN = "test-jwt-token";
-    private static final String API_RESPONSE = "{\"id\":\"" + INSTRUMENT_IDENTIFIER_TOKEN_ID + "\"}";
+    private static final InstrumentIdentifierResponse API_RESPONSE =
+            new InstrumentIdentifierResponse(INSTRUMENT_IDENTIFIER_TOKEN_ID, null, null, null);
     private static final String BASE_URL = "https://api.cybersource.com";
     private static final String API_KEY = "test-api-key";
     private static final String SECRET_KEY = "test-secret-key";
@@ -69,12 +85,12 @@ class InstrumentIdentifierServiceTest {
         when(webClient.post()).thenReturn(requestBodyUriSpec);
         when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
         when(requestBodySpec.header(anyString(), anyString())).thenReturn(requestBodySpec);
-        when(requestBodySpec.bodyValue(anyString())).thenReturn(requestHeadersSpec);
+        when(requestBodySpec.bodyValue(any(InstrumentIdentifierRequest.class))).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.just(API_RESPONSE));
 
         // Act
-        String result = instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID);
+        InstrumentIdentifierResponse result = instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID);
 
         // Assert
         assertEquals(API_RESPONSE, result);
@@ -82,7 +98,7 @@ class InstrumentIdentifierServiceTest {
         verify(requestBodyUriSpec).uri(BASE_URL + "/pts/v2/instrumentidentifiers");
         verify(requestBodySpec).header("v-c-merchant-id", MERCHANT_ID);
         verify(requestBodySpec).header("Authorization", "Bearer " + JWT_TOKEN);
-        verify(requestBodySpec).bodyValue(contains(CARD_NUMBER));
+        verify(requestBodySpec).bodyValue(InstrumentIdentifierRequest.of(CARD_NUMBER));
     }
 
     @Test
@@ -94,12 +110,12 @@ class InstrumentIdentifierServiceTest {
         when(webClient.post()).thenReturn(requestBodyUriSpec);
         when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
         when(requestBodySpec.header(anyString(), anyString())).thenReturn(requestBodySpec);
-        when(requestBodySpec.bodyValue(anyString())).thenReturn(requestHeadersSpec);
+        when(requestBodySpec.bodyValue(any(InstrumentIdentifierRequest.class))).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
 
         WebClientResponseException webClientException = WebClientResponseException.create(
                 400, "Bad Request", null, "Invalid card number".getBytes(), null);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.error(webClientException));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.error(webClientException));
 
         // Act & Assert
         CybersourceApiException exception = assertThrows(CybersourceApiException.class,
@@ -119,11 +135,11 @@ class InstrumentIdentifierServiceTest {
         when(webClient.post()).thenReturn(requestBodyUriSpec);
         when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
         when(requestBodySpec.header(anyString(), anyString())).thenReturn(requestBodySpec);
-        when(requestBodySpec.bodyValue(anyString())).thenReturn(requestHeadersSpec);
+        when(requestBodySpec.bodyValue(any(InstrumentIdentifierRequest.class))).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
 
         WebClientException webClientException = new WebClientException("Connection timeout") {};
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.error(webClientException));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.error(webClientException));
 
         // Act & Assert
         NetworkException exception = assertThrows(NetworkException.class,
@@ -157,10 +173,10 @@ class InstrumentIdentifierServiceTest {
         WebClient.RequestHeadersSpec requestHeadersSpecMock = requestHeadersUriSpec.uri(anyString());
         when(requestHeadersSpecMock.header(anyString(), anyString())).thenReturn(requestHeadersSpecMock);
         when(requestHeadersSpecMock.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.just(API_RESPONSE));
 
         // Act
-        String result = instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+        InstrumentIdentifierResponse result = instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
 
         // Assert
         assertEquals(API_RESPONSE, result);
@@ -183,7 +199,7 @@ class InstrumentIdentifierServiceTest {
 
         WebClientResponseException webClientException = WebClientResponseException.create(
                 404, "Not Found", null, "Instrument identifier not found".getBytes(), null);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.error(webClientException));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.error(webClientException));
 
         // Act & Assert
         CybersourceApiException exception = assertThrows(CybersourceApiException.class,
@@ -208,7 +224,7 @@ class InstrumentIdentifierServiceTest {
         when(requestHeadersSpecMock.retrieve()).thenReturn(responseSpec);
 
         WebClientException webClientException = new WebClientException("Connection timeout") {};
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.error(webClientException));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.error(webClientException));
 
         // Act & Assert
         NetworkException exception = assertThrows(NetworkException.class,
@@ -230,6 +246,21 @@ class InstrumentIdentifierServiceTest {
         assertTrue(exception.getMessage().contains("Unexpected error while getting instrument identifier"));
     }
 
+    @Test
+    void testGetInstrumentIdentifier_ShedCallsAreNotSigned() throws Exception {
+        // Arrange
+        CybersourceConcurrencyLimiter limiter = mock(CybersourceConcurrencyLimiter.class);
+        when(limiter.limit(eq("get_instrument_identifier"), any()))
+                .thenReturn(Mono.error(new CallRejectedException("Limit reached")));
+        ReflectionTestUtils.setField(instrumentIdentifierService, "concurrencyLimiter", limiter);
+
+        // Act & Assert
+        assertThrows(CallRejectedException.class,
+                () -> instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID));
+        verifyNoInteractions(jwtTokenUtil);
+        verify(webClient, never()).get();
+    }
+
     @Test
     void testCreateInstrumentIdentifier_WithDifferentMerchantIds() throws Exception {
         // Test multiple merchant IDs
@@ -245,13 +276,13 @@ class InstrumentIdentifierServiceTest {
         when(webClient.post()).thenReturn(requestBodyUriSpec);
         when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
         when(requestBodySpec.header(anyString(), anyString())).thenReturn(requestBodySpec);
-        when(requestBodySpec.bodyValue(anyString())).thenReturn(requestHeadersSpec);
+        when(requestBodySpec.bodyValue(any(InstrumentIdentifierRequest.class))).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.just(API_RESPONSE));
 
         // Act
-        String result1 = instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, merchantId1);
-        String result2 = instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, merchantId2);
+        InstrumentIdentifierResponse result1 = instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, merchantId1);
+        InstrumentIdentifierResponse result2 = instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, merchantId2);
 
         // Assert
         assertEquals(API_RESPONSE, result1);
@@ -271,19 +302,209 @@ class InstrumentIdentifierServiceTest {
         when(webClient.post()).thenReturn(requestBodyUriSpec);
         when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
         when(requestBodySpec.header(anyString(), anyString())).thenReturn(requestBodySpec);
-        when(requestBodySpec.bodyValue(anyString())).thenReturn(requestHeadersSpec);
+        when(requestBodySpec.bodyValue(any(InstrumentIdentifierRequest.class))).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.just(API_RESPONSE));
 
         // Act
         instrumentIdentifierService.createInstrumentIdentifier(longCardNumber, MERCHANT_ID);
 
         // Assert
         // Verify that the card number is properly included in the JSON payload
-        verify(requestBodySpec).bodyValue(argThat(payload -> 
-            payload.toString().contains(longCardNumber) && 
-            payload.toString().contains("\"card\"") &&
-            payload.toString().contains("\"number\"")
-        ));
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(requestBodySpec).bodyValue(payload.capture());
+        assertEquals("{\"card\":{\"number\":\"" + longCardNumber + "\"}}",
+                new ObjectMapper().writeValueAsString(payload.getValue()));
+        assertFalse(payload.getValue().toString().contains(longCardNumber));
+    }
+
+    @Test
+    void testCreateInstrumentIdentifierReactive_Success() throws Exception {
+        // Arrange
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+
+        when(webClient.post()).thenReturn(requestBodyUriSpec);
+        when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
+        when(requestBodySpec.header(anyString(), anyString())).thenReturn(requestBodySpec);
+        when(requestBodySpec.bodyValue(any(InstrumentIdentifierRequest.class))).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.just(API_RESPONSE));
+
+        // Act
+        Mono<InstrumentIdentifierResponse> result = instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID);
+
+        // Assert: nothing happens until subscription
+        verifyNoInteractions(jwtTokenUtil);
+        assertEquals(API_RESPONSE, result.block());
+        verify(jwtTokenUtil).generateJwt(MERCHANT_ID, API_KEY, SECRET_KEY, "/pts/v2/instrumentidentifiers", "POST");
+    }
+
+    @Test
+    void testCreateInstrumentIdentifierReactive_CybersourceApiException() throws Exception {
+        // Arrange
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+
+        when(webClient.post()).thenReturn(requestBodyUriSpec);
+        when(requestBodyUriSpec.uri(anyString())).thenReturn(requestBodySpec);
+        when(requestBodySpec.header(anyString(), anyString())).thenReturn(requestBodySpec);
+        when(requestBodySpec.bodyValue(any(InstrumentIdentifierRequest.class))).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class)).thenReturn(Mono.error(WebClientResponseException.create(
+                400, "Bad Request", null, "Invalid card number".getBytes(), null)));
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID).block()));
+
+        CybersourceApiException exception = assertInstanceOf(CybersourceApiException.class, error);
+        assertEquals(400, exception.getStatusCode());
+        assertTrue(exception.getMessage().contains("Failed to create instrument identifier"));
+    }
+
+    @Test
+    void testGetInstrumentIdentifierReactive_NetworkException() throws Exception {
+        // Arrange
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+
+        when(webClient.get()).thenReturn(mock(WebClient.RequestHeadersUriSpec.class));
+        WebClient.RequestHeadersUriSpec requestHeadersUriSpec = webClient.get();
+        when(requestHeadersUriSpec.uri(anyString())).thenReturn(mock(WebClient.RequestHeadersSpec.class));
+        WebClient.RequestHeadersSpec requestHeadersSpecMock = requestHeadersUriSpec.uri(anyString());
+        when(requestHeadersSpecMock.header(anyString(), anyString())).thenReturn(requestHeadersSpecMock);
+        when(requestHeadersSpecMock.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(InstrumentIdentifierResponse.class))
+                .thenReturn(Mono.error(new WebClientException("Connection timeout") {}));
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> instrumentIdentifierService.getInstrumentIdentifierReactive(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID).block()));
+
+        assertInstanceOf(NetworkException.class, error);
+    }
+
+    @Test
+    void testGetInstrumentIdentifier_ServesFreshResponseFromCache() throws Exception {
+        // Arrange
+        enableCache();
+        WebClient.RequestHeadersSpec requestHeadersSpecMock = stubGet();
+        when(responseSpec.toEntity(InstrumentIdentifierResponse.class)).thenReturn(Mono.just(ResponseEntity.ok().eTag("v1").body(API_RESPONSE)));
+
+        // Act
+        InstrumentIdentifierResponse first = instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+        InstrumentIdentifierResponse second = instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert
+        assertEquals(API_RESPONSE, first);
+        assertEquals(API_RESPONSE, second);
+        verify(webClient, times(1)).get();
+        verify(requestHeadersSpecMock, never()).header(eq(HttpHeaders.IF_NONE_MATCH), anyString());
+    }
+
+    @Test
+    void testGetInstrumentIdentifier_RevalidatesStaleResponseWithEtag() throws Exception {
+        // Arrange
+        AtomicLong nanos = enableCache();
+        WebClient.RequestHeadersSpec requestHeadersSpecMock = stubGet();
+        when(responseSpec.toEntity(InstrumentIdentifierResponse.class))
+                .thenReturn(Mono.just(ResponseEntity.ok().eTag("v1").body(API_RESPONSE)))
+                .thenReturn(Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag("v1").build()));
+        instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+        nanos.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        // Act
+        InstrumentIdentifierResponse result = instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert
+        assertEquals(API_RESPONSE, result);
+        verify(requestHeadersSpecMock).header(HttpHeaders.IF_NONE_MATCH, "\"v1\"");
+    }
+
+    @Test
+    void testGetInstrumentIdentifier_NotFoundInvalidatesCachedResponse() throws Exception {
+        // Arrange
+        AtomicLong nanos = enableCache();
+        stubGet();
+        when(responseSpec.toEntity(InstrumentIdentifierResponse.class))
+                .thenReturn(Mono.just(ResponseEntity.ok().eTag("v1").body(API_RESPONSE)))
+                .thenReturn(Mono.error(WebClientResponseException.create(404, "Not Found", null, null, null)));
+        instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+        nanos.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        // Act
+        CybersourceApiException exception = assertThrows(CybersourceApiException.class,
+                () -> instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID));
+
+        // Assert
+        assertEquals(404, exception.getStatusCode());
+        InstrumentIdentifierCache cache = (InstrumentIdentifierCache)
+                ReflectionTestUtils.getField(instrumentIdentifierService, "instrumentIdentifierCache");
+        assertNull(cache.get(new InstrumentIdentifierCache.CacheKey(MERCHANT_ID, INSTRUMENT_IDENTIFIER_TOKEN_ID)));
+    }
+
+    @Test
+    void testGetInstrumentIdentifier_OptOutBypassesCache() throws Exception {
+        // Arrange
+        enableCache();
+        WebClient.RequestHeadersSpec requestHeadersSpecMock = stubGet();
+        when(responseSpec.toEntity(InstrumentIdentifierResponse.class))
+                .thenReturn(Mono.just(ResponseEntity.ok().eTag("v1").body(API_RESPONSE)))
+                .thenReturn(Mono.just(ResponseEntity.ok().eTag("v2").body(new InstrumentIdentifierResponse("updated", null, null, null))));
+        instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Act
+        InstrumentIdentifierResponse bypassed = instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID, false);
+        InstrumentIdentifierResponse cached = instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert: the bypassing call is unconditional and refreshes the cached response
+        assertEquals("updated", bypassed.id());
+        assertEquals(bypassed, cached);
+        verify(webClient, times(2)).get();
+        verify(requestHeadersSpecMock, never()).header(eq(HttpHeaders.IF_NONE_MATCH), anyString());
+    }
+
+    @Test
+    void testGetInstrumentIdentifier_DecodesResponseWithCodec() throws Exception {
+        // Arrange: a real WebClient whose exchange returns a full Cybersource body
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+        String body = "{\"_links\":{\"self\":{\"href\":\"/pts/v2/instrumentidentifiers/" + INSTRUMENT_IDENTIFIER_TOKEN_ID + "\"}},"
+                + "\"id\":\"" + INSTRUMENT_IDENTIFIER_TOKEN_ID + "\",\"object\":\"instrumentIdentifier\",\"state\":\"ACTIVE\","
+                + "\"card\":{\"number\":\"411111XXXXXX1111\"},\"metadata\":{\"creator\":\"merchant\"}}";
+        ReflectionTestUtils.setField(instrumentIdentifierService, "webClient", WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(body)
+                        .build()))
+                .build());
+
+        // Act
+        InstrumentIdentifierResponse result =
+                instrumentIdentifierService.getInstrumentIdentifier(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert: unknown fields are skipped
+        assertEquals(new InstrumentIdentifierResponse(INSTRUMENT_IDENTIFIER_TOKEN_ID, "instrumentIdentifier", "ACTIVE",
+                new InstrumentIdentifierResponse.Card("411111XXXXXX1111", null, null)), result);
+    }
+
+    private AtomicLong enableCache() {
+        AtomicLong nanos = new AtomicLong();
+        ReflectionTestUtils.setField(instrumentIdentifierService, "instrumentIdentifierCache",
+                new InstrumentIdentifierCache(new SimpleMeterRegistry(), 100, Duration.ofSeconds(60), Duration.ofHours(1), nanos::get));
+        return nanos;
+    }
+
+    private WebClient.RequestHeadersSpec stubGet() throws Exception {
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+        WebClient.RequestHeadersUriSpec requestHeadersUriSpec = mock(WebClient.RequestHeadersUriSpec.class);
+        WebClient.RequestHeadersSpec requestHeadersSpecMock = mock(WebClient.RequestHeadersSpec.class);
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpecMock);
+        when(requestHeadersSpecMock.header(anyString(), anyString())).thenReturn(requestHeadersSpecMock);
+        when(requestHeadersSpecMock.retrieve()).thenReturn(responseSpec);
+        return requestHeadersSpecMock;
     }
-}
\ No newline at end of file
+}
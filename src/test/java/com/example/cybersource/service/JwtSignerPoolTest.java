@@ -0,0 +1,115 @@
+package com.example.cybersource.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtSignerPoolTest {
+
+    private static KeyPair keyPair;
+
+    private SimpleMeterRegistry meterRegistry;
+    private JwtSignerPool jwtSignerPool;
+
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        jwtSignerPool = new JwtSignerPool(meterRegistry, 2);
+    }
+
+    @Test
+    void testSignerFor_ProducesVerifiableRs256Signature() {
+        // Arrange
+        Algorithm signer = jwtSignerPool.signerFor("merchant-1", "kid-1", (RSAPrivateKey) keyPair.getPrivate());
+
+        // Act
+        String token = JWT.create().withKeyId("kid-1").withIssuer("merchant-1").sign(signer);
+
+        // Assert
+        DecodedJWT decoded = JWT.require(Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), null))
+                .build()
+                .verify(token);
+        assertEquals("RS256", decoded.getAlgorithm());
+        assertEquals("merchant-1", decoded.getIssuer());
+    }
+
+    @Test
+    void testSignerFor_ReusesSignerForSameMerchantAndKid() {
+        RSAPrivateKey privateKey = (RSAPrivateKey) keyPair.getPrivate();
+
+        assertSame(jwtSignerPool.signerFor("merchant-1", "kid-1", privateKey),
+                jwtSignerPool.signerFor("merchant-1", "kid-1", privateKey));
+        assertNotSame(jwtSignerPool.signerFor("merchant-1", "kid-1", privateKey),
+                jwtSignerPool.signerFor("merchant-2", "kid-1", privateKey));
+        assertEquals(2.0, meterRegistry.get("cybersource.jwt.signers").gauge().value());
+    }
+
+    @Test
+    void testSignerFor_RebuildsSignerWhenKeyRotates() throws Exception {
+        // Arrange
+        Algorithm original = jwtSignerPool.signerFor("merchant-1", "kid-1", (RSAPrivateKey) keyPair.getPrivate());
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair rotated = generator.generateKeyPair();
+
+        // Act
+        Algorithm replacement = jwtSignerPool.signerFor("merchant-1", "kid-1", (RSAPrivateKey) rotated.getPrivate());
+        String token = JWT.create().withIssuer("merchant-1").sign(replacement);
+
+        // Assert
+        assertNotSame(original, replacement);
+        assertDoesNotThrow(() -> JWT.require(Algorithm.RSA256((RSAPublicKey) rotated.getPublic(), null))
+                .build()
+                .verify(token));
+    }
+
+    @Test
+    void testSign_RecordsLatencyForEverySignature() {
+        // Arrange
+        Algorithm signer = jwtSignerPool.signerFor("merchant-1", "kid-1", (RSAPrivateKey) keyPair.getPrivate());
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            JWT.create().withClaim("n", i).sign(signer);
+        }
+
+        // Assert
+        assertEquals(5, meterRegistry.get("cybersource.jwt.sign").timer().count());
+    }
+
+    @Test
+    void testVerify_AcceptsOwnTokensAndRejectsOthers() throws Exception {
+        // Arrange
+        Algorithm signer = jwtSignerPool.signerFor("merchant-1", "kid-1", (RSAPrivateKey) keyPair.getPrivate());
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        String foreign = JWT.create().withIssuer("merchant-1")
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) generator.generateKeyPair().getPrivate()));
+
+        // Act
+        String own = JWT.create().withIssuer("merchant-1").sign(signer);
+
+        // Assert
+        assertDoesNotThrow(() -> JWT.require(signer).build().verify(own));
+        assertThrows(SignatureVerificationException.class, () -> JWT.require(signer).build().verify(foreign));
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.cybersource.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtTokenCacheTest {
+
+    private static final JwtTokenCache.CacheKey KEY = new JwtTokenCache.CacheKey(
+            "merchant-1", "api-key", "kid-1", "/pts/v2/instrumentidentifiers/abc", "GET", 1);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private JwtTokenCache jwtTokenCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        jwtTokenCache = new JwtTokenCache(meterRegistry, 100, Duration.ofSeconds(60), nanos::get);
+    }
+
+    @Test
+    void testIsReusable_OnlyForGet() {
+        assertTrue(jwtTokenCache.isReusable("GET"));
+        assertFalse(jwtTokenCache.isReusable("POST"));
+        assertFalse(jwtTokenCache.isReusable("PUT"));
+    }
+
+    @Test
+    void testGet_ReturnsTokenUntilSafetyMarginBeforeExpiry() {
+        // Arrange
+        jwtTokenCache.put(KEY, "jwt-1");
+
+        // Act & Assert: 5 minute lifetime minus 60s margin leaves a 4 minute reuse window
+        nanos.addAndGet(Duration.ofMinutes(4).minusSeconds(1).toNanos());
+        assertEquals("jwt-1", jwtTokenCache.get(KEY));
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertNull(jwtTokenCache.get(KEY));
+    }
+
+    @Test
+    void testGet_RecordsHitsAndMisses() {
+        jwtTokenCache.get(KEY);
+        jwtTokenCache.put(KEY, "jwt-1");
+        jwtTokenCache.get(KEY);
+        jwtTokenCache.get(KEY);
+
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "cybersource.jwt").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "cybersource.jwt").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testIsReusable_DisabledWhenMarginCoversLifetime() {
+        JwtTokenCache disabled = new JwtTokenCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(5), nanos::get);
+
+        assertFalse(disabled.isReusable("GET"));
+    }
+
+    @Test
+    void testIsReusable_DisabledWhenMaxSizeIsZero() {
+        JwtTokenCache disabled = new JwtTokenCache(new SimpleMeterRegistry(), 0, Duration.ofSeconds(60), nanos::get);
+
+        assertFalse(disabled.isReusable("GET"));
+    }
+}
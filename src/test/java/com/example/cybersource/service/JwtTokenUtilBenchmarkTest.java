@@ -0,0 +1,99 @@
+package com.example.cybersource.service;
+
+import com.auth0.jwt.JWT;
+import com.example.cybersource.util.KeyLoader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JMH cost of {@link JwtTokenUtil#generateJwt}: a POST, which is signed on every
+ * call, and a repeated GET, which is served from the token cache. The key loader
+ * returns an in-memory key so only JWT building and signing are measured. Results
+ * are written to {@code target/jmh-jwt.json}.
+ * <p>
+ * Run with {@code mvn test -Dtest=JwtTokenUtilBenchmarkTest -Dbenchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtTokenUtilBenchmarkTest {
+
+    private static final String MERCHANT_ID = "benchmark-merchant";
+    private static final String API_KEY = "benchmark-api-key";
+    private static final String KID = "benchmark-kid";
+    private static final String PATH = "/pts/v2/instrumentidentifiers/7010000000016241111/networkTokens";
+
+    private JwtTokenUtil jwtTokenUtil;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        RSAPrivateKey privateKey = (RSAPrivateKey) generator.generateKeyPair().getPrivate();
+
+        jwtTokenUtil = new JwtTokenUtil();
+        ReflectionTestUtils.setField(jwtTokenUtil, "keyLoader", new KeyLoader() {
+            @Override
+            public RSAPrivateKey loadPrivateKey(Path pemPath) {
+                return privateKey;
+            }
+        });
+        ReflectionTestUtils.setField(jwtTokenUtil, "jwtSignerPool", new JwtSignerPool(new SimpleMeterRegistry(), 0));
+        ReflectionTestUtils.setField(jwtTokenUtil, "jwtTokenCache",
+                new JwtTokenCache(new SimpleMeterRegistry(), 10_000, Duration.ofSeconds(60)));
+    }
+
+    @Benchmark
+    public String signPost() throws Exception {
+        return jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, "/pts/v2/instrumentidentifiers", "POST");
+    }
+
+    @Benchmark
+    public String cachedGet() throws Exception {
+        return jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH, "GET");
+    }
+
+    @Test
+    void benchmarkGenerateJwt() throws Exception {
+        setUp();
+        assertEquals(KID, JWT.decode(signPost()).getKeyId());
+        assertSame(cachedGet(), cachedGet());
+
+        new Runner(new OptionsBuilder()
+                .include(getClass().getName() + "\\.")
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-jwt.json")
+                .build())
+                .run();
+    }
+}
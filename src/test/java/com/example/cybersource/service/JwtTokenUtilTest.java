@@ -0,0 +1,125 @@
+package com.example.cybersource.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.cybersource.util.KeyLoader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class JwtTokenUtilTest {
+
+    private static RSAPrivateKey privateKey;
+
+    @Mock
+    private KeyLoader keyLoader;
+
+    @Spy
+    private JwtSignerPool jwtSignerPool = new JwtSignerPool(new SimpleMeterRegistry(), 2);
+
+    @Spy
+    private JwtTokenCache jwtTokenCache = new JwtTokenCache(new SimpleMeterRegistry(), 100, Duration.ofSeconds(60));
+
+    @InjectMocks
+    private JwtTokenUtil jwtTokenUtil;
+
+    private static final String MERCHANT_ID = "test-merchant-123";
+    private static final String API_KEY = "test-api-key";
+    private static final String KID = "test-kid";
+    private static final String PATH = "/pts/v2/instrumentidentifiers/test-instrument-id";
+
+    @BeforeAll
+    static void generateKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        privateKey = (RSAPrivateKey) generator.generateKeyPair().getPrivate();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lenient().when(keyLoader.loadPrivateKey(any(Path.class))).thenReturn(privateKey);
+    }
+
+    @Test
+    void testGenerateJwt_Claims() throws Exception {
+        // Act
+        DecodedJWT jwt = JWT.decode(jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH, "GET"));
+
+        // Assert
+        assertEquals(KID, jwt.getKeyId());
+        assertEquals(MERCHANT_ID, jwt.getIssuer());
+        assertEquals(API_KEY, jwt.getSubject());
+        assertEquals(PATH, jwt.getClaim("resource").asString());
+        assertEquals("GET", jwt.getClaim("method").asString());
+        assertEquals(Duration.ofMinutes(5).toMillis(),
+                jwt.getExpiresAt().getTime() - jwt.getIssuedAt().getTime());
+    }
+
+    @Test
+    void testGenerateJwt_ReusesTokenForRepeatedGet() throws Exception {
+        // Act
+        String first = jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH, "GET");
+        String second = jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH, "GET");
+
+        // Assert
+        assertEquals(first, second);
+        verify(jwtSignerPool, times(1)).signerFor(anyString(), anyString(), any(RSAPrivateKey.class));
+    }
+
+    @Test
+    void testGenerateJwt_ReloadedKeySignsFreshToken() throws Exception {
+        // Arrange
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        RSAPrivateKey rotatedKey = (RSAPrivateKey) generator.generateKeyPair().getPrivate();
+        String first = jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH, "GET");
+
+        // Act: the key file is reloaded under the same kid
+        when(keyLoader.loadPrivateKey(any(Path.class))).thenReturn(rotatedKey);
+        String second = jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH, "GET");
+
+        // Assert
+        assertNotEquals(first, second);
+        verify(jwtSignerPool).signerFor(MERCHANT_ID, KID, rotatedKey);
+    }
+
+    @Test
+    void testGenerateJwt_DoesNotShareTokensAcrossResources() throws Exception {
+        // Act
+        String first = jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH, "GET");
+        String second = jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, PATH + "/networkTokens", "GET");
+        String third = jwtTokenUtil.generateJwt("other-merchant", API_KEY, KID, PATH, "GET");
+
+        // Assert
+        assertNotEquals(first, second);
+        assertNotEquals(first, third);
+    }
+
+    @Test
+    void testGenerateJwt_NeverReusesPostTokens() throws Exception {
+        // Act
+        jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, "/pts/v2/instrumentidentifiers", "POST");
+        jwtTokenUtil.generateJwt(MERCHANT_ID, API_KEY, KID, "/pts/v2/instrumentidentifiers", "POST");
+
+        // Assert
+        verify(keyLoader, times(2)).loadPrivateKey(any(Path.class));
+        verify(jwtTokenCache, never()).put(any(), any());
+    }
+}
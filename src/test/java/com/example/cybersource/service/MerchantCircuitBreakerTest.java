@@ -0,0 +1,221 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.exception.CallRejectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerchantCircuitBreakerTest {
+
+    private static final String MERCHANT_ID = "merchant-1";
+    private static final String OTHER_MERCHANT_ID = "merchant-2";
+    private static final String ENDPOINT = "get_payment_credentials";
+
+    private final AtomicLong clock = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private MerchantCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        CybersourceConfig cybersourceConfig = new CybersourceConfig();
+        CybersourceConfig.CircuitBreaker config = cybersourceConfig.getCircuitBreaker();
+        config.setSlidingWindowSize(4);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(50);
+        config.setOpenDuration(Duration.ofSeconds(10));
+        config.setHalfOpenProbes(2);
+        config.setMaxConcurrentCalls(2);
+        meterRegistry = new SimpleMeterRegistry();
+        circuitBreaker = new MerchantCircuitBreaker(cybersourceConfig, meterRegistry, clock::get);
+    }
+
+    @Test
+    void testExecute_OpensOnFailureRateAndRejectsFast() {
+        // Arrange
+        succeed(MERCHANT_ID);
+        succeed(MERCHANT_ID);
+        fail(MERCHANT_ID, 503);
+        assertEquals(MerchantCircuitBreaker.State.CLOSED, circuitBreaker.state(MERCHANT_ID));
+
+        // Act
+        fail(MERCHANT_ID, 503);
+        boolean[] subscribed = new boolean[1];
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class, () -> circuitBreaker.execute(
+                MERCHANT_ID, ENDPOINT, Mono.fromCallable(() -> subscribed[0] = true)).block()));
+
+        // Assert
+        assertEquals(MerchantCircuitBreaker.State.OPEN, circuitBreaker.state(MERCHANT_ID));
+        assertInstanceOf(CallRejectedException.class, error);
+        assertFalse(subscribed[0]);
+        assertEquals(1, meterRegistry.get(MerchantCircuitBreaker.REJECTIONS).tag("reason", "open").counter().count());
+        assertEquals("ok", circuitBreaker.execute(OTHER_MERCHANT_ID, ENDPOINT, Mono.just("ok")).block());
+    }
+
+    @Test
+    void testExecute_ClientErrorsDoNotOpenTheCircuit() {
+        // Act
+        for (int i = 0; i < 4; i++) {
+            fail(MERCHANT_ID, 400);
+        }
+
+        // Assert
+        assertEquals(MerchantCircuitBreaker.State.CLOSED, circuitBreaker.state(MERCHANT_ID));
+    }
+
+    @Test
+    void testExecute_AuthenticationFailuresOpenTheCircuit() {
+        // Act
+        fail(MERCHANT_ID, 401);
+        fail(MERCHANT_ID, 403);
+        fail(MERCHANT_ID, 401);
+        fail(MERCHANT_ID, 403);
+
+        // Assert
+        assertEquals(MerchantCircuitBreaker.State.OPEN, circuitBreaker.state(MERCHANT_ID));
+    }
+
+    @Test
+    void testExecute_SigningFailuresCountAgainstTheMerchant() {
+        // Arrange
+        succeed(MERCHANT_ID);
+        succeed(MERCHANT_ID);
+
+        // Act
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class, () -> circuitBreaker.execute(MERCHANT_ID, ENDPOINT,
+                    Mono.fromCallable(() -> {
+                        throw new IllegalStateException("Failed to sign JWT");
+                    })).block());
+        }
+
+        // Assert
+        assertEquals(MerchantCircuitBreaker.State.OPEN, circuitBreaker.state(MERCHANT_ID));
+        assertEquals(MerchantCircuitBreaker.State.CLOSED, circuitBreaker.state(OTHER_MERCHANT_ID));
+    }
+
+    @Test
+    void testExecute_HalfOpenProbesCloseTheCircuit() {
+        // Arrange
+        openCircuit();
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        // Act
+        succeed(MERCHANT_ID);
+        assertEquals(MerchantCircuitBreaker.State.HALF_OPEN, circuitBreaker.state(MERCHANT_ID));
+        succeed(MERCHANT_ID);
+
+        // Assert
+        assertEquals(MerchantCircuitBreaker.State.CLOSED, circuitBreaker.state(MERCHANT_ID));
+    }
+
+    @Test
+    void testExecute_FailedProbeReopensTheCircuit() {
+        // Arrange
+        openCircuit();
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        // Act
+        fail(MERCHANT_ID, 503);
+
+        // Assert
+        assertEquals(MerchantCircuitBreaker.State.OPEN, circuitBreaker.state(MERCHANT_ID));
+        assertThrows(RuntimeException.class, () -> circuitBreaker.execute(MERCHANT_ID, ENDPOINT, Mono.just("ok")).block());
+    }
+
+    @Test
+    void testExecute_HalfOpenAllowsOnlyTheConfiguredProbes() {
+        // Arrange
+        openCircuit();
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        Disposable firstProbe = circuitBreaker.execute(MERCHANT_ID, ENDPOINT, first.asMono()).subscribe();
+        Disposable secondProbe = circuitBreaker.execute(MERCHANT_ID, ENDPOINT, second.asMono()).subscribe();
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> circuitBreaker.execute(MERCHANT_ID, ENDPOINT, Mono.just("ok")).block());
+        firstProbe.dispose();
+        assertEquals("ok", circuitBreaker.execute(MERCHANT_ID, ENDPOINT, Mono.just("ok")).block());
+        secondProbe.dispose();
+    }
+
+    @Test
+    void testExecute_BulkheadRejectsOverTheMerchantLimit() {
+        // Arrange
+        Sinks.One<String> pending = Sinks.one();
+        Disposable first = circuitBreaker.execute(MERCHANT_ID, ENDPOINT, pending.asMono()).subscribe();
+        Disposable second = circuitBreaker.execute(MERCHANT_ID, ENDPOINT, pending.asMono()).subscribe();
+
+        // Act
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> circuitBreaker.execute(MERCHANT_ID, ENDPOINT, Mono.just("ok")).block()));
+
+        // Assert
+        assertInstanceOf(CallRejectedException.class, error);
+        assertEquals(1, meterRegistry.get(MerchantCircuitBreaker.REJECTIONS).tag("reason", "bulkhead").counter().count());
+        assertEquals("ok", circuitBreaker.execute(OTHER_MERCHANT_ID, ENDPOINT, Mono.just("ok")).block());
+        assertEquals(MerchantCircuitBreaker.State.CLOSED, circuitBreaker.state(MERCHANT_ID));
+
+        first.dispose();
+        second.dispose();
+        assertEquals("ok", circuitBreaker.execute(MERCHANT_ID, ENDPOINT, Mono.just("ok")).block());
+    }
+
+    @Test
+    void testExecute_DropsCircuitsOfIdleMerchants() {
+        // Arrange
+        succeed(MERCHANT_ID);
+        succeed(OTHER_MERCHANT_ID);
+
+        // Act
+        clock.addAndGet(MerchantCircuitBreaker.IDLE_EXPIRY.toNanos());
+        succeed(OTHER_MERCHANT_ID);
+        clock.addAndGet(1);
+
+        // Assert
+        assertEquals(1, circuitBreaker.trackedMerchants());
+        assertEquals(MerchantCircuitBreaker.State.CLOSED, circuitBreaker.state(MERCHANT_ID));
+    }
+
+    @Test
+    void testExecute_DisabledLetsEveryCallThrough() {
+        // Arrange
+        MerchantCircuitBreaker disabled = MerchantCircuitBreaker.disabled();
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            assertThrows(WebClientResponseException.class, () -> disabled.execute(MERCHANT_ID, ENDPOINT,
+                    Mono.error(WebClientResponseException.create(503, "Service Unavailable", null, null, null))).block());
+        }
+
+        // Assert
+        assertEquals("ok", disabled.execute(MERCHANT_ID, ENDPOINT, Mono.just("ok")).block());
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 4; i++) {
+            fail(MERCHANT_ID, 503);
+        }
+        assertEquals(MerchantCircuitBreaker.State.OPEN, circuitBreaker.state(MERCHANT_ID));
+    }
+
+    private void succeed(String merchantId) {
+        assertEquals("ok", circuitBreaker.execute(merchantId, ENDPOINT, Mono.just("ok")).block());
+    }
+
+    private void fail(String merchantId, int status) {
+        assertThrows(WebClientResponseException.class, () -> circuitBreaker.execute(merchantId, ENDPOINT,
+                Mono.error(WebClientResponseException.create(status, "Error", null, null, null))).block());
+    }
+}
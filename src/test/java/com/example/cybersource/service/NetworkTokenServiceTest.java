@@ -1,12 +1,28 @@
 package com.example.cybersource.service;
 
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
+import com.example.cybersource.dto.PaymentCredentialsResponse;
 import com.example.cybersource.exception.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -27,8 +43,10 @@ class NetworkTokenServiceTest {
     private static final String CARD_NUMBER = "4111111111111111";
     private static final String MERCHANT_ID = "test-merchant-123";
     private static final String INSTRUMENT_IDENTIFIER_ID = "test-instrument-id";
-    private static final String INSTRUMENT_RESPONSE = "{\"id\":\"" + INSTRUMENT_IDENTIFIER_ID + "\"}";
-    private static final String CREDENTIALS_RESPONSE = "{\"networkToken\":{\"number\":\"1234567890123456\",\"cryptogram\":\"test-cryptogram\"}}";
+    private static final InstrumentIdentifierResponse INSTRUMENT_RESPONSE =
+            new InstrumentIdentifierResponse(INSTRUMENT_IDENTIFIER_ID, null, null, null);
+    private static final PaymentCredentialsResponse CREDENTIALS_RESPONSE = new PaymentCredentialsResponse(
+            new PaymentCredentialsResponse.NetworkToken("1234567890123456", null, null, "test-cryptogram"));
 
     @Test
     void testGenerateNetworkTokenAndCryptogram_Success() throws Exception {
@@ -141,7 +159,7 @@ class NetworkTokenServiceTest {
     void testGenerateNetworkTokenAndCryptogram_InvalidInstrumentResponse() throws Exception {
         // Arrange
         when(instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID))
-                .thenReturn("{\"invalid\":\"response\"}");
+                .thenReturn(new InstrumentIdentifierResponse(null, null, null, null));
 
         // Act & Assert
         CybersourceException exception = assertThrows(CybersourceException.class,
@@ -158,7 +176,7 @@ class NetworkTokenServiceTest {
         when(instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID))
                 .thenReturn(INSTRUMENT_RESPONSE);
         when(paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
-                .thenReturn("{\"invalid\":\"response\"}");
+                .thenReturn(new PaymentCredentialsResponse(null));
 
         // Act & Assert
         CybersourceException exception = assertThrows(CybersourceException.class,
@@ -206,6 +224,109 @@ class NetworkTokenServiceTest {
         assertEquals(elapsedMs, result.elapsedMilliseconds());
     }
     
+    @Test
+    void testGenerateNetworkTokenAndCryptogram_RecordsStageBreakdown() throws Exception {
+        // Arrange
+        StageLatencyWindow window = new StageLatencyWindow(8);
+        ReflectionTestUtils.setField(networkTokenService, "stageLatencyWindow", window);
+        when(instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID))
+                .thenAnswer(invocation -> {
+                    StageTimings.record(StageTimings.Stage.CREATE_INSTRUMENT_IDENTIFIER, 2_000_000);
+                    return INSTRUMENT_RESPONSE;
+                });
+        when(paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenAnswer(invocation -> {
+                    StageTimings.record(StageTimings.Stage.PAYMENT_CREDENTIALS, 3_000_000);
+                    StageTimings.record(StageTimings.Stage.PERSISTENCE, 1_000_000);
+                    return CREDENTIALS_RESPONSE;
+                });
+
+        // Act
+        NetworkTokenService.NetworkTokenResult result =
+                networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID);
+
+        // Assert
+        assertNotNull(result.stages());
+        assertEquals(2_000_000, result.stages().createInstrumentIdentifierNanos());
+        assertEquals(3_000_000, result.stages().paymentCredentialsNanos());
+        assertEquals(1_000_000, result.stages().persistenceNanos());
+        assertEquals(0, result.stages().jwtSignNanos());
+        assertNull(result.withoutStages().stages());
+        assertEquals(result.elapsedMilliseconds(), result.withoutStages().elapsedMilliseconds());
+        assertEquals(1, window.summary().samples());
+        assertNull(StageTimings.current(), "Timings must not leak onto the calling thread");
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_RecordsStageBreakdownFromContext() {
+        // Arrange
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(Mono.deferContextual(context -> {
+                    StageTimings.from(context).add(StageTimings.Stage.CREATE_INSTRUMENT_IDENTIFIER, 2_000_000);
+                    return Mono.just(INSTRUMENT_RESPONSE);
+                }));
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.deferContextual(context -> {
+                    StageTimings.from(context).add(StageTimings.Stage.JSON_PARSE, 500_000);
+                    return Mono.just(CREDENTIALS_RESPONSE);
+                }));
+
+        // Act
+        NetworkTokenService.NetworkTokenResult result =
+                networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+
+        // Assert
+        assertNotNull(result);
+        assertEquals(2_000_000, result.stages().createInstrumentIdentifierNanos());
+        assertEquals(500_000, result.stages().jsonParseNanos());
+        assertTrue(result.stages().totalNanos() >= 0);
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogram_ObservesSuccessAndFailure() throws Exception {
+        // Arrange
+        List<Observation.Context> stopped = recordObservations();
+        when(instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(INSTRUMENT_RESPONSE)
+                .thenThrow(new NetworkException("Network error"));
+        when(paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(CREDENTIALS_RESPONSE);
+
+        // Act
+        networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID);
+        assertThrows(NetworkException.class,
+                () -> networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID));
+
+        // Assert
+        assertEquals(2, stopped.size());
+        assertEquals(NetworkTokenService.GENERATE_OBSERVATION, stopped.get(0).getName());
+        assertEquals("blocking", stopped.get(0).getLowCardinalityKeyValue("mode").getValue());
+        assertEquals(MERCHANT_ID, stopped.get(0).getHighCardinalityKeyValue("merchant.id").getValue());
+        assertNull(stopped.get(0).getError());
+        assertInstanceOf(NetworkException.class, stopped.get(1).getError());
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_PassesObservationToUpstreamCalls() {
+        // Arrange
+        List<Observation.Context> stopped = recordObservations();
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(Mono.deferContextual(context -> {
+                    assertTrue(context.hasKey(ObservationThreadLocalAccessor.KEY));
+                    return Mono.just(INSTRUMENT_RESPONSE);
+                }));
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.just(CREDENTIALS_RESPONSE));
+
+        // Act
+        networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+
+        // Assert
+        assertEquals(1, stopped.size());
+        assertEquals("reactive", stopped.get(0).getLowCardinalityKeyValue("mode").getValue());
+        assertNull(stopped.get(0).getError());
+    }
+
     @Test
     void testGenerateNetworkTokenAndCryptogram_WithDifferentMerchantIds() throws Exception {
         // Test multiple merchant IDs
@@ -242,4 +363,241 @@ class NetworkTokenServiceTest {
         verify(instrumentIdentifierService).createInstrumentIdentifier(CARD_NUMBER, merchantId2);
         verify(paymentCredentialsService).getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, merchantId2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_Success() {
+        // Arrange
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(Mono.just(INSTRUMENT_RESPONSE));
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.just(CREDENTIALS_RESPONSE));
+
+        // Act
+        NetworkTokenService.NetworkTokenResult result =
+                networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+
+        // Assert
+        assertNotNull(result);
+        assertEquals("1234567890123456", result.networkToken());
+        assertEquals("test-cryptogram", result.cryptogram());
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_PropagatesNetworkException() {
+        // Arrange
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(Mono.just(INSTRUMENT_RESPONSE));
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.error(new NetworkException("Network error")));
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block()));
+
+        assertInstanceOf(NetworkException.class, error);
+        assertEquals("Network error", error.getMessage());
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_InvalidInstrumentResponse() {
+        // Arrange
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(Mono.just(new InstrumentIdentifierResponse(null, null, null, null)));
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block()));
+
+        assertInstanceOf(CybersourceException.class, error);
+        assertTrue(error.getMessage().contains("Unexpected error while generating network token and cryptogram"));
+        verify(paymentCredentialsService, never()).getPaymentCredentialsReactive(anyString(), anyString());
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_EmptyInstrumentResponse() {
+        // Arrange
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(Mono.empty());
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block()));
+
+        assertInstanceOf(CybersourceException.class, error);
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogram_ReusesIndexedInstrumentIdentifier() throws Exception {
+        // Arrange
+        InstrumentIdentifierIndex index = enableIndex();
+        when(index.find(MERCHANT_ID, "fp")).thenReturn(Optional.of(INSTRUMENT_IDENTIFIER_ID));
+        when(paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(CREDENTIALS_RESPONSE);
+
+        // Act
+        NetworkTokenService.NetworkTokenResult result =
+                networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID);
+
+        // Assert
+        assertEquals("test-cryptogram", result.cryptogram());
+        verify(instrumentIdentifierService, never()).createInstrumentIdentifier(anyString(), anyString());
+        verify(index, never()).record(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogram_RecordsNewInstrumentIdentifier() throws Exception {
+        // Arrange
+        InstrumentIdentifierIndex index = enableIndex();
+        when(index.find(MERCHANT_ID, "fp")).thenReturn(Optional.empty());
+        when(instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(INSTRUMENT_RESPONSE);
+        when(paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(CREDENTIALS_RESPONSE);
+
+        // Act
+        networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID);
+
+        // Assert
+        verify(index).record(MERCHANT_ID, "fp", INSTRUMENT_IDENTIFIER_ID);
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogram_EvictsIndexedIdentifierOnNotFound() throws Exception {
+        // Arrange
+        InstrumentIdentifierIndex index = enableIndex();
+        when(index.find(MERCHANT_ID, "fp")).thenReturn(Optional.of(INSTRUMENT_IDENTIFIER_ID));
+        when(paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenThrow(new CybersourceApiException("Failed to get payment credentials", 404, "{}"));
+
+        // Act & Assert
+        assertThrows(CybersourceApiException.class,
+                () -> networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID));
+        verify(index).evict(MERCHANT_ID, "fp");
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_ReusesIndexedInstrumentIdentifier() {
+        // Arrange
+        InstrumentIdentifierIndex index = enableIndex();
+        when(index.findReactive(MERCHANT_ID, "fp")).thenReturn(Mono.just(INSTRUMENT_IDENTIFIER_ID));
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.just(CREDENTIALS_RESPONSE));
+
+        // Act
+        NetworkTokenService.NetworkTokenResult result =
+                networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+
+        // Assert
+        assertEquals("1234567890123456", result.networkToken());
+        verify(instrumentIdentifierService, never()).createInstrumentIdentifierReactive(anyString(), anyString());
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_RecordsNewInstrumentIdentifier() {
+        // Arrange
+        InstrumentIdentifierIndex index = enableIndex();
+        when(index.findReactive(MERCHANT_ID, "fp")).thenReturn(Mono.empty());
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(Mono.just(INSTRUMENT_RESPONSE));
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.just(CREDENTIALS_RESPONSE));
+
+        // Act
+        networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+
+        // Assert
+        verify(index).record(MERCHANT_ID, "fp", INSTRUMENT_IDENTIFIER_ID);
+    }
+
+    private InstrumentIdentifierIndex enableIndex() {
+        InstrumentIdentifierIndex index = mock(InstrumentIdentifierIndex.class);
+        when(index.fingerprint(CARD_NUMBER)).thenReturn("fp");
+        ReflectionTestUtils.setField(networkTokenService, "instrumentIdentifierIndex", index);
+        return index;
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_CoalescesInstrumentIdentifierButNotCredentials() {
+        // Arrange
+        ReflectionTestUtils.setField(networkTokenService, "singleFlight",
+                new SingleFlight(new SimpleMeterRegistry()));
+        Sinks.One<InstrumentIdentifierResponse> instrumentResponse = Sinks.one();
+        when(instrumentIdentifierService.createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(instrumentResponse.asMono());
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.just(CREDENTIALS_RESPONSE));
+
+        // Act
+        List<NetworkTokenService.NetworkTokenResult> results = new ArrayList<>();
+        networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).subscribe(results::add);
+        networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).subscribe(results::add);
+        instrumentResponse.tryEmitValue(INSTRUMENT_RESPONSE);
+
+        // Assert
+        assertEquals(2, results.size());
+        assertNotSame(results.get(0), results.get(1));
+        verify(instrumentIdentifierService, times(1)).createInstrumentIdentifierReactive(CARD_NUMBER, MERCHANT_ID);
+        verify(paymentCredentialsService, times(2)).getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID);
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogram_IssuesCredentialsPerCallWithSingleFlight() throws Exception {
+        // Arrange
+        ReflectionTestUtils.setField(networkTokenService, "singleFlight",
+                new SingleFlight(new SimpleMeterRegistry()));
+        when(instrumentIdentifierService.createInstrumentIdentifier(CARD_NUMBER, MERCHANT_ID))
+                .thenReturn(INSTRUMENT_RESPONSE);
+        when(paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(CREDENTIALS_RESPONSE);
+
+        // Act
+        networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID);
+        networkTokenService.generateNetworkTokenAndCryptogram(CARD_NUMBER, MERCHANT_ID);
+
+        // Assert
+        verify(paymentCredentialsService, times(2)).getPaymentCredentials(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID);
+    }
+
+    @Test
+    void testGenerateNetworkTokenAndCryptogramReactive_SingleFlightKeyIsKeyedPerProcess() {
+        // Arrange
+        SingleFlight singleFlight = mock(SingleFlight.class);
+        when(singleFlight.executeReactive(any(), any())).thenReturn(Mono.just(INSTRUMENT_RESPONSE));
+        when(paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_ID, MERCHANT_ID))
+                .thenReturn(Mono.just(CREDENTIALS_RESPONSE));
+        NetworkTokenService otherProcess = new NetworkTokenService(instrumentIdentifierService, paymentCredentialsService);
+        ReflectionTestUtils.setField(networkTokenService, "singleFlight", singleFlight);
+        ReflectionTestUtils.setField(otherProcess, "singleFlight", singleFlight);
+
+        // Act
+        networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+        networkTokenService.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+        otherProcess.generateNetworkTokenAndCryptogramReactive(CARD_NUMBER, MERCHANT_ID).block();
+
+        // Assert: identical calls share a key that neither holds the number nor is a plain digest of it
+        ArgumentCaptor<SingleFlight.Key> keys = ArgumentCaptor.forClass(SingleFlight.Key.class);
+        verify(singleFlight, times(3)).executeReactive(keys.capture(), any());
+        List<SingleFlight.Key> captured = keys.getAllValues();
+        assertEquals(captured.get(0), captured.get(1));
+        assertNotEquals(captured.get(0), captured.get(2));
+        assertFalse(captured.get(0).resource().contains(CARD_NUMBER));
+    }
+
+    private List<Observation.Context> recordObservations() {
+        List<Observation.Context> stopped = new ArrayList<>();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new ObservationHandler<Observation.Context>() {
+            @Override
+            public void onStop(Observation.Context context) {
+                stopped.add(context);
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        ReflectionTestUtils.setField(networkTokenService, "observationRegistry", observationRegistry);
+        return stopped;
+    }
+}
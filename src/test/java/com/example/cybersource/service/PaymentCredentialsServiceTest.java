@@ -1,9 +1,14 @@
 package com.example.cybersource.service;
 
 import com.example.cybersource.config.CybersourceConfig;
+import com.example.cybersource.dto.PaymentCredentialsResponse;
 import com.example.cybersource.entity.TokenStorage;
 import com.example.cybersource.exception.*;
+import com.example.cybersource.repository.ReactiveTokenStorageRepository;
+import com.example.cybersource.repository.TokenStorageCursor;
 import com.example.cybersource.repository.TokenStorageRepository;
+import com.example.cybersource.repository.TokenStorageWriteBehind;
+import com.example.cybersource.util.ResponseCompression;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,13 +16,21 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.Exceptions;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -47,16 +60,27 @@ class PaymentCredentialsServiceTest {
     @Mock
     private TokenStorageRepository tokenStorageRepository;
     
+    @Mock
+    private ReactiveTokenStorageRepository reactiveTokenStorageRepository;
+    
+    @Mock
+    private TokenStorageCache tokenStorageCache;
+    
     @Mock
     private MongoTemplate mongoTemplate;
 
     @InjectMocks
     private PaymentCredentialsService paymentCredentialsService;
 
+    private final CybersourceConfig.Persistence persistence = new CybersourceConfig.Persistence();
+
     private static final String INSTRUMENT_IDENTIFIER_TOKEN_ID = "test-instrument-id";
     private static final String MERCHANT_ID = "test-merchant-123";
     private static final String JWT_TOKEN = "test-jwt-token";
     private static final String API_RESPONSE = "{\"networkToken\":{\"number\":\"1234567890123456\",\"cryptogram\":\"test-cryptogram\"}}";
+    private static final byte[] API_RESPONSE_BYTES = API_RESPONSE.getBytes(StandardCharsets.UTF_8);
+    private static final PaymentCredentialsResponse CREDENTIALS = new PaymentCredentialsResponse(
+            new PaymentCredentialsResponse.NetworkToken("1234567890123456", null, null, "test-cryptogram"));
     private static final String BASE_URL = "https://api.cybersource.com";
     private static final String API_KEY = "test-api-key";
     private static final String SECRET_KEY = "test-secret-key";
@@ -67,6 +91,7 @@ class PaymentCredentialsServiceTest {
         lenient().when(cybersourceConfig.getBaseUrl()).thenReturn(BASE_URL);
         lenient().when(cybersourceConfig.getApiKey()).thenReturn(API_KEY);
         lenient().when(cybersourceConfig.getSecretKey()).thenReturn(SECRET_KEY);
+        lenient().when(cybersourceConfig.getPersistence()).thenReturn(persistence);
     }
 
     @Test
@@ -79,15 +104,15 @@ class PaymentCredentialsServiceTest {
         when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
         
         when(tokenStorageRepository.save(any(TokenStorage.class))).thenReturn(new TokenStorage());
 
         // Act
-        String result = paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+        PaymentCredentialsResponse result = paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
 
         // Assert
-        assertEquals(API_RESPONSE, result);
+        assertEquals(CREDENTIALS, result);
         verify(jwtTokenUtil).generateJwt(MERCHANT_ID, API_KEY, SECRET_KEY, 
                                        "/pts/v2/instrumentidentifiers/" + INSTRUMENT_IDENTIFIER_TOKEN_ID + "/networkTokens", 
                                        "GET");
@@ -108,6 +133,21 @@ class PaymentCredentialsServiceTest {
         verify(webClient, never()).get();
     }
 
+    @Test
+    void testGetPaymentCredentials_RejectedCallsAreNotSigned() throws Exception {
+        // Arrange
+        MerchantCircuitBreaker circuitBreaker = mock(MerchantCircuitBreaker.class);
+        when(circuitBreaker.execute(eq(MERCHANT_ID), eq("get_payment_credentials"), any()))
+                .thenReturn(Mono.error(new CallRejectedException("Circuit open")));
+        ReflectionTestUtils.setField(paymentCredentialsService, "circuitBreaker", circuitBreaker);
+
+        // Act & Assert
+        assertThrows(CallRejectedException.class,
+                () -> paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID));
+        verifyNoInteractions(jwtTokenUtil);
+        verify(webClient, never()).get();
+    }
+
     @Test
     void testGetPaymentCredentials_WebClientResponseException() throws Exception {
         // Arrange
@@ -123,7 +163,7 @@ class PaymentCredentialsServiceTest {
                 400, "Bad Request", null, "Invalid request".getBytes(), null);
         
         // Mock the entire reactive chain to throw the exception
-        when(responseSpec.bodyToMono(String.class))
+        when(responseSpec.bodyToMono(byte[].class))
             .thenReturn(Mono.error(webClientException));
 
         // Act & Assert
@@ -150,7 +190,7 @@ class PaymentCredentialsServiceTest {
         };
         
         // Mock the entire reactive chain to throw the exception
-        when(responseSpec.bodyToMono(String.class))
+        when(responseSpec.bodyToMono(byte[].class))
             .thenReturn(Mono.error(webClientException));
 
         // Act & Assert
@@ -170,7 +210,7 @@ class PaymentCredentialsServiceTest {
         when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
         
         when(tokenStorageRepository.save(any(TokenStorage.class)))
                 .thenThrow(new org.springframework.dao.DataAccessException("Database connection failed") {});
@@ -201,6 +241,88 @@ class PaymentCredentialsServiceTest {
         verify(tokenStorageRepository).findByPaymentTokenId(paymentTokenId);
     }
 
+    @Test
+    void testGetPaymentCredentials_WriteBehindEnabled_QueuesInsteadOfSaving() throws Exception {
+        // Arrange
+        TokenStorageWriteBehind writeBehind = mock(TokenStorageWriteBehind.class);
+        ReflectionTestUtils.setField(paymentCredentialsService, "tokenStorageWriteBehind", writeBehind);
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
+
+        // Act
+        PaymentCredentialsResponse result = paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert
+        assertEquals(CREDENTIALS, result);
+        verify(writeBehind).enqueue(argThat(tokenStorage -> MERCHANT_ID.equals(tokenStorage.getMerchantId())));
+        verify(tokenStorageRepository, never()).save(any(TokenStorage.class));
+    }
+
+    @Test
+    void testGetTokenStorageByPaymentTokenId_WriteBehindEnabled_ReturnsQueuedDocument() throws Exception {
+        // Arrange
+        String paymentTokenId = "queued-payment-token-id";
+        TokenStorage queued = new TokenStorage();
+        queued.setPaymentTokenId(paymentTokenId);
+        TokenStorageWriteBehind writeBehind = mock(TokenStorageWriteBehind.class);
+        when(writeBehind.findPending(paymentTokenId)).thenReturn(Optional.of(queued));
+        ReflectionTestUtils.setField(paymentCredentialsService, "tokenStorageWriteBehind", writeBehind);
+
+        // Act
+        Optional<TokenStorage> result = paymentCredentialsService.getTokenStorageByPaymentTokenId(paymentTokenId);
+
+        // Assert
+        assertSame(queued, result.orElseThrow());
+        verify(tokenStorageRepository, never()).findByPaymentTokenId(anyString());
+    }
+
+    @Test
+    void testGetTokenStorageByPaymentTokenId_CacheHitSkipsRepository() throws Exception {
+        // Arrange
+        TokenStorage cached = new TokenStorage("cached-token-id", "crypto", MERCHANT_ID, new HashMap<>());
+        when(tokenStorageCache.get("cached-token-id")).thenReturn(cached);
+
+        // Act
+        Optional<TokenStorage> result = paymentCredentialsService.getTokenStorageByPaymentTokenId("cached-token-id");
+
+        // Assert
+        assertSame(cached, result.orElseThrow());
+        verify(tokenStorageRepository, never()).findByPaymentTokenId(anyString());
+    }
+
+    @Test
+    void testGetTokenStorageByPaymentTokenId_CacheMissPopulatesCache() throws Exception {
+        // Arrange
+        TokenStorage stored = new TokenStorage("stored-token-id", "crypto", MERCHANT_ID, new HashMap<>());
+        when(tokenStorageRepository.findByPaymentTokenId("stored-token-id")).thenReturn(Optional.of(stored));
+
+        // Act
+        paymentCredentialsService.getTokenStorageByPaymentTokenId("stored-token-id");
+
+        // Assert
+        verify(tokenStorageCache).put(stored);
+    }
+
+    @Test
+    void testGetPaymentCredentials_InvalidatesCachedTokenOnWrite() throws Exception {
+        // Arrange
+        stubSuccessfulApiCall();
+
+        // Act
+        paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert: the entry for the written payment token ID is dropped after the save
+        var saved = org.mockito.ArgumentCaptor.forClass(TokenStorage.class);
+        var inOrder = inOrder(tokenStorageRepository, tokenStorageCache);
+        inOrder.verify(tokenStorageRepository).save(saved.capture());
+        inOrder.verify(tokenStorageCache).invalidate(saved.getValue().getPaymentTokenId());
+    }
+
     @Test
     void testGetTokenStorageByPaymentTokenId_NotFound() throws Exception {
         // Arrange
@@ -232,6 +354,71 @@ class PaymentCredentialsServiceTest {
         assertTrue(exception.getMessage().contains("Failed to query token storage"));
     }
 
+    @Test
+    void testGetTokenStoragePage_ReturnsCursorWhenPageIsFull() throws Exception {
+        // Arrange
+        TokenStorage first = new TokenStorage("token-1", "crypto-1", MERCHANT_ID, new HashMap<>());
+        TokenStorage second = new TokenStorage("token-2", "crypto-2", MERCHANT_ID, new HashMap<>());
+        when(tokenStorageRepository.findPageByMerchantId(MERCHANT_ID, null, 2)).thenReturn(List.of(first, second));
+
+        // Act
+        PaymentCredentialsService.TokenStoragePage page = paymentCredentialsService.getTokenStoragePage(MERCHANT_ID, null, 2);
+
+        // Assert
+        assertEquals(List.of(first, second), page.records());
+        assertEquals(TokenStorageCursor.after(second), TokenStorageCursor.decode(page.nextCursor()));
+    }
+
+    @Test
+    void testGetTokenStoragePage_LastPageHasNoCursorAndLimitIsCapped() throws Exception {
+        // Arrange
+        persistence.setMaxPageSize(10);
+        TokenStorageCursor after = new TokenStorageCursor(LocalDateTime.now(), "token-1");
+        when(tokenStorageRepository.findPageByMerchantId(MERCHANT_ID, after, 10)).thenReturn(List.of());
+
+        // Act
+        PaymentCredentialsService.TokenStoragePage page =
+                paymentCredentialsService.getTokenStoragePage(MERCHANT_ID, after.encode(), 5000);
+
+        // Assert
+        assertTrue(page.records().isEmpty());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void testStreamTokenStorageByMerchantId_RequestsInCursorBatches() {
+        // Arrange
+        persistence.setCursorBatchSize(2);
+        List<Long> requests = new CopyOnWriteArrayList<>();
+        List<TokenStorage> tokens = List.of(
+                new TokenStorage("token-1", "crypto-1", MERCHANT_ID, new HashMap<>()),
+                new TokenStorage("token-2", "crypto-2", MERCHANT_ID, new HashMap<>()),
+                new TokenStorage("token-3", "crypto-3", MERCHANT_ID, new HashMap<>()));
+        when(reactiveTokenStorageRepository.findByMerchantIdOrderByCreatedAtDescPaymentTokenIdAsc(MERCHANT_ID))
+                .thenReturn(Flux.fromIterable(tokens).doOnRequest(requests::add));
+
+        // Act
+        List<TokenStorage> result = paymentCredentialsService.streamTokenStorageByMerchantId(MERCHANT_ID)
+                .collectList().block(Duration.ofSeconds(5));
+
+        // Assert: an unbounded subscriber still pulls from the cursor two at a time
+        assertEquals(tokens, result);
+        assertEquals(2L, requests.get(0));
+        verifyNoInteractions(tokenStorageRepository);
+    }
+
+    @Test
+    void testStreamTokenStorageByMerchantId_MapsDatabaseErrors() {
+        // Arrange
+        when(reactiveTokenStorageRepository.findByMerchantIdOrderByCreatedAtDescPaymentTokenIdAsc(MERCHANT_ID))
+                .thenReturn(Flux.error(new org.springframework.dao.DataAccessException("Database connection failed") {}));
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> paymentCredentialsService.streamTokenStorageByMerchantId(MERCHANT_ID).blockLast(Duration.ofSeconds(5))));
+        assertInstanceOf(DataAccessException.class, error);
+    }
+
     @Test
     void testGetPaymentCredentials_VerifyApiPath() throws Exception {
         // Arrange
@@ -242,7 +429,7 @@ class PaymentCredentialsServiceTest {
         when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
         
         when(tokenStorageRepository.save(any(TokenStorage.class))).thenReturn(new TokenStorage());
 
@@ -266,7 +453,7 @@ class PaymentCredentialsServiceTest {
         when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
         
         when(tokenStorageRepository.save(any(TokenStorage.class))).thenReturn(new TokenStorage());
 
@@ -279,11 +466,88 @@ class PaymentCredentialsServiceTest {
             tokenStorage.getPaymentTokenId() != null &&
             tokenStorage.getCryptogram() != null &&
             tokenStorage.getMetadata() != null &&
-            tokenStorage.getMetadata().containsKey("instrumentIdentifierTokenId") &&
-            tokenStorage.getMetadata().get("instrumentIdentifierTokenId").equals(INSTRUMENT_IDENTIFIER_TOKEN_ID)
+            INSTRUMENT_IDENTIFIER_TOKEN_ID.equals(tokenStorage.getInstrumentIdentifierTokenId())
         ));
     }
     
+    @Test
+    void testGetPaymentCredentials_StoresCryptogramFromResponse() throws Exception {
+        // Arrange
+        stubSuccessfulApiCall();
+
+        // Act
+        paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert
+        verify(tokenStorageRepository).save(argThat(tokenStorage -> "test-cryptogram".equals(tokenStorage.getCryptogram())));
+    }
+    
+    @Test
+    void testGetPaymentCredentials_MalformedResponseIsNotPersisted() throws Exception {
+        // Arrange
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just("{\"networkToken\":".getBytes(StandardCharsets.UTF_8)));
+
+        // Act & Assert
+        assertThrows(PaymentCredentialsException.class,
+                () -> paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID));
+        verify(tokenStorageRepository, never()).save(any(TokenStorage.class));
+    }
+
+    @Test
+    void testGetPaymentCredentials_CompressesRawResponseByDefault() throws Exception {
+        // Arrange
+        stubSuccessfulApiCall();
+
+        // Act
+        paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert
+        verify(tokenStorageRepository).save(argThat(tokenStorage ->
+            !tokenStorage.getMetadata().containsKey("apiResponse") &&
+            API_RESPONSE.equals(ResponseCompression.inflate(tokenStorage.getCompressedApiResponse()))
+        ));
+    }
+
+    @Test
+    void testGetPaymentCredentials_FullRawResponseKeepsLegacyMetadata() throws Exception {
+        // Arrange
+        persistence.setRawResponse(CybersourceConfig.RawResponse.FULL);
+        stubSuccessfulApiCall();
+
+        // Act
+        paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert
+        verify(tokenStorageRepository).save(argThat(tokenStorage ->
+            API_RESPONSE.equals(tokenStorage.getMetadata().get("apiResponse")) &&
+            tokenStorage.getMetadata().containsKey("creationTimestamp") &&
+            tokenStorage.getCompressedApiResponse() == null
+        ));
+    }
+
+    @Test
+    void testGetPaymentCredentials_NoRawResponseStoresTypedFieldsOnly() throws Exception {
+        // Arrange
+        persistence.setRawResponse(CybersourceConfig.RawResponse.NONE);
+        stubSuccessfulApiCall();
+
+        // Act
+        paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID);
+
+        // Assert
+        verify(tokenStorageRepository).save(argThat(tokenStorage ->
+            tokenStorage.getMetadata().isEmpty() &&
+            tokenStorage.getCompressedApiResponse() == null &&
+            tokenStorage.getCreatedAt() != null
+        ));
+    }
+
     @Test
     void testGetPaymentCredentials_WithDifferentMerchantIds() throws Exception {
         // Test multiple merchant IDs
@@ -300,19 +564,19 @@ class PaymentCredentialsServiceTest {
         when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
         
         when(tokenStorageRepository.save(any(TokenStorage.class))).thenReturn(new TokenStorage());
 
         // Act for first merchant
-        String result1 = paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, merchantId1);
+        PaymentCredentialsResponse result1 = paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, merchantId1);
         
         // Act for second merchant
-        String result2 = paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, merchantId2);
+        PaymentCredentialsResponse result2 = paymentCredentialsService.getPaymentCredentials(INSTRUMENT_IDENTIFIER_TOKEN_ID, merchantId2);
 
         // Assert both calls succeeded
-        assertEquals(API_RESPONSE, result1);
-        assertEquals(API_RESPONSE, result2);
+        assertEquals(CREDENTIALS, result1);
+        assertEquals(CREDENTIALS, result2);
         
         // Verify JWT tokens were generated for each merchant
         verify(jwtTokenUtil).generateJwt(merchantId1, API_KEY, SECRET_KEY, 
@@ -336,7 +600,7 @@ class PaymentCredentialsServiceTest {
         when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
-        when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(API_RESPONSE));
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
         
         // Cause unexpected exception during token storage save
         when(tokenStorageRepository.save(any(TokenStorage.class)))
@@ -348,4 +612,95 @@ class PaymentCredentialsServiceTest {
         
         assertTrue(exception.getMessage().contains("Unexpected error while getting payment credentials"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetPaymentCredentialsReactive_Success() throws Exception {
+        // Arrange
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
+
+        when(reactiveTokenStorageRepository.save(any(TokenStorage.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        // Act
+        PaymentCredentialsResponse result = paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID)
+                .block(Duration.ofSeconds(5));
+
+        // Assert
+        assertEquals(CREDENTIALS, result);
+        verify(reactiveTokenStorageRepository).save(argThat(tokenStorage ->
+            MERCHANT_ID.equals(tokenStorage.getMerchantId()) &&
+            INSTRUMENT_IDENTIFIER_TOKEN_ID.equals(tokenStorage.getInstrumentIdentifierTokenId())
+        ));
+        verifyNoInteractions(tokenStorageRepository);
+    }
+
+    @Test
+    void testGetPaymentCredentialsReactive_JwtGenerationFailure() throws Exception {
+        // Arrange
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenThrow(new RuntimeException("JWT generation failed"));
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID).block()));
+
+        PaymentCredentialsException exception = assertInstanceOf(PaymentCredentialsException.class, error);
+        assertTrue(exception.getMessage().contains("Failed to generate JWT token"));
+        verify(webClient, never()).get();
+    }
+
+    @Test
+    void testGetPaymentCredentialsReactive_DataAccessException() throws Exception {
+        // Arrange
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
+
+        when(reactiveTokenStorageRepository.save(any(TokenStorage.class)))
+                .thenReturn(Mono.error(new org.springframework.dao.DataAccessException("Database connection failed") {}));
+
+        // Act & Assert
+        Throwable error = Exceptions.unwrap(assertThrows(RuntimeException.class,
+                () -> paymentCredentialsService.getPaymentCredentialsReactive(INSTRUMENT_IDENTIFIER_TOKEN_ID, MERCHANT_ID).block()));
+
+        assertInstanceOf(DataAccessException.class, error);
+    }
+
+    @Test
+    void testGetTokenStorageByPaymentTokenIdReactive_UsesReactiveRepository() {
+        // Arrange
+        TokenStorage stored = new TokenStorage("token-1", "crypto-1", MERCHANT_ID, new HashMap<>());
+        when(reactiveTokenStorageRepository.findByPaymentTokenId("token-1")).thenReturn(Mono.just(stored));
+        when(reactiveTokenStorageRepository.findByPaymentTokenId("missing")).thenReturn(Mono.empty());
+
+        // Act & Assert
+        assertSame(stored, paymentCredentialsService.getTokenStorageByPaymentTokenIdReactive("token-1")
+                .block(Duration.ofSeconds(5)));
+        assertNull(paymentCredentialsService.getTokenStorageByPaymentTokenIdReactive("missing")
+                .block(Duration.ofSeconds(5)));
+        verifyNoInteractions(tokenStorageRepository);
+    }
+
+    private void stubSuccessfulApiCall() throws Exception {
+        when(jwtTokenUtil.generateJwt(anyString(), anyString(), anyString(), anyString(), anyString()))
+                .thenReturn(JWT_TOKEN);
+        when(webClient.get()).thenReturn(requestHeadersUriSpec);
+        when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.header(anyString(), anyString())).thenReturn(requestHeadersSpec);
+        when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
+        when(responseSpec.bodyToMono(byte[].class)).thenReturn(Mono.just(API_RESPONSE_BYTES));
+        when(tokenStorageRepository.save(any(TokenStorage.class))).thenReturn(new TokenStorage());
+    }
+}
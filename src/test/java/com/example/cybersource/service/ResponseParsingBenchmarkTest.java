@@ -0,0 +1,96 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.dto.InstrumentIdentifierResponse;
+import com.example.cybersource.dto.PaymentCredentialsResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JMH cost of turning the two Cybersource response bodies of a tokenization into
+ * the typed records {@link NetworkTokenService} reads: the create instrument
+ * identifier response, decoded with Jackson as the WebClient codec does, and the
+ * payment credentials response, bound by {@link PaymentCredentialsService#parseResponse}.
+ * Results are written to {@code target/jmh-response-parsing.json}.
+ * <p>
+ * Run with {@code mvn test -Dtest=ResponseParsingBenchmarkTest -Dbenchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmarkTest {
+
+    // Shape of a POST /pts/v2/instrumentidentifiers response
+    static final String INSTRUMENT_IDENTIFIER_RESPONSE = """
+            {"_links":{"self":{"href":"/tms/v1/instrumentidentifiers/7010000000016241111"},\
+            "paymentInstruments":{"href":"/tms/v1/instrumentidentifiers/7010000000016241111/paymentinstruments"}},\
+            "id":"7010000000016241111","object":"instrumentIdentifier","state":"ACTIVE",\
+            "card":{"number":"411111XXXXXX1111","expirationMonth":"12","expirationYear":"2031"},\
+            "processingInformation":{"authorizationOptions":{"initiator":{"merchantInitiatedTransaction":\
+            {"previousTransactionId":"123456789619999"}}}},\
+            "metadata":{"creator":"merchant_test"}}""";
+
+    // Shape of a GET .../networkTokens response
+    static final String PAYMENT_CREDENTIALS_RESPONSE = """
+            {"_links":{"self":{"href":"/pts/v2/instrumentidentifiers/7010000000016241111/networkTokens"}},\
+            "id":"7010000000016241111","object":"instrumentIdentifier","state":"ACTIVE",\
+            "card":{"number":"411111XXXXXX1111","expirationMonth":"12","expirationYear":"2031"},\
+            "networkToken":{"state":"ACTIVE","enrollmentId":"9ef7b0b8a1c3d3e3f2a5b6c7d8e9f0a1",\
+            "tokenReferenceId":"c2e8b5a7d9f1e3b4a6c8d0e2f4a6b8c0","type":"visa","number":"4895370012003478",\
+            "expirationMonth":"12","expirationYear":"2031","cryptogram":"AceY+igABPs3jdwNaDg3MAACAAA=",\
+            "requestorId":"40010052236","card":{"suffix":"1111","expirationMonth":"12","expirationYear":"2031"}},\
+            "issuer":{"paymentAccountReference":"V0010013020225167482489113290"},\
+            "metadata":{"creator":"merchant_test","createdAt":"2025-01-01T00:00:00Z","updatedAt":"2025-01-01T00:00:00Z"}}""";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final byte[] instrumentIdentifierBytes = INSTRUMENT_IDENTIFIER_RESPONSE.getBytes(StandardCharsets.UTF_8);
+    private final byte[] paymentCredentialsBytes = PAYMENT_CREDENTIALS_RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public InstrumentIdentifierResponse decodeInstrumentIdentifier() throws Exception {
+        return OBJECT_MAPPER.readValue(instrumentIdentifierBytes, InstrumentIdentifierResponse.class);
+    }
+
+    @Benchmark
+    public PaymentCredentialsResponse parsePaymentCredentials() {
+        return PaymentCredentialsService.parseResponse(paymentCredentialsBytes);
+    }
+
+    @Test
+    void benchmarkResponseParsing() throws Exception {
+        assertEquals("7010000000016241111", decodeInstrumentIdentifier().id());
+        assertEquals(new PaymentCredentialsResponse.NetworkToken("4895370012003478", "12", "2031",
+                "AceY+igABPs3jdwNaDg3MAACAAA="), parsePaymentCredentials().networkToken());
+
+        new Runner(new OptionsBuilder()
+                .include(getClass().getName() + "\\.")
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-response-parsing.json")
+                .build())
+                .run();
+    }
+}
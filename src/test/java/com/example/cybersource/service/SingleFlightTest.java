@@ -0,0 +1,172 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.exception.NetworkException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private static final SingleFlight.Key KEY = new SingleFlight.Key("merchant-1", "getPaymentCredentials", "ii-1");
+
+    private SimpleMeterRegistry meterRegistry;
+    private SingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight(meterRegistry);
+    }
+
+    @Test
+    void testExecute_ConcurrentCallersShareOneCall() throws Exception {
+        // Arrange
+        int callers = 8;
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            // Act
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> singleFlight.execute(KEY, () -> {
+                    calls.incrementAndGet();
+                    release.await();
+                    return "response";
+                })));
+            }
+            awaitCount("leader", 1);
+            awaitCount("coalesced", callers - 1);
+            release.countDown();
+
+            // Assert
+            for (Future<String> result : results) {
+                assertEquals("response", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExecute_FollowersReceiveLeadersException() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute(KEY, () -> {
+                release.await();
+                throw new NetworkException("Network error");
+            }));
+            awaitCount("leader", 1);
+
+            // Act
+            Future<String> follower = executor.submit(() -> singleFlight.execute(KEY, () -> "unused"));
+            awaitCount("coalesced", 1);
+            release.countDown();
+
+            // Assert
+            Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+            Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(NetworkException.class, leaderError.getCause());
+            assertSame(leaderError.getCause(), followerError.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExecute_ReleasesKeyAfterCompletion() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+
+        singleFlight.execute(KEY, calls::incrementAndGet);
+        singleFlight.execute(KEY, calls::incrementAndGet);
+
+        assertEquals(2, calls.get());
+        assertEquals(0.0, meterRegistry.get("cybersource.single_flight.in_flight").gauge().value());
+    }
+
+    @Test
+    void testExecute_DistinctKeysDoNotCoalesce() throws Exception {
+        singleFlight.execute(KEY, () -> "a");
+        singleFlight.execute(new SingleFlight.Key("merchant-2", KEY.operation(), KEY.resource()), () -> "b");
+
+        assertEquals(2.0, count("leader"));
+    }
+
+    @Test
+    void testExecuteReactive_SubscribersShareOneCall() {
+        // Arrange
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> upstream = Sinks.one();
+        Mono<String> first = singleFlight.executeReactive(KEY, () -> {
+            calls.incrementAndGet();
+            return upstream.asMono();
+        });
+        Mono<String> second = singleFlight.executeReactive(KEY, () -> {
+            calls.incrementAndGet();
+            return Mono.just("unused");
+        });
+
+        // Act
+        List<String> results = new ArrayList<>();
+        first.subscribe(results::add);
+        second.subscribe(results::add);
+        upstream.tryEmitValue("response");
+
+        // Assert
+        assertEquals(List.of("response", "response"), results);
+        assertEquals(1, calls.get());
+        assertEquals(1.0, count("coalesced"));
+
+        // The key is released once the call completes
+        assertEquals("next", singleFlight.executeReactive(KEY, () -> Mono.just("next")).block());
+    }
+
+    @Test
+    void testExecuteReactive_SharesErrors() {
+        Sinks.One<String> upstream = Sinks.one();
+        List<Throwable> errors = new ArrayList<>();
+        singleFlight.executeReactive(KEY, upstream::asMono).subscribe(null, errors::add);
+        singleFlight.executeReactive(KEY, upstream::asMono).subscribe(null, errors::add);
+
+        upstream.tryEmitError(new NetworkException("Network error"));
+
+        assertEquals(2, errors.size());
+        assertTrue(errors.stream().allMatch(NetworkException.class::isInstance));
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("cybersource.single_flight.calls")
+                .tag("operation", KEY.operation())
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+
+    private void awaitCount(String result, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (meterRegistry.find("cybersource.single_flight.calls").tag("result", result).counter() != null
+                    && count(result) >= expected) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("Timed out waiting for " + expected + " " + result + " calls");
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.cybersource.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageLatencyWindowTest {
+
+    @Test
+    void testSummary_EmptyWindow() {
+        // Act
+        StageLatencyWindow.Summary summary = new StageLatencyWindow(4).summary();
+
+        // Assert
+        assertEquals(0, summary.samples());
+        assertEquals(0, summary.stages().get("total").maxMillis());
+    }
+
+    @Test
+    void testSummary_ComputesPerStageStatistics() {
+        // Arrange
+        StageLatencyWindow window = new StageLatencyWindow(100);
+        for (int i = 1; i <= 100; i++) {
+            window.record(breakdown(i * 1_000_000L));
+        }
+
+        // Act
+        StageLatencyWindow.Summary summary = window.summary();
+
+        // Assert
+        StageLatencyWindow.StageSummary paymentCredentials = summary.stages().get("paymentCredentials");
+        assertEquals(100, summary.samples());
+        assertEquals(50.5, paymentCredentials.meanMillis(), 0.001);
+        assertEquals(50.0, paymentCredentials.p50Millis());
+        assertEquals(99.0, paymentCredentials.p99Millis());
+        assertEquals(100.0, paymentCredentials.maxMillis());
+        assertEquals(0.0, summary.stages().get("jwtSign").maxMillis());
+    }
+
+    @Test
+    void testRecord_OverwritesOldestSamples() {
+        // Arrange
+        StageLatencyWindow window = new StageLatencyWindow(2);
+
+        // Act
+        window.record(breakdown(100_000_000));
+        window.record(breakdown(1_000_000));
+        window.record(breakdown(2_000_000));
+
+        // Assert
+        StageLatencyWindow.Summary summary = window.summary();
+        assertEquals(2, summary.samples());
+        assertEquals(2.0, summary.stages().get("paymentCredentials").maxMillis());
+    }
+
+    private static StageTimings.Breakdown breakdown(long paymentCredentialsNanos) {
+        return new StageTimings.Breakdown(0, 0, paymentCredentialsNanos, 0, 0, paymentCredentialsNanos);
+    }
+}
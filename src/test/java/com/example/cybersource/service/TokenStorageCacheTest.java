@@ -0,0 +1,64 @@
+package com.example.cybersource.service;
+
+import com.example.cybersource.entity.TokenStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenStorageCacheTest {
+
+    private static final TokenStorage TOKEN = new TokenStorage("token-1", "crypto", "merchant-1", new HashMap<>());
+
+    private final AtomicLong nanos = new AtomicLong();
+    private SimpleMeterRegistry meterRegistry;
+    private TokenStorageCache tokenStorageCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        tokenStorageCache = new TokenStorageCache(meterRegistry, 100, Duration.ofSeconds(30), nanos::get);
+    }
+
+    @Test
+    void testGet_ReturnsTokenUntilTtlExpires() {
+        // Arrange
+        tokenStorageCache.put(TOKEN);
+
+        // Act & Assert
+        nanos.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertSame(TOKEN, tokenStorageCache.get("token-1"));
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertNull(tokenStorageCache.get("token-1"));
+    }
+
+    @Test
+    void testInvalidate_RemovesEntry() {
+        tokenStorageCache.put(TOKEN);
+
+        tokenStorageCache.invalidate("token-1");
+
+        assertNull(tokenStorageCache.get("token-1"));
+    }
+
+    @Test
+    void testGet_RecordsHitsMissesAndHitRatio() {
+        tokenStorageCache.get("token-1");
+        tokenStorageCache.put(TOKEN);
+        tokenStorageCache.get("token-1");
+        tokenStorageCache.get("token-1");
+        tokenStorageCache.get("token-1");
+
+        assertEquals(3.0, meterRegistry.get("cache.gets").tag("cache", "cybersource.token_storage").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "cybersource.token_storage").tag("result", "miss")
+                .functionCounter().count());
+        assertEquals(0.75, meterRegistry.get("cybersource.token_storage.cache.hit_ratio").gauge().value());
+    }
+}
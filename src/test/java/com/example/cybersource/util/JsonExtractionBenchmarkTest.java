@@ -0,0 +1,112 @@
+package com.example.cybersource.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JMH comparison of the per-response cost of pulling the network token and
+ * cryptogram out of a GET .../networkTokens response: the previous org.json tree
+ * parse, a Jackson tree parse, and {@link JsonFieldExtractor} over the decoded
+ * String and over the raw bytes. Results are written to
+ * {@code target/jmh-json-extraction.json}.
+ * <p>
+ * Run with {@code mvn test -Dtest=JsonExtractionBenchmarkTest -Dbenchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonExtractionBenchmarkTest {
+
+    // Shape of a GET .../networkTokens response, with the token in the middle
+    static final String RESPONSE = """
+            {"_links":{"self":{"href":"/pts/v2/instrumentidentifiers/7010000000016241111/networkTokens"},\
+            "paymentInstruments":{"href":"/tms/v1/instrumentidentifiers/7010000000016241111/paymentinstruments"}},\
+            "id":"7010000000016241111","object":"instrumentIdentifier","state":"ACTIVE",\
+            "card":{"number":"411111XXXXXX1111","expirationMonth":"12","expirationYear":"2031"},\
+            "networkToken":{"state":"ACTIVE","enrollmentId":"9ef7b0b8a1c3d3e3f2a5b6c7d8e9f0a1",\
+            "tokenReferenceId":"c2e8b5a7d9f1e3b4a6c8d0e2f4a6b8c0","type":"visa","number":"4895370012003478",\
+            "expirationMonth":"12","expirationYear":"2031","cryptogram":"AceY+igABPs3jdwNaDg3MAACAAA=",\
+            "requestorId":"40010052236","card":{"suffix":"1111","expirationMonth":"12","expirationYear":"2031"}},\
+            "metadata":{"cardArt":{"foregroundColor":"1a1f71","combinedAsset":{"id":"5bcd2a1e-1d2b-4d88-9c2f-5b0a3a6b0e11",\
+            "_links":{"self":{"href":"/tms/v2/tokens/7010000000016241111/visa/assets/card-art-combined"}}},\
+            "brandLogoAsset":{"id":"800200c9-629a-4f2e-a7b9-0a5e4b6c7d8f",\
+            "_links":{"self":{"href":"/tms/v2/tokens/7010000000016241111/visa/assets/brand-logo"}}},\
+            "issuerLogoAsset":{"id":"100200c9-629a-4f2e-a7b9-0a5e4b6c7d8f",\
+            "_links":{"self":{"href":"/tms/v2/tokens/7010000000016241111/visa/assets/issuer-logo"}}}}},\
+            "issuer":{"paymentAccountReference":"V0010013020225167482489113290"},\
+            "processingInformation":{"authorizationOptions":{"initiator":{"merchantInitiatedTransaction":\
+            {"previousTransactionId":"123456789619999"}}}},\
+            "metadata2":{"creator":"merchant_test","createdAt":"2025-01-01T00:00:00Z","updatedAt":"2025-01-01T00:00:00Z"}}""";
+
+    private static final JsonFieldExtractor EXTRACTOR =
+            JsonFieldExtractor.of("networkToken.number", "networkToken.cryptogram");
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final byte[] responseBytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public String[] orgJsonTree() throws Exception {
+        JSONObject networkToken = new JSONObject(new String(responseBytes, StandardCharsets.UTF_8))
+                .getJSONObject("networkToken");
+        return new String[] {networkToken.getString("number"), networkToken.getString("cryptogram")};
+    }
+
+    @Benchmark
+    public String[] jacksonTree() throws Exception {
+        JsonNode networkToken = OBJECT_MAPPER.readTree(responseBytes).get("networkToken");
+        return new String[] {networkToken.get("number").asText(), networkToken.get("cryptogram").asText()};
+    }
+
+    @Benchmark
+    public String[] streamingFromString() {
+        return EXTRACTOR.extract(new String(responseBytes, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String[] streamingFromBytes() {
+        return EXTRACTOR.extract(responseBytes);
+    }
+
+    @Test
+    void benchmarkExtraction() throws Exception {
+        // Every variant must agree before timing them
+        String[] expected = {"4895370012003478", "AceY+igABPs3jdwNaDg3MAACAAA="};
+        assertArrayEquals(expected, orgJsonTree());
+        assertArrayEquals(expected, jacksonTree());
+        assertArrayEquals(expected, streamingFromString());
+        assertArrayEquals(expected, streamingFromBytes());
+
+        new Runner(new OptionsBuilder()
+                .include(getClass().getName() + "\\.")
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-json-extraction.json")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.cybersource.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonFieldExtractorTest {
+
+    private static final JsonFieldExtractor NETWORK_TOKEN =
+            JsonFieldExtractor.of("networkToken.number", "networkToken.cryptogram");
+
+    @Test
+    void testExtract_NestedFieldsInRequestedOrder() {
+        String json = """
+                {"id":"ii-1","networkToken":{"cryptogram":"AceY+igABPs3jdwNaDg3MAACAAA=","number":"4895370012003478"}}""";
+
+        String[] values = NETWORK_TOKEN.extract(json.getBytes(StandardCharsets.UTF_8));
+
+        assertArrayEquals(new String[] {"4895370012003478", "AceY+igABPs3jdwNaDg3MAACAAA="}, values);
+    }
+
+    @Test
+    void testExtract_IgnoresSameNamesElsewhereAndSkipsArrays() {
+        String json = """
+                {"number":"top","card":{"number":"411111XXXXXX1111","networkToken":{"number":"wrong"}},
+                 "_links":[{"networkToken":{"number":"in-array"}}],
+                 "networkToken":{"metadata":{"number":"deeper"},"number":"4895370012003478","cryptogram":"c"}}""";
+
+        assertArrayEquals(new String[] {"4895370012003478", "c"}, NETWORK_TOKEN.extract(json));
+    }
+
+    @Test
+    void testExtract_MissingAndNullFieldsAreNull() {
+        assertArrayEquals(new String[] {null, null}, NETWORK_TOKEN.extract("{\"networkToken\":{\"number\":null}}"));
+        assertArrayEquals(new String[] {null, null}, NETWORK_TOKEN.extract("{\"networkToken\":\"not-an-object\"}"));
+        assertArrayEquals(new String[] {null, null}, NETWORK_TOKEN.extract("[]"));
+    }
+
+    @Test
+    void testExtract_ScalarsAsText() {
+        String[] values = JsonFieldExtractor.of("count", "active").extract("{\"count\":42,\"active\":true}");
+
+        assertArrayEquals(new String[] {"42", "true"}, values);
+    }
+
+    @Test
+    void testExtract_StopsOnceAllFieldsAreFound() {
+        // Everything after the requested field is never read, so trailing garbage is not an error
+        String json = "{\"id\":\"ii-1\",\"rest\":";
+
+        assertEquals("ii-1", JsonFieldExtractor.of("id").extract(json)[0]);
+    }
+
+    @Test
+    void testExtract_InvalidJsonThrows() {
+        assertThrows(IllegalArgumentException.class, () -> JsonFieldExtractor.of("id").extract("{\"other\":tru"));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.cybersource.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JMH cost of {@link KeyLoader#loadPrivateKey} in its three states: a cache hit
+ * inside the reload interval, a revalidation that only checks the file's
+ * modification time, and a full PEM parse after eviction. Results are written to
+ * {@code target/jmh-key-loader.json}.
+ * <p>
+ * Run with {@code mvn test -Dtest=KeyLoaderBenchmarkTest -Dbenchmark=true}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyLoaderBenchmarkTest {
+
+    private Path pemPath;
+    private KeyLoader cachingLoader;
+    private KeyLoader revalidatingLoader;
+    private KeyLoader parsingLoader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        pemPath = Files.createTempFile("benchmark-key", ".pem");
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyLoaderTest.writeKeyPair(pemPath, generator.generateKeyPair());
+
+        cachingLoader = new KeyLoader();
+        cachingLoader.setReloadInterval(Duration.ofHours(1));
+        revalidatingLoader = new KeyLoader();
+        revalidatingLoader.setReloadInterval(Duration.ZERO);
+        parsingLoader = new KeyLoader();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(pemPath);
+    }
+
+    @Benchmark
+    public RSAPrivateKey cached() throws Exception {
+        return cachingLoader.loadPrivateKey(pemPath);
+    }
+
+    @Benchmark
+    public RSAPrivateKey revalidate() throws Exception {
+        return revalidatingLoader.loadPrivateKey(pemPath);
+    }
+
+    @Benchmark
+    public RSAPrivateKey parse() throws Exception {
+        parsingLoader.evict(pemPath);
+        return parsingLoader.loadPrivateKey(pemPath);
+    }
+
+    @Test
+    void benchmarkLoadPrivateKey() throws Exception {
+        setUp();
+        try {
+            // Every path must yield the same key before timing them
+            RSAPrivateKey expected = parse();
+            assertEquals(expected, cached());
+            assertEquals(expected, revalidate());
+        } finally {
+            tearDown();
+        }
+
+        new Runner(new OptionsBuilder()
+                .include(getClass().getName() + "\\.")
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-key-loader.json")
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.cybersource.util;
+
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyLoaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private KeyLoader keyLoader;
+    private Path pemPath;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keyLoader = new KeyLoader();
+        pemPath = tempDir.resolve("private_key.pem");
+        writeKeyPair(pemPath, generateKeyPair());
+    }
+
+    @Test
+    void testLoadPrivateKey_ReturnsCachedInstance() throws Exception {
+        // Act
+        RSAPrivateKey first = keyLoader.loadPrivateKey(pemPath);
+        RSAPrivateKey second = keyLoader.loadPrivateKey(pemPath);
+
+        // Assert
+        assertNotNull(first);
+        assertSame(first, second);
+    }
+
+    @Test
+    void testLoadPrivateKey_DoesNotTouchFileWithinReloadInterval() throws Exception {
+        // Arrange
+        RSAPrivateKey first = keyLoader.loadPrivateKey(pemPath);
+        Files.delete(pemPath);
+
+        // Act
+        RSAPrivateKey second = keyLoader.loadPrivateKey(pemPath);
+
+        // Assert
+        assertSame(first, second);
+    }
+
+    @Test
+    void testLoadPrivateKey_ReloadsWhenFileChanges() throws Exception {
+        // Arrange
+        keyLoader.setReloadInterval(Duration.ZERO);
+        RSAPrivateKey first = keyLoader.loadPrivateKey(pemPath);
+
+        KeyPair rotated = generateKeyPair();
+        writeKeyPair(pemPath, rotated);
+        Files.setLastModifiedTime(pemPath, FileTime.from(Instant.now().plusSeconds(60)));
+
+        // Act
+        RSAPrivateKey second = keyLoader.loadPrivateKey(pemPath);
+
+        // Assert
+        assertNotSame(first, second);
+        assertEquals(((RSAPrivateKey) rotated.getPrivate()).getModulus(), second.getModulus());
+    }
+
+    @Test
+    void testLoadPrivateKey_KeepsCachedKeyWhenFileUnchanged() throws Exception {
+        // Arrange
+        keyLoader.setReloadInterval(Duration.ZERO);
+        RSAPrivateKey first = keyLoader.loadPrivateKey(pemPath);
+
+        // Act
+        RSAPrivateKey second = keyLoader.loadPrivateKey(pemPath);
+
+        // Assert
+        assertSame(first, second);
+    }
+
+    @Test
+    void testEvict_ForcesReload() throws Exception {
+        // Arrange
+        RSAPrivateKey first = keyLoader.loadPrivateKey(pemPath);
+
+        // Act
+        keyLoader.evict(pemPath);
+        RSAPrivateKey second = keyLoader.loadPrivateKey(pemPath);
+
+        // Assert
+        assertNotSame(first, second);
+        assertEquals(first.getModulus(), second.getModulus());
+    }
+
+    @Test
+    void testLoadPrivateKey_InvalidPem() throws Exception {
+        // Arrange
+        Path invalid = tempDir.resolve("invalid.pem");
+        Files.writeString(invalid, "not a pem file");
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> keyLoader.loadPrivateKey(invalid));
+    }
+
+    static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    static void writeKeyPair(Path path, KeyPair keyPair) throws Exception {
+        try (JcaPEMWriter writer = new JcaPEMWriter(new FileWriter(path.toFile()))) {
+            writer.writeObject(keyPair);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.cybersource.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerchantRateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void testReserve_SpacesPermitsEvenlyPerMerchant() {
+        // Arrange: 10 permits per second means one every 100ms
+        MerchantRateLimiter limiter = new MerchantRateLimiter(10, nanos::get);
+
+        // Act & Assert
+        assertEquals(0, limiter.reserve("merchant-1"));
+        assertEquals(100_000_000L, limiter.reserve("merchant-1"));
+        assertEquals(200_000_000L, limiter.reserve("merchant-1"));
+    }
+
+    @Test
+    void testReserve_MerchantsDoNotShareBudget() {
+        MerchantRateLimiter limiter = new MerchantRateLimiter(10, nanos::get);
+
+        limiter.reserve("merchant-1");
+        limiter.reserve("merchant-1");
+
+        assertEquals(0, limiter.reserve("merchant-2"));
+    }
+
+    @Test
+    void testReserve_NoDelayOnceRateRecovers() {
+        MerchantRateLimiter limiter = new MerchantRateLimiter(10, nanos::get);
+        limiter.reserve("merchant-1");
+
+        nanos.addAndGet(500_000_000L);
+
+        assertEquals(0, limiter.reserve("merchant-1"));
+    }
+
+    @Test
+    void testReserve_ForgetsIdleMerchants() {
+        MerchantRateLimiter limiter = new MerchantRateLimiter(10, nanos::get);
+        limiter.reserve("merchant-1");
+        limiter.reserve("merchant-2");
+
+        nanos.addAndGet(MerchantRateLimiter.IDLE_EXPIRY.toNanos());
+        limiter.reserve("merchant-2");
+        nanos.addAndGet(1);
+
+        assertEquals(1, limiter.trackedMerchants());
+        assertEquals(0, limiter.reserve("merchant-1"));
+    }
+
+    @Test
+    void testReserve_UnlimitedWhenRateIsZero() {
+        MerchantRateLimiter limiter = new MerchantRateLimiter(0, nanos::get);
+
+        assertEquals(0, limiter.reserve("merchant-1"));
+        assertEquals(0, limiter.reserve("merchant-1"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.cybersource.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCompressionTest {
+
+    @Test
+    void testDeflate_RoundTripsAndShrinksJson() {
+        // Arrange
+        String response = "{\"networkToken\":{\"number\":\"4895370012003478\",\"cryptogram\":\"AceY+igABPs3jdwNaDg3MAACAAA=\"},"
+                + "\"_links\":{\"self\":{\"href\":\"/pts/v2/instrumentidentifiers/7010000000016241111/networkTokens\"}}}"
+                .repeat(8);
+
+        // Act
+        byte[] compressed = ResponseCompression.deflate(response);
+
+        // Assert
+        assertTrue(compressed.length < response.length() / 4);
+        assertEquals(response, ResponseCompression.inflate(compressed));
+    }
+
+    @Test
+    void testDeflate_HandlesNullAndNonAscii() {
+        assertNull(ResponseCompression.deflate((String) null));
+        assertNull(ResponseCompression.deflate((byte[]) null));
+        assertNull(ResponseCompression.inflate(null));
+        assertEquals("Zürich €", ResponseCompression.inflate(ResponseCompression.deflate("Zürich €")));
+    }
+
+    @Test
+    void testInflate_RejectsInvalidData() {
+        assertThrows(IllegalArgumentException.class, () -> ResponseCompression.inflate(new byte[] {1, 2, 3}));
+    }
+}